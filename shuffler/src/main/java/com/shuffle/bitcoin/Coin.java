@@ -16,6 +16,7 @@ package com.shuffle.bitcoin;
  import org.bitcoinj.core.AddressFormatException;
 
  import java.io.IOException;
+ import java.util.Collection;
  import java.util.List;
  import java.util.Map;
  import java.util.Queue;
@@ -47,4 +48,9 @@ public interface Coin {
     // returns that transaction.
     Transaction getConflictingTransaction(Transaction transaction, Address addr, long amount) throws CoinNetworkException, AddressFormatException;
 
+    // Look up everything the other queries will need to know about these addresses at
+    // once, so that checking each player afterwards does not make its own request.
+    // This is only to save time. If it fails, the other queries make their own requests.
+    void prefetch(Collection<Address> addresses);
+
 }
@@ -8,6 +8,8 @@
 
 package com.shuffle.bitcoin;
 
+import com.shuffle.p2p.Bytestring;
+
 /**
  *
  * A public encryption key.
@@ -16,4 +18,6 @@ package com.shuffle.bitcoin;
  */
 public interface EncryptionKey {
     String encrypt(String m);
+
+    Bytestring encrypt(Bytestring m);
 }
@@ -0,0 +1,35 @@
+/**
+ *
+ * Copyright © 2016 Mycelium.
+ * Use of this source code is governed by an ISC
+ * license that can be found in the LICENSE file.
+ *
+ */
+
+package com.shuffle.bitcoin;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map in access order which holds a fixed number of entries and drops the least
+ * recently used one when it is full. It is not thread safe; the caches which use it
+ * do their own locking.
+ */
+public final class LruMap<K, V> extends LinkedHashMap<K, V> {
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+
+    public LruMap(int capacity) {
+        super(16, 0.75f, true);
+        if (capacity < 1) throw new IllegalArgumentException();
+
+        this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > capacity;
+    }
+}
@@ -30,6 +30,11 @@ public interface Transaction extends Serializable {
 
     boolean addInputScript(Bytestring b) throws FormatException;
 
+    // Whether an input script is valid for this transaction, without adding it. Several
+    // scripts may be checked at once from different threads, but not while a script is
+    // being added.
+    boolean checkInputScript(Bytestring b);
+
     // Whether a transaction has enough signatures to be valid.
     boolean isValid();
 }
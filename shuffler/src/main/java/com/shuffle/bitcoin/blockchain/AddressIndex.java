@@ -0,0 +1,117 @@
+/**
+ *
+ * Copyright © 2016 Mycelium.
+ * Use of this source code is governed by an ISC
+ * license that can be found in the LICENSE file.
+ *
+ */
+
+package com.shuffle.bitcoin.blockchain;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.ScriptException;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.TransactionOutput;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The unspent outputs of an address, worked out from its history.
+ *
+ * Every outpoint spent by a transaction in the history is indexed, so that whether an
+ * output is spent, or which transaction spends it, is a lookup rather than a search
+ * through every input of every transaction. The index is made once for each history and
+ * never changes, so it can be shared between threads. Every transaction in the history
+ * must already have been read.
+ */
+final class AddressIndex {
+    // The history the index was made from.
+    final List<Bitcoin.Transaction> history;
+
+    // The transactions in the history by the outpoints they spend. There is usually only
+    // one for each outpoint, but if there has been a double spend there may be more.
+    private final Map<TransactionOutPoint, List<Bitcoin.Transaction>> spent = new HashMap<>();
+
+    // The sum of the outputs to the address which nothing in the history spends.
+    private final long balance;
+
+    AddressIndex(String address, NetworkParameters params, List<Bitcoin.Transaction> history) {
+        this.history = history;
+
+        for (Bitcoin.Transaction tx : history) {
+            for (TransactionInput input : tx.loaded().getInputs()) {
+                if (!input.isCoinBase()) {
+                    addSpender(input.getOutpoint(), tx);
+                }
+            }
+        }
+
+        // A transaction might be in the history twice, but its outputs only count once.
+        Set<TransactionOutPoint> unspent = new HashSet<>();
+        long sum = 0;
+        for (Bitcoin.Transaction tx : history) {
+            for (TransactionOutput output : tx.loaded().getOutputs()) {
+                if (!paysTo(output, address, params)) continue;
+
+                TransactionOutPoint outpoint = output.getOutPointFor();
+                if (!spent.containsKey(outpoint) && unspent.add(outpoint)) {
+                    sum += output.getValue().getValue();
+                }
+            }
+        }
+        balance = sum;
+    }
+
+    // A transaction might be in the history twice, but it is only indexed once.
+    private void addSpender(TransactionOutPoint outpoint, Bitcoin.Transaction tx) {
+        List<Bitcoin.Transaction> spenders = spent.get(outpoint);
+        if (spenders == null) {
+            spent.put(outpoint, Collections.singletonList(tx));
+            return;
+        }
+
+        for (Bitcoin.Transaction spender : spenders) {
+            if (spender.loaded().getHash().equals(tx.loaded().getHash())) return;
+        }
+
+        List<Bitcoin.Transaction> more = new ArrayList<>(spenders);
+        more.add(tx);
+        spent.put(outpoint, more);
+    }
+
+    // Every address in the outputs should be of type pay to public key hash.
+    private static boolean paysTo(TransactionOutput output, String address, NetworkParameters params) {
+        try {
+            Address to = output.getAddressFromP2PKHScript(params);
+            return to != null && address.equals(to.toString());
+        } catch (ScriptException e) {
+            return false;
+        }
+    }
+
+    // The sum of the unspent outputs to the address, in satoshis.
+    long balance() {
+        return balance;
+    }
+
+    // A transaction in the history which spends an outpoint, other than the one with
+    // the hash given, or null. The hash may be null.
+    Bitcoin.Transaction spender(TransactionOutPoint outpoint, Sha256Hash except) {
+        List<Bitcoin.Transaction> spenders = spent.get(outpoint);
+        if (spenders == null) return null;
+
+        for (Bitcoin.Transaction spender : spenders) {
+            if (!spender.loaded().getHash().equals(except)) return spender;
+        }
+        return null;
+    }
+}
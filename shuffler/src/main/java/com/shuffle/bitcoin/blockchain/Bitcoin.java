@@ -18,32 +18,56 @@ import com.shuffle.bitcoin.impl.SigningKeyImpl;
 import com.shuffle.p2p.Bytestring;
 import com.shuffle.protocol.FormatException;
 
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
 import org.bitcoinj.core.AddressFormatException;
 import org.bitcoinj.core.Context;
 import org.bitcoinj.core.ECKey;
 import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.core.PeerGroup;
+import org.bitcoinj.core.ScriptException;
 import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.TransactionInput;
 import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.Utils;
 import org.bitcoinj.core.VerificationException;
 import org.bitcoinj.crypto.TransactionSignature;
 import org.bitcoinj.net.discovery.DnsDiscovery;
 import org.bitcoinj.script.Script;
 import org.bitcoinj.script.ScriptBuilder;
+import org.bitcoinj.script.ScriptChunk;
 import org.bitcoinj.store.BlockStoreException;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class Bitcoin implements Coin {
+    private static final Logger log = LogManager.getLogger(Bitcoin.class);
+
     static long cach_expire = 10000; // Ten seconds.
 
+    // Query results, shared by every instance which looks at the same blockchain.
+    static final int ADDRESS_CACHE_SIZE = 1024;
+    static final int TRANSACTION_CACHE_SIZE = 4096;
+    public static final QueryCache<List<Bitcoin.Transaction>> addressCache
+            = new QueryCache<>(ADDRESS_CACHE_SIZE, cach_expire);
+    public static final QueryCache<org.bitcoinj.core.Transaction> transactionCache
+            = new QueryCache<>(TRANSACTION_CACHE_SIZE, cach_expire);
+    static final QueryCache<AddressIndex> indexCache
+            = new QueryCache<>(ADDRESS_CACHE_SIZE, cach_expire);
+
+    private static final AtomicLong instances = new AtomicLong();
+    private final String source = "bitcoin " + instances.incrementAndGet();
+
     final NetworkParameters netParams;
     final PeerGroup peerGroup;
     final int minPeers;
@@ -73,11 +97,23 @@ public abstract class Bitcoin implements Coin {
 
     public class Transaction implements com.shuffle.bitcoin.Transaction {
         final String hash;
-        private org.bitcoinj.core.Transaction bitcoinj;
+        // Filled in when it is first needed, perhaps by several threads at once.
+        private volatile org.bitcoinj.core.Transaction bitcoinj;
+        // The serialized transaction in hex, if it came with the query that found it.
+        private String hex = null;
         final boolean canSend;
         boolean confirmed;
         boolean sent = false;
 
+        // The inputs of the transaction by the key hash of the output they spend, and
+        // their signature hashes. Made the first time the transaction is signed or a
+        // script is checked.
+        private Map<String, List<Integer>> inputsByKey = null;
+        private SignatureHashes sighashes = null;
+
+        // Input scripts which have been checked, with the input they are valid for.
+        private final Map<Bytestring, Integer> checked = new ConcurrentHashMap<>();
+
         public Transaction(String hash, boolean canSend) {
             this.hash = hash;
             this.canSend = canSend;
@@ -102,15 +138,41 @@ public abstract class Bitcoin implements Coin {
             this.confirmed = confirmed;
         }
 
+        // A transaction which is only deserialized when it is needed, since most of the
+        // transactions in a long history never are.
+        Transaction(String hash, String hex, boolean canSend, boolean confirmed) {
+            this.hash = hash;
+            this.hex = hex;
+            this.canSend = canSend;
+            this.confirmed = confirmed;
+        }
+
         // Get the underlying bitcoinj representation of this transaction.
         public org.bitcoinj.core.Transaction bitcoinj() throws BlockStoreException, IOException {
-            if (bitcoinj == null) {
-                bitcoinj = getTransaction(hash);
+            if (loaded() == null) {
+                bitcoinj = lookupTransaction(hash);
             }
 
             return bitcoinj;
         }
 
+        // The bitcoinj transaction if it can be had without looking it up, or null.
+        org.bitcoinj.core.Transaction loaded() {
+            org.bitcoinj.core.Transaction tx = bitcoinj;
+            if (tx == null && hex != null) {
+                Context.getOrCreate(netParams);
+                tx = new org.bitcoinj.core.Transaction(netParams, Utils.HEX.decode(hex));
+                bitcoinj = tx;
+            }
+
+            return tx;
+        }
+
+        // Whether the transaction can be had without looking it up.
+        boolean available() {
+            return bitcoinj != null || hex != null;
+        }
+
         /**
          *
          * The send() method broadcasts a transaction into the Bitcoin network.  The canSend boolean
@@ -130,7 +192,7 @@ public abstract class Bitcoin implements Coin {
 
         @Override
         public Bytestring serialize() {
-            return new Bytestring(bitcoinj.bitcoinSerialize());
+            return new Bytestring(loaded().bitcoinSerialize());
         }
 
         @Override
@@ -138,16 +200,37 @@ public abstract class Bitcoin implements Coin {
             if (!(sk instanceof SigningKeyImpl)) {
                 return null;
             }
-            return Bitcoin.this.getSignature(this.bitcoinj, ((SigningKeyImpl) sk).signingKey);
+            prepare();
+            return Bitcoin.this.getSignature(bitcoinj, inputsByKey, sighashes, ((SigningKeyImpl) sk).signingKey);
+        }
+
+        private synchronized void prepare() {
+            if (inputsByKey == null) {
+                inputsByKey = inputIndex(bitcoinj);
+                sighashes = new SignatureHashes(bitcoinj);
+            }
         }
 
         @Override
         public boolean addInputScript(Bytestring b) throws FormatException {
-            List<Bytestring> programSignatures = new LinkedList<>();
-            programSignatures.add(b);
-            if (Bitcoin.this.signTransaction(this.bitcoinj, programSignatures) == null) {
-                return false;
+            Integer i = checked.get(b);
+            if (i == null) {
+                if (!checkInputScript(b)) return false;
+                i = checked.get(b);
             }
+
+            bitcoinj.getInput(i).setScriptSig(bytestringToInputScript(b));
+            return true;
+        }
+
+        @Override
+        public boolean checkInputScript(Bytestring b) {
+            prepare();
+
+            int i = verifyInputScript(bitcoinj, inputsByKey, sighashes, b);
+            if (i < 0) return false;
+
+            checked.put(b, i);
             return true;
         }
 
@@ -182,20 +265,6 @@ public abstract class Bitcoin implements Coin {
         return new Transaction(tx.getHashAsString(), tx, false);
     }
 
-    protected class Cached {
-        public final String address;
-        public final List<Bitcoin.Transaction> txList;
-        public final long last;
-
-        private Cached(String address, List<Bitcoin.Transaction> txList, long last) {
-            this.address = address;
-            this.txList = txList;
-            this.last = last;
-        }
-    }
-
-    protected Map<String, Cached> cache = new HashMap<>();
-
     public NetworkParameters getNetParams(){
         return netParams;
     }
@@ -226,6 +295,31 @@ public abstract class Bitcoin implements Coin {
                                                   Map<VerificationKey, Address> changeAddresses)
             throws CoinNetworkException, AddressFormatException {
 
+        try {
+            return makeShuffleTransaction(amount, fee, from, to, changeAddresses);
+        } finally {
+            // The players check for double spending right after this, so the histories
+            // of their addresses must be looked up again rather than taken from the cache.
+            for (VerificationKey key : from.keySet()) {
+                forget(key.address().toString());
+            }
+        }
+    }
+
+    private Bitcoin.Transaction makeShuffleTransaction(long amount,
+                                                       long fee,
+                                                       Map<VerificationKey, Address> from,
+                                                       Queue<Address> to,
+                                                       Map<VerificationKey, Address> changeAddresses)
+            throws CoinNetworkException, AddressFormatException {
+
+        // Look up every address at once, so that the loops below find them in the cache.
+        List<Address> addresses = new ArrayList<>(to);
+        for (VerificationKey key : from.keySet()) {
+            addresses.add(key.address());
+        }
+        prefetch(addresses);
+
         // this section adds inputs to the transaction and adds outputs to the change addresses.
         org.bitcoinj.core.Transaction tx = new org.bitcoinj.core.Transaction(netParams);
         for (VerificationKey key : from.keySet()) {
@@ -233,7 +327,7 @@ public abstract class Bitcoin implements Coin {
                 String address = key.address().toString();
                 List<Bitcoin.Transaction> transactions = getAddressTransactions(address);
                 if (transactions.size() > 1) return null;
-                org.bitcoinj.core.Transaction tx2 = getTransaction(transactions.get(0).hash);
+                org.bitcoinj.core.Transaction tx2 = lookupTransaction(transactions.get(0).hash);
                 for (TransactionOutput output : tx2.getOutputs()) {
                     String addressP2pkh = output.getAddressFromP2PKHScript(netParams).toString();
                     if (address.equals(addressP2pkh)) {
@@ -259,8 +353,7 @@ public abstract class Bitcoin implements Coin {
         for (Address sendto : to) {
             String address = sendto.toString();
             try {
-                List<Bitcoin.Transaction> transactions = getAddressTransactions(address);
-                if (transactions.size() > 0) return null;
+                if (countAddressTransactions(address, 1) > 0) return null;
             } catch (IOException e) {
                 throw new CoinNetworkException("Could not generate shuffle tx: " + e.getMessage());
             }
@@ -298,49 +391,18 @@ public abstract class Bitcoin implements Coin {
      *
      */
 
-    protected synchronized long getAddressBalance(String address) throws IOException, CoinNetworkException, AddressFormatException {
-
-        List<Bitcoin.Transaction> txList = getAddressTransactions(address);
-
-        long sum = 0;
-        for (Bitcoin.Transaction tx : txList) {
-            org.bitcoinj.core.Transaction tx2 = tx.bitcoinj;
-            String txhash = tx.hash;
-            boolean usedInput = false;
+    protected long getAddressBalance(String address) throws IOException, CoinNetworkException, AddressFormatException {
 
-            // check that txhash hasn't been used as input in any transactions, if it has, we discard.
-            outerloop:
-            for (Bitcoin.Transaction checkTx : txList) {
-                org.bitcoinj.core.Transaction tempTx = checkTx.bitcoinj;
-                for (TransactionInput input : tempTx.getInputs()) {
-                    if (input.getOutpoint().getHash().toString().equals(txhash)) {
-                        usedInput = true;
-                        break outerloop;
-                    }
-                }
-            }
-
-            // else, we find the specific output in the transaction pertaining to our address, and add the value to sum.
-
-            if (!usedInput) {
-                for (TransactionOutput output : tx2.getOutputs()) {
-                    String addressP2pkh = output.getAddressFromP2PKHScript(netParams).toString();
-                    if (address.equals(addressP2pkh)) {
-                        sum += output.getValue().getValue();
-                        break;
-                    }
-                }
-            }
-
-        }
-
-        return sum;
+        return index(address, getAddressTransactions(address)).balance();
     }
 
     @Override
     public final boolean sufficientFunds(Address addr, long amount) throws CoinNetworkException, AddressFormatException, IOException {
         String address = addr.toString();
 
+        // Don't read any more of a long history than it takes to see that it is too long.
+        if (countAddressTransactions(address, 2) != 1) return false;
+
         List<Bitcoin.Transaction> transactions = getAddressTransactions(address);
 
         if (transactions.size() == 1) {
@@ -348,35 +410,19 @@ public abstract class Bitcoin implements Coin {
             if (!tx.confirmed) {
                 return false;
             }
-            long txAmount = 0;
-
-            if (tx.bitcoinj == null) {
-                try {
-                    tx.bitcoinj = getTransaction(tx.hash);
-                } catch (IOException e) {
-                    return false;
-                }
-            }
-
-            for (TransactionOutput output : tx.bitcoinj.getOutputs()) {
-
-                /**
-                 * Every address in the outputs should be of type pay to public key hash, not pay to script hash
-                 */
 
-                String addressP2pkh = output.getAddressFromP2PKHScript(netParams).toString();
-                if (address.equals(addressP2pkh)) {
-                    txAmount += output.getValue().value;
-                }
+            try {
+                return index(address, transactions).balance() >= amount;
+            } catch (IOException e) {
+                return false;
             }
-            return txAmount >= amount;
         } else {
             return false;
         }
     }
 
     @Override
-    public synchronized com.shuffle.bitcoin.Transaction getConflictingTransaction(
+    public com.shuffle.bitcoin.Transaction getConflictingTransaction(
             com.shuffle.bitcoin.Transaction t, Address addr, long amount) throws CoinNetworkException, AddressFormatException {
 
         if (!(t instanceof Transaction)) throw new IllegalArgumentException();
@@ -392,26 +438,20 @@ public abstract class Bitcoin implements Coin {
             return null;
         }
 
-        // Ensures that all transactions have the bitcoinj field set
-        for (Bitcoin.Transaction tx : transactions) {
-            if (tx.bitcoinj == null) {
-                try {
-                    tx.bitcoinj = getTransaction(tx.hash);
-                } catch (IOException e) {
-                    // We should not have an IOException
-                    return null;
-                }
-            }
+        AddressIndex index;
+        try {
+            index = index(address, transactions);
+        } catch (IOException e) {
+            // We should not have an IOException
+            return null;
         }
 
-        for (Bitcoin.Transaction tx : transactions) {
-            for (TransactionInput input : tx.bitcoinj.getInputs()) {
-                // Can be multiple inputs for transaction parameter.
-                for (TransactionInput txInput : transaction.bitcoinj.getInputs()) {
-                    if (input.equals(txInput)) {
-                        return tx;
-                    }
-                }
+        // Another transaction which spends any of the same outputs.
+        org.bitcoinj.core.Transaction bitcoinj = transaction.loaded();
+        for (TransactionInput txInput : bitcoinj.getInputs()) {
+            Bitcoin.Transaction tx = index.spender(txInput.getOutpoint(), bitcoinj.getHash());
+            if (tx != null) {
+                return tx;
             }
         }
 
@@ -420,32 +460,118 @@ public abstract class Bitcoin implements Coin {
 
     public org.bitcoinj.core.Transaction signTransaction(org.bitcoinj.core.Transaction signTx, List<Bytestring> programSignatures) {
 
-        List<Script> inputScripts = new LinkedList<>();
-        for (Bytestring programs : programSignatures) {
-            if (!inputScripts.add(bytestringToInputScript(programs))) {
+        Map<String, List<Integer>> index = inputIndex(signTx);
+        SignatureHashes sighashes = new SignatureHashes(signTx);
+
+        // Check every script before any of them is added.
+        int[] inputs = new int[programSignatures.size()];
+        int n = 0;
+        for (Bytestring program : programSignatures) {
+            int i = verifyInputScript(signTx, index, sighashes, program);
+            if (i < 0) {
                 return null;
             }
+            inputs[n++] = i;
+        }
+
+        n = 0;
+        for (Bytestring program : programSignatures) {
+            signTx.getInput(inputs[n++]).setScriptSig(bytestringToInputScript(program));
         }
 
-        for (Script inScript : inputScripts) {
-            for (int i = 0; i < signTx.getInputs().size(); i++) {
-                TransactionInput input = signTx.getInput(i);
-                TransactionOutput connectedOutput = input.getConnectedOutput();
-                byte[] originalScript = input.getScriptBytes().clone();
-                input.setScriptSig(inScript);
+        return signTx;
+    }
+
+    // Index the inputs of a transaction by the hash of the key which can spend the output
+    // each one is connected to, so that we can find the input an input script belongs to
+    // without trying it against every input.
+    static Map<String, List<Integer>> inputIndex(org.bitcoinj.core.Transaction tx) {
+        Map<String, List<Integer>> index = new HashMap<>();
+
+        for (int i = 0; i < tx.getInputs().size(); i++) {
+            TransactionOutput connected = tx.getInput(i).getConnectedOutput();
+            if (connected == null) continue;
+
+            try {
+                Script scriptPubKey = connected.getScriptPubKey();
+                if (!scriptPubKey.isSentToAddress()) continue;
+
+                String hash = Utils.HEX.encode(scriptPubKey.getPubKeyHash());
+                List<Integer> inputs = index.get(hash);
+                if (inputs == null) {
+                    inputs = new ArrayList<>(1);
+                    index.put(hash, inputs);
+                }
+                inputs.add(i);
+            } catch (ScriptException e) {
+                // Not an output that we know how to spend.
+            }
+        }
+
+        return index;
+    }
+
+    // Find the input which a P2PKH input script spends and check that it really does.
+    // Returns the index of the input, or -1 if the script is not valid. The transaction
+    // is not changed, so many scripts may be checked at once.
+    static int verifyInputScript(org.bitcoinj.core.Transaction tx, Map<String, List<Integer>> index,
+                                 SignatureHashes sighashes, Bytestring program) {
+        try {
+            Script inputScript = new Script(program.bytes);
+
+            List<ScriptChunk> chunks = inputScript.getChunks();
+            if (chunks.size() != 2 || chunks.get(1).data == null) return -1;
+
+            List<Integer> inputs = index.get(Utils.HEX.encode(Utils.sha256hash160(chunks.get(1).data)));
+            if (inputs == null) return -1;
+
+            // The same key might be able to spend more than one input, but the signature
+            // is only valid for one of them.
+            for (int i : inputs) {
+                Script scriptPubKey = tx.getInput(i).getConnectedOutput().getScriptPubKey();
+                if (checkSig(chunks, sighashes.hash(i, scriptPubKey.getProgram()))) {
+                    return i;
+                }
+
+                // Let bitcoinj decide about anything which is not a plain SIGHASH_ALL
+                // signature, so that we accept exactly what it accepts.
                 try {
-                    input.verify(connectedOutput);
-                    break;
+                    inputScript.correctlySpends(tx, i, scriptPubKey);
+                    return i;
                 } catch (VerificationException e) {
-                    input.setScriptSig(this.bytestringToInputScript(new Bytestring(originalScript)));
-                    if (i == signTx.getInputs().size() - 1) {
-                        return null;
-                    }
+                    // Try the next one.
                 }
             }
+        } catch (VerificationException e) {
+            // The script could not be read.
         }
 
-        return signTx;
+        return -1;
+    }
+
+    // Check a P2PKH input script consisting of a SIGHASH_ALL signature and a key against
+    // the signature hash of the input. The key is assumed to match the output already.
+    // Anything this accepts, bitcoinj also accepts.
+    private static boolean checkSig(List<ScriptChunk> chunks, Sha256Hash hash) {
+        ScriptChunk sig = chunks.get(0);
+        ScriptChunk key = chunks.get(1);
+        if (!sig.isPushData() || sig.data == null || !sig.isShortestPossiblePushData()
+                || !key.isPushData() || !key.isShortestPossiblePushData()
+                || !ECKey.isPubKeyCanonical(key.data)) {
+            return false;
+        }
+
+        try {
+            TransactionSignature txSig = TransactionSignature.decodeFromBitcoin(sig.data, true);
+            if (txSig.sigHashMode() != org.bitcoinj.core.Transaction.SigHash.ALL || txSig.anyoneCanPay()) {
+                return false;
+            }
+
+            return ECKey.verify(hash.getBytes(), txSig, key.data);
+        } catch (RuntimeException e) {
+            // The signature or the key could not be read.
+            return false;
+        }
     }
 
     /**
@@ -453,27 +579,25 @@ public abstract class Bitcoin implements Coin {
      * as a Bytestring object.
      */
     public Bytestring getSignature(org.bitcoinj.core.Transaction signTx, ECKey privKey) {
+        return getSignature(signTx, inputIndex(signTx), new SignatureHashes(signTx), privKey);
+    }
 
-        org.bitcoinj.core.Transaction copyTx = signTx;
-
-        for (int i = 0; i < copyTx.getInputs().size(); i++) {
-            TransactionInput input = copyTx.getInput(i);
-            TransactionOutput connectedOutput = input.getConnectedOutput();
-            Sha256Hash hash = copyTx.hashForSignature(i, connectedOutput.getScriptPubKey(), org.bitcoinj.core.Transaction.SigHash.ALL, false);
-            ECKey.ECDSASignature ecSig = privKey.sign(hash);
-            TransactionSignature txSig = new TransactionSignature(ecSig, org.bitcoinj.core.Transaction.SigHash.ALL, false);
-            byte[] originalScript = input.getScriptBytes().clone();
-            Script inputScript = ScriptBuilder.createInputScript(txSig, ECKey.fromPublicOnly(privKey.getPubKey()));
-            input.setScriptSig(inputScript);
-            try {
-                input.verify(connectedOutput);
-                return new Bytestring(inputScript.getProgram());
-            } catch (VerificationException e) {
-                input.setScriptSig(this.bytestringToInputScript(new Bytestring(originalScript)));
-            }
+    // The input which the key can spend is found by its hash, so the transaction is
+    // hashed and signed only once.
+    Bytestring getSignature(org.bitcoinj.core.Transaction signTx, Map<String, List<Integer>> index,
+                            SignatureHashes sighashes, ECKey privKey) {
+
+        List<Integer> inputs = index.get(Utils.HEX.encode(privKey.getPubKeyHash()));
+        if (inputs == null) {
+            return null;
         }
 
-        return null;
+        int i = inputs.get(0);
+        Script scriptPubKey = signTx.getInput(i).getConnectedOutput().getScriptPubKey();
+        ECKey.ECDSASignature ecSig = privKey.sign(sighashes.hash(i, scriptPubKey.getProgram()));
+        TransactionSignature txSig = new TransactionSignature(ecSig, org.bitcoinj.core.Transaction.SigHash.ALL, false);
+        Script inputScript = ScriptBuilder.createInputScript(txSig, ECKey.fromPublicOnly(privKey.getPubKey()));
+        return new Bytestring(inputScript.getProgram());
     }
 
     // Converts a Bytestring object to a Script object.
@@ -481,24 +605,160 @@ public abstract class Bitcoin implements Coin {
         return new Script(program.bytes);
     }
 
+    // Where the blockchain is looked up. Instances with the same source share cached
+    // query results. Otherwise an instance only sees its own.
+    protected String source() {
+        return source;
+    }
+
     // Since we rely on 3rd party services to query the blockchain, by
     // default we cache the result.
-    protected synchronized List<Bitcoin.Transaction> getAddressTransactions(String address)
+    protected List<Bitcoin.Transaction> getAddressTransactions(final String address)
+            throws IOException, CoinNetworkException, AddressFormatException {
+
+        return addressCache.get(source() + " " + address, new QueryCache.Query<List<Bitcoin.Transaction>>() {
+            @Override
+            public List<Bitcoin.Transaction> run()
+                    throws IOException, CoinNetworkException, AddressFormatException {
+
+                List<Bitcoin.Transaction> txList = getAddressTransactionsInner(address);
+                return txList == null ? null : Collections.unmodifiableList(txList);
+            }
+        });
+    }
+
+    // Drop the history of an address from the cache, and its index, so that the next
+    // query about it asks the network. A backend may also have kept part of the history
+    // under a longer key which begins with the same one.
+    final void forget(String address) {
+        String key = source() + " " + address;
+        addressCache.remove(key);
+        addressCache.removeAll(key + " ");
+        indexCache.remove(key);
+    }
+
+    // The index of the unspent outputs in the history of an address. It is made again
+    // only when the history has been looked up again.
+    private AddressIndex index(String address, List<Bitcoin.Transaction> history) throws IOException {
+        String key = source() + " " + address;
+        AddressIndex index = indexCache.peek(key);
+        if (index != null && index.history == history) return index;
+
+        // Every transaction must be read. Those which are missing are looked up together.
+        List<String> missing = new ArrayList<>();
+        for (Bitcoin.Transaction tx : history) {
+            if (tx.loaded() == null) {
+                missing.add(tx.hash);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, org.bitcoinj.core.Transaction> found = lookupTransactions(missing);
+            for (Bitcoin.Transaction tx : history) {
+                if (tx.loaded() == null) {
+                    tx.bitcoinj = found.get(tx.hash);
+                    if (tx.bitcoinj == null) throw new IOException("Could not find transaction " + tx.hash);
+                }
+            }
+        }
+
+        index = new AddressIndex(address, netParams, history);
+        indexCache.put(key, index);
+        return index;
+    }
+
+    // The number of transactions involving an address, counting no further than limit.
+    // For callers who only need to know whether there are any, or more than one.
+    protected int countAddressTransactions(String address, int limit)
             throws IOException, CoinNetworkException, AddressFormatException {
 
-        long now = System.currentTimeMillis();
-        Cached cached = cache.get(address);
-        if (cached != null) {
-            if (now - cached.last < cach_expire) {
-                return cached.txList;
+        return Math.min(getAddressTransactions(address).size(), limit);
+    }
+
+    // Look up the histories of many addresses. Those which are not in the cache are asked
+    // for together, so that a backend which can answer many queries with one request
+    // only has to make one. Addresses which could not be looked up are left out.
+    protected Map<String, List<Bitcoin.Transaction>> getAddressTransactions(Collection<String> addresses)
+            throws IOException, CoinNetworkException, AddressFormatException {
+
+        return addressCache.getAll(source() + " ", addresses, new QueryCache.Batch<List<Bitcoin.Transaction>>() {
+            @Override
+            public Map<String, List<Bitcoin.Transaction>> run(List<String> missing)
+                    throws IOException, CoinNetworkException, AddressFormatException {
+
+                Map<String, List<Bitcoin.Transaction>> histories = new HashMap<>();
+                for (Map.Entry<String, List<Bitcoin.Transaction>> e
+                        : getAddressTransactionsInner(missing).entrySet()) {
+
+                    if (e.getValue() != null) {
+                        histories.put(e.getKey(), Collections.unmodifiableList(e.getValue()));
+                    }
+                }
+                return histories;
             }
+        });
+    }
+
+    // Look up many transactions by their hashes through the cache, asking for those which
+    // are not there together. Transactions which could not be found are left out.
+    final Map<String, org.bitcoinj.core.Transaction> lookupTransactions(Collection<String> hashes)
+            throws IOException {
+
+        try {
+            return transactionCache.getAll(source() + " ", hashes, new QueryCache.Batch<org.bitcoinj.core.Transaction>() {
+                @Override
+                public Map<String, org.bitcoinj.core.Transaction> run(List<String> missing) throws IOException {
+                    return getTransactions(missing);
+                }
+            });
+        } catch (CoinNetworkException | AddressFormatException e) {
+            // getTransactions does not throw these.
+            throw new IOException(e);
+        }
+    }
+
+    // If anything goes wrong here, it is only logged. Whatever needs an address which
+    // could not be looked up will try again and report the error itself.
+    @Override
+    public void prefetch(Collection<Address> addresses) {
+
+        List<String> strings = new ArrayList<>();
+        for (Address address : addresses) {
+            strings.add(address.toString());
         }
 
-        List<Bitcoin.Transaction> txList = getAddressTransactionsInner(address);
+        try {
+            // Histories which only came with the hashes of their transactions.
+            List<String> hashes = new ArrayList<>();
+            for (List<Bitcoin.Transaction> txList : getAddressTransactions(strings).values()) {
+                for (Bitcoin.Transaction tx : txList) {
+                    if (!tx.available()) {
+                        hashes.add(tx.hash);
+                    }
+                }
+            }
 
-        cache.put(address, new Cached(address, txList, System.currentTimeMillis()));
+            if (!hashes.isEmpty()) {
+                lookupTransactions(hashes);
+            }
+        } catch (IOException | CoinNetworkException | AddressFormatException e) {
+            log.warn("Could not look up addresses ahead of time: " + e.getMessage());
+        }
+    }
 
-        return txList;
+    // Look up a transaction by its hash through the cache.
+    final org.bitcoinj.core.Transaction lookupTransaction(final String transactionHash) throws IOException {
+        try {
+            return transactionCache.get(source() + " " + transactionHash, new QueryCache.Query<org.bitcoinj.core.Transaction>() {
+                @Override
+                public org.bitcoinj.core.Transaction run() throws IOException {
+                    return getTransaction(transactionHash);
+                }
+            });
+        } catch (CoinNetworkException | AddressFormatException e) {
+            // getTransaction does not throw these.
+            throw new IOException(e);
+        }
     }
 
     protected boolean send(Bitcoin.Transaction t) throws ExecutionException, InterruptedException, CoinNetworkException {
@@ -515,11 +775,40 @@ public abstract class Bitcoin implements Coin {
         return true;
     }
 
-    // Should NOT be synchronized.
+    // Should NOT be synchronized, since lookups are made by many threads at once.
     abstract protected List<Bitcoin.Transaction> getAddressTransactionsInner(String address)
             throws IOException, CoinNetworkException, AddressFormatException;
 
-    // Should be synchronized.
+    // Should NOT be synchronized either.
     abstract org.bitcoinj.core.Transaction getTransaction(String transactionHash)
             throws IOException;
+
+    // Look up the histories of many addresses. A backend which can answer many queries in
+    // one request should override this. By default they are looked up one at a time.
+    protected Map<String, List<Bitcoin.Transaction>> getAddressTransactionsInner(List<String> addresses)
+            throws IOException, CoinNetworkException, AddressFormatException {
+
+        Map<String, List<Bitcoin.Transaction>> histories = new HashMap<>();
+        for (String address : addresses) {
+            List<Bitcoin.Transaction> txList = getAddressTransactionsInner(address);
+            if (txList != null) {
+                histories.put(address, txList);
+            }
+        }
+        return histories;
+    }
+
+    // Look up many transactions by their hashes, by default one at a time.
+    Map<String, org.bitcoinj.core.Transaction> getTransactions(List<String> transactionHashes)
+            throws IOException {
+
+        Map<String, org.bitcoinj.core.Transaction> txs = new HashMap<>();
+        for (String hash : transactionHashes) {
+            org.bitcoinj.core.Transaction tx = getTransaction(hash);
+            if (tx != null) {
+                txs.put(hash, tx);
+            }
+        }
+        return txs;
+    }
 }
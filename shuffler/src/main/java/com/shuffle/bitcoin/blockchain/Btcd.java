@@ -10,7 +10,8 @@ package com.shuffle.bitcoin.blockchain;
 
 import com.shuffle.bitcoin.CoinNetworkException;
 
-import org.apache.commons.codec.binary.Base64;
+import com.google.common.util.concurrent.ListenableFuture;
+
 import org.bitcoinj.core.AddressFormatException;
 import org.bitcoinj.core.Context;
 import org.bitcoinj.core.NetworkParameters;
@@ -19,17 +20,18 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
+import java.io.InterruptedIOException;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.DatatypeConverter;
 import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
@@ -57,21 +59,36 @@ import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
  */
 public class Btcd extends Bitcoin {
 
-    private final String rpcuser;
-    private final String rpcpass;
+    // The most queries sent to btcd in one batch request.
+    static final int BATCH_SIZE = 50;
+
+    // The most requests sent to the same btcd at once, by all instances together. The JDK
+    // keeps up to five idle connections to the same server open to be used again.
+    static final int CONNECTIONS = 5;
+
+    // How long to wait to connect to btcd or for it to respond, in milliseconds.
+    static final int TIMEOUT = 30000;
+
     private final URL url;
+    private final JsonRpcClient rpc;
 
     public Btcd(NetworkParameters netParams, String rpcuser, String rpcpass)
             throws MalformedURLException {
 
+        this(netParams, defaultUrl(netParams), rpcuser, rpcpass);
+    }
+
+    public Btcd(NetworkParameters netParams, URL url, String rpcuser, String rpcpass) {
         super(netParams, 0);
-        this.rpcuser = rpcuser;
-        this.rpcpass = rpcpass;
+        this.url = url;
+        rpc = new JsonRpcClient(url, rpcuser, rpcpass, CONNECTIONS, TIMEOUT);
+    }
 
+    private static URL defaultUrl(NetworkParameters netParams) throws MalformedURLException {
         if (netParams.equals(NetworkParameters.fromID(NetworkParameters.ID_MAINNET))) {
-            url = new URL("http://127.0.0.1:8334");
+            return new URL("http://127.0.0.1:8334");
         } else if (netParams.equals(NetworkParameters.fromID(NetworkParameters.ID_TESTNET))) {
-            url = new URL("http://127.0.0.1:18334");
+            return new URL("http://127.0.0.1:18334");
         } else {
             throw new IllegalArgumentException("Invalid network parameters passed to btcd. ");
         }
@@ -80,120 +97,180 @@ public class Btcd extends Bitcoin {
     /**
      * This method takes in a transaction hash and returns a bitcoinj transaction object.
      */
-    synchronized org.bitcoinj.core.Transaction getTransaction(String transactionHash) throws IOException {
-
-        org.bitcoinj.core.Transaction tx = null;
-        String requestBody = "{\"jsonrpc\":\"2.0\",\"id\":\"null\",\"method\":\"getrawtransaction\", \"params\":[\"" + transactionHash + "\"]}";
-
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setDoOutput(true);
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setRequestProperty("Accept", "application/json");
-        Base64 b = new Base64();
-        String authString = rpcuser + ":" + rpcpass;
-        String encoding = b.encodeAsString(authString.getBytes());
-        connection.setRequestProperty("Authorization", "Basic " + encoding);
-        connection.setRequestProperty("Content-Length", Integer.toString(requestBody.getBytes().length));
-        connection.setDoInput(true);
-        OutputStream out = connection.getOutputStream();
-        out.write(requestBody.getBytes());
-
-        if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-            InputStream is = connection.getInputStream();
-            BufferedReader rd = new BufferedReader(new InputStreamReader(is));
-            String line;
-            StringBuffer response = new StringBuffer();
-            while ((line = rd.readLine()) != null) {
-                response.append(line);
-                response.append('\r');
-            }
-            rd.close();
+    org.bitcoinj.core.Transaction getTransaction(String transactionHash) throws IOException {
 
-            JSONObject json = new JSONObject(response.toString());
-            String hexTx = (String) json.get("result");
-            HexBinaryAdapter adapter = new HexBinaryAdapter();
-            byte[] bytearray = adapter.unmarshal(hexTx);
-            Context context = Context.getOrCreate(netParams);
-            tx = new org.bitcoinj.core.Transaction(netParams, bytearray);
+        String response = await(rpc.call(request("null", "getrawtransaction", transactionHash).toString()));
+        if (response == null) return null;
 
-        }
+        return transaction(new JSONObject(response));
+    }
 
-        out.flush();
-        out.close();
+    /**
+     * This method will take in an address hash and return a List of all transactions associated with
+     * this address.  These transactions are in bitcoinj's Transaction format.
+     */
+    public List<Transaction> getAddressTransactionsInner(String address) throws IOException {
+
+        SearchRawTransactions search = await(rpc.call(
+                request("null", "searchrawtransactions", address).toString(), search(Integer.MAX_VALUE)));
+        if (search == null) return null;
+
+        return search.result();
+    }
+
+    // Only as much of the history is read as it takes to count to limit. What was read is
+    // cached under a key which includes the limit, so that players counting the same
+    // address at the same time only cause one request.
+    @Override
+    protected int countAddressTransactions(final String address, final int limit) throws IOException {
+        String key = source() + " " + address;
+        List<Transaction> txList = addressCache.peek(key);
+        if (txList != null) return Math.min(txList.size(), limit);
+
+        List<Transaction> history;
+        try {
+            history = addressCache.get(key + " " + limit, new QueryCache.Query<List<Transaction>>() {
+                @Override
+                public List<Transaction> run() throws IOException {
+                    SearchRawTransactions search = await(rpc.call(
+                            request("null", "searchrawtransactions", address).toString(), search(limit)));
+                    return search == null ? null : Collections.unmodifiableList(search.result());
+                }
+            });
+        } catch (CoinNetworkException | AddressFormatException e) {
+            // The query does not throw these.
+            throw new IOException(e);
+        }
+        if (history == null) throw new IOException("Could not look up " + address);
 
-        return tx;
+        // If there were fewer than limit, we have read the whole history, so keep it.
+        if (history.size() < limit) {
+            addressCache.put(key, history);
+        }
 
+        return history.size();
     }
 
     /**
-     * This method will take in an address hash and return a List of all transactions associated with
-     * this address.  These transactions are in bitcoinj's Transaction format.
+     * Looks up many transactions with JSON-RPC batch requests.
      */
-    public synchronized List<Transaction> getAddressTransactionsInner(String address) throws IOException {
-
-        List<Transaction> txList = null;
-        String requestBody = "{\"jsonrpc\":\"2.0\",\"id\":\"null\",\"method\":\"searchrawtransactions\", \"params\":[\"" + address + "\"]}";
-
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setDoOutput(true);
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setRequestProperty("Accept", "application/json");
-        Base64 b = new Base64();
-        String authString = rpcuser + ":" + rpcpass;
-        String encoding = b.encodeAsString(authString.getBytes());
-        connection.setRequestProperty("Authorization", "Basic " + encoding);
-        connection.setRequestProperty("Content-Length", Integer.toString(requestBody.getBytes().length));
-        connection.setDoInput(true);
-        OutputStream out = connection.getOutputStream();
-        out.write(requestBody.getBytes());
-
-        if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-            InputStream is = connection.getInputStream();
-            BufferedReader rd = new BufferedReader(new InputStreamReader(is));
-            String line;
-            StringBuffer response = new StringBuffer();
-            while ((line = rd.readLine()) != null) {
-                response.append(line);
-                response.append('\r');
-            }
-            rd.close();
-
-            JSONObject json = new JSONObject(response.toString());
-            JSONArray jsonarray = null;
-            txList = new LinkedList<>();
-            if (json.isNull("result")) {
-                return txList;
-            } else {
-                jsonarray = json.getJSONArray("result");
+    @Override
+    Map<String, org.bitcoinj.core.Transaction> getTransactions(List<String> transactionHashes)
+            throws IOException {
+
+        Map<String, org.bitcoinj.core.Transaction> txs = new HashMap<>();
+        for (Future<String> future : batch("getrawtransaction", transactionHashes, JsonRpcClient.STRING)) {
+            String response = await(future);
+            if (response == null) continue;
+
+            JSONArray jsonarray;
+            try {
+                jsonarray = new JSONArray(response);
+            } catch (JSONException e) {
+                throw new IOException("Expected a batch response from btcd: " + response, e);
             }
+
             for (int i = 0; i < jsonarray.length(); i++) {
-                JSONObject currentJson = jsonarray.getJSONObject(i);
-                String txid = currentJson.get("txid").toString();
-                HexBinaryAdapter adapter = new HexBinaryAdapter();
-                byte[] bytearray = adapter.unmarshal(currentJson.get("hex").toString());
-                Context context = Context.getOrCreate(netParams);
-                int confirmations;
-                try {
-                    confirmations = Integer.parseInt(currentJson.get("confirmations").toString());
-                } catch (JSONException e) {
-                    throw new RuntimeException("The transaction " + txid + " does not seem to have any confirmations", e);
+                JSONObject json = jsonarray.getJSONObject(i);
+                int id = json.optInt("id", -1);
+                if (id < 0 || id >= transactionHashes.size()) continue;
+
+                org.bitcoinj.core.Transaction tx = transaction(json);
+                if (tx != null) {
+                    txs.put(transactionHashes.get(id), tx);
                 }
-                boolean confirmed;
-                confirmed = confirmations != 0;
-                org.bitcoinj.core.Transaction bitTx = new org.bitcoinj.core.Transaction(netParams, bytearray);
-                Transaction tx = new Transaction(txid, bitTx, false, confirmed);
-                txList.add(tx);
             }
+        }
+
+        return txs;
+    }
+
+    /**
+     * Looks up the histories of many addresses with JSON-RPC batch requests.
+     */
+    @Override
+    protected Map<String, List<Transaction>> getAddressTransactionsInner(List<String> addresses)
+            throws IOException {
+
+        Map<String, List<Transaction>> histories = new HashMap<>();
+        for (Future<SearchRawTransactions> future
+                : batch("searchrawtransactions", addresses, search(Integer.MAX_VALUE))) {
+
+            SearchRawTransactions search = await(future);
+            if (search == null) continue;
 
+            for (Map.Entry<Integer, List<Transaction>> result : search.results().entrySet()) {
+                int id = result.getKey();
+                if (id >= 0 && id < addresses.size()) {
+                    histories.put(addresses.get(id), result.getValue());
+                }
+            }
         }
 
-        out.flush();
-        out.close();
+        return histories;
+    }
 
-        return txList;
+    // Reads the response to searchrawtransactions as it arrives, keeping up to limit
+    // transactions for each address.
+    private JsonRpcClient.Handler<SearchRawTransactions> search(final int limit) {
+        return new JsonRpcClient.Handler<SearchRawTransactions>() {
+            @Override
+            public SearchRawTransactions read(Reader body) throws IOException {
+                SearchRawTransactions search = new SearchRawTransactions(Btcd.this, limit);
+                search.parse(body);
+                return search;
+            }
+        };
+    }
 
+    private static JSONObject request(Object id, String method, String param) {
+        return new JSONObject()
+                .put("jsonrpc", "2.0")
+                .put("id", id)
+                .put("method", method)
+                .put("params", new JSONArray().put(param));
+    }
+
+    // Make the same call with each of the given parameters, up to BATCH_SIZE of them in a
+    // request, with the index of the parameter as the id of the call. Every request is
+    // sent before waiting for any of them.
+    private <X> List<Future<X>> batch(String method, List<String> params, JsonRpcClient.Handler<X> handler) {
+        List<Future<X>> sent = new ArrayList<>();
+        for (int i = 0; i < params.size(); i += BATCH_SIZE) {
+            JSONArray requests = new JSONArray();
+            for (int j = i; j < Math.min(i + BATCH_SIZE, params.size()); j++) {
+                requests.put(request(j, method, params.get(j)));
+            }
+            sent.add(rpc.call(requests.toString(), handler));
+        }
+
+        return sent;
+    }
+
+    // Wait for a response from btcd.
+    private static <X> X await(Future<X> response) throws IOException {
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for btcd.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    // Read the result of a call to getrawtransaction.
+    private org.bitcoinj.core.Transaction transaction(JSONObject json) {
+        if (json.isNull("result")) return null;
+
+        String hexTx = (String) json.get("result");
+        HexBinaryAdapter adapter = new HexBinaryAdapter();
+        byte[] bytearray = adapter.unmarshal(hexTx);
+        Context context = Context.getOrCreate(netParams);
+        return new org.bitcoinj.core.Transaction(netParams, bytearray);
     }
 
     @Override
@@ -210,72 +287,19 @@ public class Btcd extends Bitcoin {
         } catch (IOException er) {
             return false;
         }
-        String requestBody = "{\"jsonrpc\":\"2.0\",\"id\":\"null\",\"method\":\"sendrawtransaction\", \"params\":[\"" + hexTx + "\"]}";
 
-        HttpURLConnection connection = null;
-        try {
-            connection = (HttpURLConnection) url.openConnection();
-        } catch (IOException e) {
-            return false;
-        }
-        connection.setDoOutput(true);
-        try {
-            connection.setRequestMethod("POST");
-        } catch (java.net.ProtocolException e) {
-            return false;
-        }
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setRequestProperty("Accept", "application/json");
-        Base64 b = new Base64();
-        String authString = rpcuser + ":" + rpcpass;
-        String encoding = b.encodeAsString(authString.getBytes());
-        connection.setRequestProperty("Authorization", "Basic " + encoding);
-        connection.setRequestProperty("Content-Length", Integer.toString(requestBody.getBytes().length));
-        connection.setDoInput(true);
-        OutputStream out;
-        try {
-            out = connection.getOutputStream();
-        } catch (IOException e) {
-            return false;
-        }
-        try {
-            out.write(requestBody.getBytes());
-        } catch (IOException e) {
-            return false;
-        }
-
-        try {
-            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) return false;
-        } catch (IOException e) {
-            return false;
-        }
-
-        InputStream is;
-        try {
-            is = connection.getInputStream();
-        } catch (IOException e) {
-            return false;
-        }
-        BufferedReader rd = new BufferedReader(new InputStreamReader(is));
-        String line;
-        StringBuffer response = new StringBuffer();
-        while (true) {
-            try {
-                if ((line = rd.readLine()) == null) break;
-            } catch (IOException e) {
-                return false;
-            }
-            response.append(line);
-            response.append('\r');
-        }
+        ListenableFuture<String> sent = rpc.call(request("null", "sendrawtransaction", hexTx).toString());
 
+        String response;
         try {
-            rd.close();
-        } catch (IOException e) {
-            return false;
+            response = sent.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) return false;
+            throw e;
         }
+        if (response == null) return false;
 
-        JSONObject json = new JSONObject(response.toString());
+        JSONObject json = new JSONObject(response);
         if (json.isNull("result")) {
             JSONObject errorObj = json.getJSONObject("error");
             String errorMsg = errorObj.getString("message");
@@ -290,9 +314,10 @@ public class Btcd extends Bitcoin {
         return true;
     }
 
+    // Every instance talking to the same btcd shares cached results.
     @Override
-    protected synchronized List<Transaction> getAddressTransactions(String address) throws IOException, CoinNetworkException, AddressFormatException {
-        return getAddressTransactionsInner(address);
+    protected String source() {
+        return url.toString();
     }
 
 }
@@ -0,0 +1,177 @@
+/**
+ *
+ * Copyright © 2016 Mycelium.
+ * Use of this source code is governed by an ISC
+ * license that can be found in the LICENSE file.
+ *
+ */
+
+package com.shuffle.bitcoin.blockchain;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.apache.commons.codec.binary.Base64;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends JSON-RPC requests over HTTP without making the caller wait, so that independent
+ * lookups can be in flight at the same time.
+ *
+ * At most a fixed number of requests are sent to each server at once, from all clients
+ * together, and the rest wait their turn.
+ * Responses are read as they arrive and then closed, which lets the JDK keep the
+ * connection open and use it again for the next request instead of connecting every time.
+ */
+final class JsonRpcClient {
+    private static final AtomicInteger clients = new AtomicInteger();
+
+    // Reads the body of a response as it arrives. It need not read all of it.
+    interface Handler<X> {
+        X read(Reader body) throws IOException;
+    }
+
+    // Reads the whole body into a string.
+    static final Handler<String> STRING = new Handler<String>() {
+        @Override
+        public String read(Reader body) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            char[] buf = new char[8192];
+            int n;
+            while ((n = body.read(buf)) != -1) {
+                sb.append(buf, 0, n);
+            }
+            return sb.toString();
+        }
+    };
+
+    // The threads which send requests, one pool for each server. Every client talking to
+    // the same server shares its pool, so that however many there are in the process, no
+    // more requests are sent to it at once than the pool has threads.
+    private static final ConcurrentMap<String, ListeningExecutorService> pools
+            = new ConcurrentHashMap<>();
+
+    private final URL url;
+    private final String authorization;
+    private final int timeout;
+    private final ListeningExecutorService executor;
+
+    // timeout is in milliseconds, and applies separately to connecting and to waiting for
+    // the response. If there is already a client for the same server, its limit on the
+    // number of connections is kept.
+    JsonRpcClient(URL url, String user, String pass, int connections, int timeout) {
+        if (connections < 1 || timeout < 0) throw new IllegalArgumentException();
+
+        this.url = url;
+        this.timeout = timeout;
+        authorization = "Basic " + new Base64().encodeAsString(
+                (user + ":" + pass).getBytes(StandardCharsets.UTF_8));
+
+        ListeningExecutorService executor = pools.get(url.toString());
+        if (executor == null) {
+            ListeningExecutorService pool = pool(connections);
+            executor = pools.putIfAbsent(url.toString(), pool);
+            if (executor == null) {
+                executor = pool;
+            } else {
+                pool.shutdown();
+            }
+        }
+        this.executor = executor;
+    }
+
+    private static ListeningExecutorService pool(int connections) {
+        final String name = "json rpc " + clients.incrementAndGet();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                connections, connections, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger threads = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name + " " + threads.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        // Nothing is left running while the pool is not being used.
+        pool.allowCoreThreadTimeOut(true);
+        return MoreExecutors.listeningDecorator(pool);
+    }
+
+    // Send a request. The future holds the body of the response, or null if it was
+    // not successful.
+    ListenableFuture<String> call(String requestBody) {
+        return call(requestBody, STRING);
+    }
+
+    // Send a request. The future holds what the handler read from the response, or
+    // null if it was not successful.
+    <X> ListenableFuture<X> call(final String requestBody, final Handler<X> handler) {
+        return executor.submit(new Callable<X>() {
+            @Override
+            public X call() throws IOException {
+                return post(requestBody, handler);
+            }
+        });
+    }
+
+    private <X> X post(String requestBody, Handler<X> handler) throws IOException {
+        byte[] body = requestBody.getBytes(StandardCharsets.UTF_8);
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setRequestProperty("Accept", "application/json");
+        connection.setRequestProperty("Authorization", authorization);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setDoInput(true);
+
+        OutputStream out = connection.getOutputStream();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            // Read the error anyway so that the connection can be used again.
+            InputStream error = connection.getErrorStream();
+            if (error != null) read(error, STRING);
+            return null;
+        }
+
+        return read(connection.getInputStream(), handler);
+    }
+
+    // If the handler stops early, the JDK decides whether to skip the rest of the
+    // response or to give up on the connection.
+    private static <X> X read(InputStream in, Handler<X> handler) throws IOException {
+        try {
+            return handler.read(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/**
+ *
+ * Copyright © 2016 Mycelium.
+ * Use of this source code is governed by an ISC
+ * license that can be found in the LICENSE file.
+ *
+ */
+
+package com.shuffle.bitcoin.blockchain;
+
+import com.shuffle.bitcoin.CoinNetworkException;
+import com.shuffle.bitcoin.LruMap;
+
+import org.bitcoinj.core.AddressFormatException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of blockchain queries, shared by every thread in the process so that players
+ * who look up the same thing at about the same time only cause one request.
+ *
+ * A result is kept for a fixed time after it arrives, and the cache holds a fixed number
+ * of them, forgetting the least recently used ones first. If a query is already in
+ * flight when the same one is asked for, the second caller waits for the first one's
+ * result instead of making another request. Failures and null results are not kept.
+ */
+public final class QueryCache<V> {
+
+    // A query to the blockchain, made when a result is not in the cache.
+    public interface Query<V> {
+        V run() throws IOException, CoinNetworkException, AddressFormatException;
+    }
+
+    // Many queries made together, for a backend which can answer them with one request.
+    // Results are returned by name, leaving out those which were not found.
+    public interface Batch<V> {
+        Map<String, V> run(List<String> names) throws IOException, CoinNetworkException, AddressFormatException;
+    }
+
+    private static final class Entry<V> {
+        final FutureTask<V> task;
+
+        // When the result stops being valid. Long.MAX_VALUE while the query is in flight.
+        long expires = Long.MAX_VALUE;
+
+        Entry(FutureTask<V> task) {
+            this.task = task;
+        }
+    }
+
+    private static final Runnable nothing = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private final long expire;
+    private final LruMap<String, Entry<V>> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // expire is in milliseconds.
+    public QueryCache(int capacity, long expire) {
+        if (capacity < 1 || expire < 0) throw new IllegalArgumentException();
+
+        this.expire = expire;
+        entries = new LruMap<>(capacity);
+    }
+
+    public V get(String key, final Query<V> query)
+            throws IOException, CoinNetworkException, AddressFormatException {
+
+        Entry<V> entry;
+        boolean mine = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null || entry.expires <= System.currentTimeMillis()) {
+                entry = new Entry<>(new FutureTask<>(new Callable<V>() {
+                    @Override
+                    public V call() throws Exception {
+                        return query.run();
+                    }
+                }));
+                entries.put(key, entry);
+                mine = true;
+            }
+        }
+
+        (mine ? misses : hits).incrementAndGet();
+
+        if (mine) {
+            entry.task.run();
+            finish(key, entry);
+        }
+
+        return result(key, entry);
+    }
+
+    // Look up many results at once. The key of each is prefix + name. Those which are
+    // neither in the cache nor in flight are asked for together with one batch query,
+    // and count as misses. The rest are shared as in get, and count as hits. Names for
+    // which there is no result are left out.
+    public Map<String, V> getAll(String prefix, Collection<String> names, final Batch<V> batch)
+            throws IOException, CoinNetworkException, AddressFormatException {
+
+        final List<String> missing = new ArrayList<>();
+        final FutureTask<Map<String, V>> request = new FutureTask<>(new Callable<Map<String, V>>() {
+            @Override
+            public Map<String, V> call() throws Exception {
+                return batch.run(missing);
+            }
+        });
+
+        Map<String, Entry<V>> found = new LinkedHashMap<>();
+        synchronized (entries) {
+            for (final String name : new LinkedHashSet<>(names)) {
+                Entry<V> entry = entries.get(prefix + name);
+                if (entry == null || entry.expires <= System.currentTimeMillis()) {
+                    // The result is taken from that of the batch query once it has been made.
+                    entry = new Entry<>(new FutureTask<>(new Callable<V>() {
+                        @Override
+                        public V call() throws Exception {
+                            Map<String, V> results;
+                            try {
+                                results = request.get();
+                            } catch (ExecutionException e) {
+                                Throwable cause = e.getCause();
+                                if (cause instanceof Exception) throw (Exception) cause;
+                                throw (Error) cause;
+                            }
+                            return results == null ? null : results.get(name);
+                        }
+                    }));
+                    entries.put(prefix + name, entry);
+                    missing.add(name);
+                }
+                found.put(name, entry);
+            }
+        }
+
+        hits.addAndGet(found.size() - missing.size());
+        misses.addAndGet(missing.size());
+
+        if (!missing.isEmpty()) {
+            request.run();
+
+            for (String name : missing) {
+                Entry<V> entry = found.get(name);
+                entry.task.run();
+                finish(prefix + name, entry);
+            }
+        }
+
+        Map<String, V> results = new HashMap<>();
+        for (Map.Entry<String, Entry<V>> e : found.entrySet()) {
+            V v = result(prefix + e.getKey(), e.getValue());
+            if (v != null) {
+                results.put(e.getKey(), v);
+            }
+        }
+        return results;
+    }
+
+    // Keep the result of a query which we have just made, or drop it if it failed.
+    private void finish(String key, Entry<V> entry) {
+        synchronized (entries) {
+            if (done(entry.task) != null) {
+                entry.expires = System.currentTimeMillis() + expire;
+            } else if (entries.get(key) == entry) {
+                entries.remove(key);
+            }
+        }
+    }
+
+    // Wait for the result of a query, which may have been made by another thread.
+    private V result(String key, Entry<V> entry)
+            throws IOException, CoinNetworkException, AddressFormatException {
+
+        try {
+            return entry.task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + key);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof CoinNetworkException) throw (CoinNetworkException) cause;
+            if (cause instanceof AddressFormatException) throw (AddressFormatException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    // A result which is already in the cache, or null. Does not wait for queries in
+    // flight. Since no query is made, this counts as neither a hit nor a miss.
+    public V peek(String key) {
+        Entry<V> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.expires <= System.currentTimeMillis()) entry = null;
+        }
+
+        return entry == null ? null : done(entry.task);
+    }
+
+    // Remember a result which was found some other way.
+    public void put(String key, V v) {
+        if (v == null) throw new NullPointerException();
+
+        FutureTask<V> task = new FutureTask<>(nothing, v);
+        task.run();
+
+        Entry<V> entry = new Entry<>(task);
+        entry.expires = System.currentTimeMillis() + expire;
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    // The result of a finished query, or null.
+    private static <V> V done(FutureTask<V> task) {
+        if (!task.isDone()) return null;
+
+        try {
+            return task.get();
+        } catch (InterruptedException | ExecutionException e) {
+            return null;
+        }
+    }
+
+    // Forget a result, for example because it is known to have changed.
+    public void remove(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    // Forget every result whose key begins with prefix.
+    public void removeAll(String prefix) {
+        synchronized (entries) {
+            Iterator<String> keys = entries.keySet().iterator();
+            while (keys.hasNext()) {
+                if (keys.next().startsWith(prefix)) keys.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // The number of times a result was found in the cache or already on its way.
+    public long hits() {
+        return hits.get();
+    }
+
+    // The number of times a query had to be made.
+    public long misses() {
+        return misses.get();
+    }
+
+    public double hitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+}
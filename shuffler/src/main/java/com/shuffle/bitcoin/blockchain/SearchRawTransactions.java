@@ -0,0 +1,215 @@
+/**
+ *
+ * Copyright © 2016 Mycelium.
+ * Use of this source code is governed by an ISC
+ * license that can be found in the LICENSE file.
+ *
+ */
+
+package com.shuffle.bitcoin.blockchain;
+
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the response to searchrawtransactions, or a batch of them, as it arrives.
+ *
+ * Only the hash, the confirmations, and the hex of each transaction are kept, and the hex
+ * is not deserialized until someone asks for it. Everything else btcd says about the
+ * transaction is skipped over. A single response stops being read once limit
+ * transactions have been found, so that a caller who only wants to know whether there
+ * are any does not have to wait for all of them.
+ */
+final class SearchRawTransactions implements ContentHandler {
+    private final Bitcoin bitcoin;
+    private final int limit;
+
+    // How deep we are in objects and arrays.
+    private int depth = 0;
+
+    // The depth of a response object, which is 2 in a batch and 1 otherwise.
+    private int response = 0;
+
+    // The key of the entry we are in, in the response and in the transaction.
+    private String responseKey = null;
+    private String txKey = null;
+
+    // The response being read.
+    private Object id = null;
+    private List<Bitcoin.Transaction> found = null;
+    private boolean inResult = false;
+
+    // The transaction being read.
+    private String txid = null;
+    private String hex = null;
+    private Object confirmations = null;
+
+    private List<Bitcoin.Transaction> result = Collections.emptyList();
+    private final Map<Integer, List<Bitcoin.Transaction>> results = new HashMap<>();
+
+    SearchRawTransactions(Bitcoin bitcoin, int limit) {
+        if (limit < 1) throw new IllegalArgumentException();
+
+        this.bitcoin = bitcoin;
+        this.limit = limit;
+    }
+
+    void parse(Reader body) throws IOException {
+        try {
+            new JSONParser().parse(body, this);
+        } catch (ParseException e) {
+            throw new IOException("Could not read response from btcd: " + e, e);
+        }
+    }
+
+    // The transactions in a response which was not part of a batch. Empty if there was
+    // no result.
+    List<Bitcoin.Transaction> result() {
+        return result;
+    }
+
+    // The transactions in each response of a batch, by id.
+    Map<Integer, List<Bitcoin.Transaction>> results() {
+        return results;
+    }
+
+    private boolean batch() {
+        return response == 2;
+    }
+
+    @Override
+    public void startJSON() {
+    }
+
+    @Override
+    public void endJSON() {
+    }
+
+    @Override
+    public boolean startObject() {
+        depth++;
+        if (depth == 1) {
+            response = 1;
+        }
+
+        if (depth == response) {
+            id = null;
+            found = null;
+        } else if (inResult && depth == response + 2) {
+            txid = null;
+            hex = null;
+            confirmations = null;
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean endObject() {
+        if (inResult && depth == response + 2) {
+            if (confirmations == null) {
+                throw new RuntimeException("The transaction " + txid + " does not seem to have any confirmations");
+            }
+
+            if (found.size() < limit) {
+                boolean confirmed = Integer.parseInt(confirmations.toString()) != 0;
+                found.add(bitcoin.new Transaction(txid, hex, false, confirmed));
+
+                // There is no need to read the rest.
+                if (!batch() && found.size() == limit) {
+                    result = found;
+                    return false;
+                }
+            }
+        } else if (depth == response) {
+            List<Bitcoin.Transaction> txList = found == null ? new LinkedList<Bitcoin.Transaction>() : found;
+            if (!batch()) {
+                result = txList;
+            } else if (id instanceof Number) {
+                results.put(((Number) id).intValue(), txList);
+            }
+        }
+
+        depth--;
+        return true;
+    }
+
+    @Override
+    public boolean startObjectEntry(String key) {
+        if (depth == response) {
+            responseKey = key;
+        } else if (inResult && depth == response + 2) {
+            txKey = key;
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean endObjectEntry() {
+        if (depth == response) {
+            responseKey = null;
+        } else if (inResult && depth == response + 2) {
+            txKey = null;
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean startArray() {
+        depth++;
+        if (depth == 1) {
+            response = 2;
+        }
+
+        if (depth == response + 1 && "result".equals(responseKey)) {
+            inResult = true;
+            found = new LinkedList<>();
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean endArray() {
+        if (depth == response + 1) {
+            inResult = false;
+        }
+
+        depth--;
+        return true;
+    }
+
+    @Override
+    public boolean primitive(Object value) {
+        if (depth == response) {
+            if ("id".equals(responseKey)) {
+                id = value;
+            }
+        } else if (inResult && depth == response + 2 && txKey != null) {
+            switch (txKey) {
+                case "txid":
+                    txid = (String) value;
+                    break;
+                case "hex":
+                    hex = (String) value;
+                    break;
+                case "confirmations":
+                    confirmations = value;
+                    break;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ *
+ * Copyright © 2016 Mycelium.
+ * Use of this source code is governed by an ISC
+ * license that can be found in the LICENSE file.
+ *
+ */
+
+package com.shuffle.bitcoin.blockchain;
+
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.core.VarInt;
+import org.bitcoinj.crypto.TransactionSignature;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Computes the SIGHASH_ALL signature hashes of the inputs of a transaction.
+ *
+ * bitcoinj serializes the whole transaction again for every input it hashes. Apart from
+ * the script of the input being signed, which is replaced by the script of the output it
+ * spends, the serialization is the same for every input, so here it is made once and the
+ * hash of each input is computed from it. Hashes are remembered, since every input is
+ * hashed once when it is signed and again each time a signature for it is checked.
+ *
+ * The transaction must not have its inputs or outputs changed afterwards. Input scripts
+ * may change, since they are not part of what is signed.
+ */
+final class SignatureHashes {
+
+    // The hash of an input along with the script it was computed with.
+    private static final class Entry {
+        final byte[] script;
+        final Sha256Hash hash;
+
+        Entry(byte[] script, Sha256Hash hash) {
+            this.script = script;
+            this.hash = hash;
+        }
+    }
+
+    // The version and the number of inputs.
+    private final byte[] head;
+
+    // Every input with an empty script.
+    private final byte[] inputs;
+
+    // Where each input begins in inputs.
+    private final int[] offsets;
+
+    // The outputs, the lock time, and the hash type.
+    private final byte[] tail;
+
+    // Entries are immutable, so they can be shared between threads without a lock.
+    private final Entry[] hashes;
+
+    SignatureHashes(Transaction tx) {
+        int n = tx.getInputs().size();
+        offsets = new int[n];
+        hashes = new Entry[n];
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Utils.uint32ToByteStreamLE(tx.getVersion(), out);
+            out.write(new VarInt(n).encode());
+            head = out.toByteArray();
+
+            out = new ByteArrayOutputStream();
+            for (int i = 0; i < n; i++) {
+                TransactionInput input = tx.getInput(i);
+                offsets[i] = out.size();
+                out.write(input.getOutpoint().bitcoinSerialize());
+                out.write(0);
+                Utils.uint32ToByteStreamLE(input.getSequenceNumber(), out);
+            }
+            inputs = out.toByteArray();
+
+            out = new ByteArrayOutputStream();
+            out.write(new VarInt(tx.getOutputs().size()).encode());
+            for (TransactionOutput output : tx.getOutputs()) {
+                out.write(output.bitcoinSerialize());
+            }
+            Utils.uint32ToByteStreamLE(tx.getLockTime(), out);
+            Utils.uint32ToByteStreamLE(TransactionSignature.calcSigHashValue(Transaction.SigHash.ALL, false), out);
+            tail = out.toByteArray();
+        } catch (IOException e) {
+            // Cannot happen with a ByteArrayOutputStream.
+            throw new RuntimeException(e);
+        }
+    }
+
+    // The SIGHASH_ALL hash of an input, given the script of the output it spends. The
+    // script must not contain OP_CODESEPARATOR, which is true of any P2PKH output.
+    Sha256Hash hash(int index, byte[] script) {
+        Entry e = hashes[index];
+        if (e != null && Arrays.equals(e.script, script)) {
+            return e.hash;
+        }
+
+        // The input being signed is the outpoint, the script, and the sequence number.
+        int outpoint = offsets[index] + 36;
+        int sequence = outpoint + 1;
+
+        MessageDigest digest = Sha256Hash.newDigest();
+        digest.update(head);
+        digest.update(inputs, 0, outpoint);
+        digest.update(new VarInt(script.length).encode());
+        digest.update(script);
+        digest.update(inputs, sequence, inputs.length - sequence);
+        digest.update(tail);
+
+        Sha256Hash hash = Sha256Hash.wrap(digest.digest(digest.digest()));
+        hashes[index] = new Entry(script.clone(), hash);
+        return hash;
+    }
+}
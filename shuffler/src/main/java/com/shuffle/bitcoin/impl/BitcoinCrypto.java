@@ -30,11 +30,10 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
-import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
+import java.security.Provider;
 import java.security.PublicKey;
-import java.security.SecureRandom;
 import java.security.Security;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
@@ -49,11 +48,14 @@ import javax.crypto.Cipher;
 
 public class BitcoinCrypto implements Crypto {
 
-   private final SecureRandom sr;
    // Figure out which network we should connect to. Each one gets its own set of files.
    NetworkParameters params;
    KeyChainGroup keyChainGroup;
-   private final KeyPairGenerator keyPG;
+   // Fresh decryption keys, made in the background. The pool is only started when the
+   // first key is asked for, so that nothing is left running if the constructor fails.
+   private KeyPool keys = null;
+   private boolean closed = false;
+   static final int KEY_POOL_SIZE = 8;
    WalletAppKit kit;
    String fileprefix = "shufflepuff";
 
@@ -81,9 +83,6 @@ public class BitcoinCrypto implements Crypto {
       this.keyChainGroup = new KeyChainGroup(networkParameters);
       Security.insertProviderAt(new BouncyCastleProvider(), 1);
       crashIfJCEMissing();
-      //this.sr = SecureRandom.getInstance("SHA1PRNG", new BouncyCastleProvider());
-      this.sr = SecureRandom.getInstance("SHA1PRNG");
-      this.keyPG = KeyPairGenerator.getInstance("ECIES", new BouncyCastleProvider());
       //this.kit = getKit();
       //this.wallet = getKit().wallet();
 
@@ -101,13 +100,27 @@ public class BitcoinCrypto implements Crypto {
       this.keyChainGroup = new KeyChainGroup(networkParameters, seed);
       Security.insertProviderAt(new BouncyCastleProvider(), 1);
       crashIfJCEMissing();
-      //this.sr = SecureRandom.getInstance("SHA1PRNG", new BouncyCastleProvider());
-      this.sr = SecureRandom.getInstance("SHA1PRNG");
-      this.keyPG = KeyPairGenerator.getInstance("ECIES", new BouncyCastleProvider());
       //this.kit = initKit(seed);
       //this.wallet = kit.wallet();
    }
 
+   // Stop making decryption keys and get rid of any that were not used.
+   public synchronized void close() {
+      closed = true;
+      if (keys != null) {
+         keys.close();
+      }
+   }
+
+   private synchronized KeyPool keys() {
+      if (closed) throw new IllegalStateException("Key pool is closed.");
+
+      if (keys == null) {
+         keys = new KeyPool(KEY_POOL_SIZE);
+      }
+      return keys;
+   }
+
    public NetworkParameters getParams() {
       return params;
    }
@@ -215,36 +228,51 @@ public class BitcoinCrypto implements Crypto {
       }
    }
 
+   // Making a provider is slow, so there is only one. Key factories are not safe to
+   // share between threads, so each thread gets its own.
+   private static final Provider provider = new BouncyCastleProvider();
+   private static final ThreadLocal<KeyFactory> keyFactory = new ThreadLocal<KeyFactory>() {
+      @Override
+      protected KeyFactory initialValue() {
+         try {
+            return KeyFactory.getInstance("ECDSA", provider);
+         } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+         }
+      }
+   };
+
    public static PrivateKey loadPrivateKey(String key64) throws GeneralSecurityException {
       byte[] clear = Base64.decode(key64);
       PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(clear);
-      KeyFactory fact = KeyFactory.getInstance("ECDSA", new BouncyCastleProvider());
-      PrivateKey priv = fact.generatePrivate(keySpec);
+      PrivateKey priv = keyFactory.get().generatePrivate(keySpec);
       Arrays.fill(clear, (byte) 0);
       return priv;
    }
 
 
    public static PublicKey loadPublicKey(String stored) throws GeneralSecurityException {
-      byte[] data = Base64.decode(stored);
+      return decodePublicKey(Base64.decode(stored));
+   }
+
+   // Read a public key in X.509 encoding.
+   static PublicKey decodePublicKey(byte[] data) throws GeneralSecurityException {
       X509EncodedKeySpec spec = new X509EncodedKeySpec(data);
-      KeyFactory fact = KeyFactory.getInstance("ECDSA", new BouncyCastleProvider());
       try {
-         return fact.generatePublic(spec);
+         return keyFactory.get().generatePublic(spec);
       } catch (InvalidKeySpecException e) {
          throw new IllegalArgumentException(e);
       }
    }
 
    @Override
-   public synchronized DecryptionKey makeDecryptionKey() {
+   public DecryptionKey makeDecryptionKey() {
       // String ppath = getCurrentPathAsString();
       // System.out.println("Current path used by decryption key genereated: " + ppath);
       // ECKey newDecKey = keyChainGroup.getActiveKeyChain().getKeyByPath(HDUtils.parsePath(ppath),true);
       // decKeyCounter++;
       // return ECIES KeyPair
-      keyPG.initialize(256, sr);
-      return new DecryptionKeyImpl(keyPG.generateKeyPair());
+      return keys().take();
 
    }
 
@@ -260,7 +288,8 @@ public class BitcoinCrypto implements Crypto {
 
    @Override
    public int getRandom(int n) {
-      return sr.nextInt(n + 1);
+      // Every thread has its own generator, so shuffling never waits on a lock.
+      return Drbg.getRandom(n);
    }
 
    public static Bytestring hexStringToByteArray(String s) {
@@ -22,6 +22,13 @@ import java.security.spec.InvalidKeySpecException;
  * Created by Daniel Krawisz on 7/14/16.
  */
 public class CryptoProtobuf extends Protobuf {
+    // Keys and addresses which have already been read from packets. Verification keys
+    // are stored with the network they belong to, since their addresses depend on it.
+    static final int INTERNED = 1024;
+    static final Interner<Address> addresses = new Interner<>(INTERNED);
+    static final Interner<EncryptionKey> encryptionKeys = new Interner<>(INTERNED);
+    static final Interner<VerificationKey> verificationKeys = new Interner<>(INTERNED);
+
     NetworkParameters params;
     Bitcoin bitcoin;
 
@@ -33,15 +40,22 @@ public class CryptoProtobuf extends Protobuf {
     @Override
     // Unmarshall an address from its string representation.
     public Address unmarshallAdress(String str) throws FormatException {
-        return new AddressImpl(str);
+        Address address = addresses.get(str);
+        if (address != null) return address;
+
+        return addresses.intern(str, new AddressImpl(str));
     }
 
     @Override
     // Unmarshall an encryption key from a string.
     public EncryptionKey unmarshallEncryptionKey(String str)
             throws InvalidKeySpecException, NoSuchAlgorithmException {
+        EncryptionKey key = encryptionKeys.get(str);
+        if (key != null) return key;
+
         try {
-            return new EncryptionKeyImpl(BitcoinCrypto.loadPublicKey(org.bouncycastle.util.encoders.Base64.toBase64String(org.spongycastle.util.encoders.Hex.decode(str))));
+            return encryptionKeys.intern(str, new EncryptionKeyImpl(
+                    BitcoinCrypto.decodePublicKey(org.spongycastle.util.encoders.Hex.decode(str))));
         } catch (GeneralSecurityException e) {
             e.printStackTrace();
             throw new RuntimeException();
@@ -57,7 +71,11 @@ public class CryptoProtobuf extends Protobuf {
     @Override
     // Unmarshall a verification key.
     public VerificationKey unmarshallVerificationKey(String str) {
-        return new VerificationKeyImpl(str, params);
+        String encoded = params.getId() + " " + str;
+        VerificationKey key = verificationKeys.get(encoded);
+        if (key != null) return key;
+
+        return verificationKeys.intern(encoded, new VerificationKeyImpl(str, params));
     }
 
     @Override
@@ -77,7 +95,7 @@ public class CryptoProtobuf extends Protobuf {
 
             @Override
             public Address unmarshall(Bytestring string) throws FormatException {
-                return new AddressImpl(new String(string.bytes));
+                return unmarshallAdress(new String(string.bytes));
             }
         };
     }
@@ -1,26 +1,20 @@
 package com.shuffle.bitcoin.impl;
 
-import com.google.inject.Guice;
-import com.shuffle.JvmModule;
 import com.shuffle.bitcoin.DecryptionKey;
 import com.shuffle.bitcoin.EncryptionKey;
+import com.shuffle.p2p.Bytestring;
 
 import org.bitcoinj.core.ECKey;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
 import org.spongycastle.crypto.RuntimeCryptoException;
 import org.spongycastle.util.encoders.Hex;
 
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
-import java.security.InvalidKeyException;
 import java.security.KeyPair;
-import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
-
 
 /**
  * A private key used for decryption.
@@ -32,9 +26,13 @@ public class DecryptionKeyImpl implements DecryptionKey {
     final PrivateKey privateKey;
     private final EncryptionKey ek;
 
+    // The key as it is used by the ECIES engine.
+    private final ECPrivateKeyParameters parameters;
+
     public DecryptionKeyImpl(KeyPair keyPair) {
         this.privateKey = keyPair.getPrivate();
         this.key = ECKey.fromPrivate(this.privateKey.getEncoded());
+        this.parameters = Ecies.parameters(privateKey);
         ek = new EncryptionKeyImpl(keyPair.getPublic());
     }
 
@@ -44,6 +42,7 @@ public class DecryptionKeyImpl implements DecryptionKey {
           this.privateKey = BitcoinCrypto.loadPrivateKey(org.bouncycastle.util.encoders.Base64.toBase64String(Hex.decode(privString)));
           this.ek = new EncryptionKeyImpl(BitcoinCrypto.loadPublicKey(org.bouncycastle.util.encoders.Base64.toBase64String(Hex.decode(publicString))));
           this.key = ECKey.fromPrivate(this.privateKey.getEncoded());
+          this.parameters = Ecies.parameters(privateKey);
        } catch (GeneralSecurityException e) {
           e.printStackTrace();
           throw new RuntimeCryptoException();
@@ -67,33 +66,17 @@ public class DecryptionKeyImpl implements DecryptionKey {
 
     @Override
     public String decrypt(String input) {
-        Guice.createInjector(new JvmModule()).injectMembers(this);
+        return new String(decrypt(new Bytestring(Hex.decode(input))).bytes, StandardCharsets.UTF_8);
+    }
 
-        //encrypt cipher
-        Cipher cipher = null;
-        try {
-           cipher = Cipher.getInstance("ECIES");
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-           e.printStackTrace();
-           throw new RuntimeException(e);
-        }
-        try {
-           cipher.init(Cipher.DECRYPT_MODE, privateKey);
-        } catch (InvalidKeyException e) {
-           e.printStackTrace();
-           throw new RuntimeException(e);
-        }
-        byte[] bytes = Hex.decode(input);
-        byte[] decrypted = new byte[0];
+    @Override
+    public Bytestring decrypt(Bytestring input) {
         try {
-           decrypted = cipher.doFinal(bytes);
-        } catch (IllegalBlockSizeException e) {
-           e.printStackTrace();
-        } catch (BadPaddingException e) {
+           return new Bytestring(Ecies.decrypt(parameters, input.bytes));
+        } catch (InvalidCipherTextException e) {
            e.printStackTrace();
            throw new RuntimeException(e);
         }
-        return new String(decrypted, StandardCharsets.UTF_8);
     }
 
     @Override
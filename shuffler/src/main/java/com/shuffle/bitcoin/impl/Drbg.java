@@ -0,0 +1,82 @@
+/**
+ *
+ * Copyright © 2016 Mycelium.
+ * Use of this source code is governed by an ISC
+ * license that can be found in the LICENSE file.
+ *
+ */
+
+package com.shuffle.bitcoin.impl;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.prng.SP800SecureRandomBuilder;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+/**
+ * Random numbers for the protocol, taken from a separate HMAC-SHA256 DRBG (NIST SP 800-90A)
+ * for every thread, so that threads never wait on one another to get a random number.
+ *
+ * Each generator is instantiated with 256 bits of entropy and a fresh nonce from the
+ * system's SecureRandom, and with a personalization string made from the thread and the
+ * time, so no two generators share any state. A generator is only ever used by the thread
+ * which created it. As specified by SP 800-90A, it reseeds itself from the system source
+ * before its output could become predictable. Nothing about one thread's output can be
+ * learned from another's.
+ *
+ * Bounded integers are drawn by rejection sampling, so every value in range is equally likely.
+ */
+final class Drbg {
+    private static final SecureRandom system = new SecureRandom();
+
+    private static final ThreadLocal<SecureRandom> random = new ThreadLocal<SecureRandom>() {
+        @Override
+        protected SecureRandom initialValue() {
+            return create();
+        }
+    };
+
+    private Drbg() {
+
+    }
+
+    static SecureRandom create() {
+        byte[] nonce = new byte[16];
+        system.nextBytes(nonce);
+
+        byte[] personalization = ByteBuffer.allocate(16)
+                .putLong(Thread.currentThread().getId())
+                .putLong(System.nanoTime()).array();
+
+        return new SP800SecureRandomBuilder(system, false)
+                .setPersonalizationString(personalization)
+                .buildHMAC(new HMac(new SHA256Digest()), nonce, false);
+    }
+
+    // A random number between 0 and n inclusive from this thread's generator.
+    static int getRandom(int n) {
+        return uniform(random.get(), n);
+    }
+
+    // A random number between 0 and n inclusive.
+    static int uniform(SecureRandom random, int n) {
+        if (n < 0) throw new IllegalArgumentException("Bound must not be negative: " + n);
+
+        // The smallest mask of the form 2^k - 1 that covers n.
+        int mask = n;
+        mask |= mask >>> 1;
+        mask |= mask >>> 2;
+        mask |= mask >>> 4;
+        mask |= mask >>> 8;
+        mask |= mask >>> 16;
+
+        // Draw numbers below mask + 1 until one is in range. Since mask < 2n + 1, this
+        // takes fewer than two draws on average.
+        while (true) {
+            int r = random.nextInt() & mask;
+            if (r <= n) return r;
+        }
+    }
+}
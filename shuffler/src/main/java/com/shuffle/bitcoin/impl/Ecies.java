@@ -0,0 +1,110 @@
+/**
+ *
+ * Copyright © 2016 Mycelium.
+ * Use of this source code is governed by an ISC
+ * license that can be found in the LICENSE file.
+ *
+ */
+
+package com.shuffle.bitcoin.impl;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.KeyEncoder;
+import org.bouncycastle.crypto.agreement.ECDHBasicAgreement;
+import org.bouncycastle.crypto.digests.SHA1Digest;
+import org.bouncycastle.crypto.engines.IESEngine;
+import org.bouncycastle.crypto.generators.ECKeyPairGenerator;
+import org.bouncycastle.crypto.generators.EphemeralKeyPairGenerator;
+import org.bouncycastle.crypto.generators.KDF2BytesGenerator;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECKeyGenerationParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.params.IESParameters;
+import org.bouncycastle.crypto.parsers.ECIESPublicKeyParser;
+import org.bouncycastle.jcajce.provider.asymmetric.util.ECUtil;
+
+import java.security.InvalidKeyException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+
+/**
+ * ECIES encryption, compatible with BouncyCastle's "ECIES" cipher, without going through
+ * JCE for every message. Each thread has its own engine, which is reused for every
+ * message that thread encrypts or decrypts.
+ */
+final class Ecies {
+
+    // The parameters used by BouncyCastle's "ECIES" cipher when none are given.
+    private static final IESParameters parameters = new IESParameters(null, null, 128);
+
+    // Ephemeral public keys are written uncompressed.
+    private static final KeyEncoder encoder = new KeyEncoder() {
+        @Override
+        public byte[] getEncoded(AsymmetricKeyParameter key) {
+            return ((ECPublicKeyParameters) key).getQ().getEncoded(false);
+        }
+    };
+
+    private static final ThreadLocal<Ecies> context = new ThreadLocal<Ecies>() {
+        @Override
+        protected Ecies initialValue() {
+            return new Ecies();
+        }
+    };
+
+    private final IESEngine engine = new IESEngine(
+            new ECDHBasicAgreement(),
+            new KDF2BytesGenerator(new SHA1Digest()),
+            new HMac(new SHA1Digest()));
+
+    private final SecureRandom random = new SecureRandom();
+
+    // Generates ephemeral keys for encryption.
+    private final ECKeyPairGenerator generator = new ECKeyPairGenerator();
+
+    private Ecies() {
+
+    }
+
+    private EphemeralKeyPairGenerator ephemeral(ECDomainParameters curve) {
+        generator.init(new ECKeyGenerationParameters(curve, random));
+        return new EphemeralKeyPairGenerator(generator, encoder);
+    }
+
+    static byte[] encrypt(ECPublicKeyParameters key, byte[] message)
+            throws InvalidCipherTextException {
+
+        Ecies ecies = context.get();
+        ecies.engine.init(key, parameters, ecies.ephemeral(key.getParameters()));
+        return ecies.engine.processBlock(message, 0, message.length);
+    }
+
+    static byte[] decrypt(ECPrivateKeyParameters key, byte[] ciphertext)
+            throws InvalidCipherTextException {
+
+        Ecies ecies = context.get();
+        ecies.engine.init(key, parameters, new ECIESPublicKeyParser(key.getParameters()));
+        return ecies.engine.processBlock(ciphertext, 0, ciphertext.length);
+    }
+
+    // Convert keys to the form used by the engine. This only needs to be done once per key.
+    static ECPublicKeyParameters parameters(PublicKey key) {
+        try {
+            return (ECPublicKeyParameters) ECUtil.generatePublicKeyParameter(key);
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    static ECPrivateKeyParameters parameters(PrivateKey key) {
+        try {
+            return (ECPrivateKeyParameters) ECUtil.generatePrivateKeyParameter(key);
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
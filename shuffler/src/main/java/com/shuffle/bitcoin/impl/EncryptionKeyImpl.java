@@ -1,21 +1,19 @@
 package com.shuffle.bitcoin.impl;
 
 import com.shuffle.bitcoin.EncryptionKey;
+import com.shuffle.p2p.Bytestring;
 
 import org.apache.commons.codec.binary.Hex;
 
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
-import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
-
 /**
  * Created by conta on 01.04.16.
  */
@@ -23,8 +21,12 @@ public class EncryptionKeyImpl implements EncryptionKey {
 
     private final PublicKey publicKey;
 
+    // The key as it is used by the ECIES engine.
+    private final ECPublicKeyParameters parameters;
+
     public EncryptionKeyImpl(PublicKey pubKey) {
         this.publicKey = pubKey;
+        this.parameters = Ecies.parameters(pubKey);
     }
 
     // takes a key in hex as string
@@ -32,8 +34,8 @@ public class EncryptionKeyImpl implements EncryptionKey {
             throws InvalidKeySpecException, NoSuchAlgorithmException {
 
         try {
-            // get base64 of passed hexstring and use BitcoinCrypto to load publickey
-            this.publicKey = BitcoinCrypto.loadPublicKey(org.bouncycastle.util.encoders.Base64.toBase64String(org.spongycastle.util.encoders.Hex.decode(hexString)));
+            this.publicKey = BitcoinCrypto.decodePublicKey(org.spongycastle.util.encoders.Hex.decode(hexString));
+            this.parameters = Ecies.parameters(publicKey);
         } catch (GeneralSecurityException e) {
             e.printStackTrace();
             throw new RuntimeException();
@@ -52,33 +54,18 @@ public class EncryptionKeyImpl implements EncryptionKey {
     public String encrypt(String input) {
 
         // encrypts the address passed for this encryption key
+        return Hex.encodeHexString(
+                encrypt(new Bytestring(input.getBytes(StandardCharsets.UTF_8))).bytes);
+    }
 
-        //get cipher cipher for ECIES encryption
-        Cipher cipher = null;
-        try {
-            cipher = Cipher.getInstance("ECIES");
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-            e.printStackTrace();
-            throw new RuntimeException(e);
-        }
-        //init cipher with with our encryption key
-        try {
-            cipher.init(Cipher.ENCRYPT_MODE, publicKey);
-        } catch (InvalidKeyException e) {
-            e.printStackTrace();
-        }
-        //get bytes of address passed
-        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
-        //encrypt
-        byte[] encrypted = new byte[0];
+    @Override
+    public Bytestring encrypt(Bytestring input) {
         try {
-            encrypted = cipher.doFinal(bytes);
-        } catch (IllegalBlockSizeException | BadPaddingException e) {
+            return new Bytestring(Ecies.encrypt(parameters, input.bytes));
+        } catch (InvalidCipherTextException e) {
             e.printStackTrace();
             throw new RuntimeException(e);
         }
-        //create new address with
-        return Hex.encodeHexString(encrypted);
     }
 
     @Override
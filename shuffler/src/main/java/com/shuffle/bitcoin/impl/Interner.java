@@ -0,0 +1,44 @@
+/**
+ *
+ * Copyright © 2016 Mycelium.
+ * Use of this source code is governed by an ISC
+ * license that can be found in the LICENSE file.
+ *
+ */
+
+package com.shuffle.bitcoin.impl;
+
+import com.shuffle.bitcoin.LruMap;
+
+/**
+ * Objects which have already been read from their string encoding, so that a key or an
+ * address which turns up in many packets is only decoded once. The same object is given
+ * to everyone who reads the same string, so the objects must be immutable. The cache
+ * holds a fixed number of them and forgets the least recently used ones first.
+ */
+final class Interner<V> {
+    private final LruMap<String, V> map;
+
+    Interner(int capacity) {
+        map = new LruMap<>(capacity);
+    }
+
+    // The object read from this string before, or null.
+    synchronized V get(String encoded) {
+        return map.get(encoded);
+    }
+
+    // Remember an object. If another thread got there first, its object is returned so
+    // that everyone ends up with the same one.
+    synchronized V intern(String encoded, V v) {
+        V existing = map.get(encoded);
+        if (existing != null) return existing;
+
+        map.put(encoded, v);
+        return v;
+    }
+
+    synchronized int size() {
+        return map.size();
+    }
+}
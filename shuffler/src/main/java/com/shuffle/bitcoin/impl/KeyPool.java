@@ -0,0 +1,108 @@
+/**
+ *
+ * Copyright © 2016 Mycelium.
+ * Use of this source code is governed by an ISC
+ * license that can be found in the LICENSE file.
+ *
+ */
+
+package com.shuffle.bitcoin.impl;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fresh decryption keys, generated ahead of time on a background thread so that nobody
+ * has to wait for one at the start of a round. Every key is handed out only once.
+ */
+final class KeyPool {
+    private static final Provider provider = new BouncyCastleProvider();
+
+    private final BlockingQueue<DecryptionKeyImpl> keys;
+    private final SecureRandom random = new SecureRandom();
+    private final Thread generator;
+    private volatile boolean closed = false;
+
+    KeyPool(int size) {
+        keys = new ArrayBlockingQueue<>(size);
+
+        generator = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                fill();
+            }
+        }, "decryption key pool");
+        generator.setDaemon(true);
+        generator.start();
+    }
+
+    private DecryptionKeyImpl generate(KeyPairGenerator generator) {
+        return new DecryptionKeyImpl(generator.generateKeyPair());
+    }
+
+    private KeyPairGenerator generator() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("ECIES", provider);
+            generator.initialize(256, random);
+            return generator;
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Keep the pool full until it is closed.
+    private void fill() {
+        KeyPairGenerator generator = generator();
+
+        try {
+            while (!closed) {
+                keys.put(generate(generator));
+            }
+        } catch (InterruptedException e) {
+            // The pool has been closed.
+        }
+    }
+
+    // Take a key from the pool, or make one now if there are none ready.
+    DecryptionKeyImpl take() {
+        if (closed) throw new IllegalStateException("Key pool is closed.");
+
+        DecryptionKeyImpl key = keys.poll();
+        if (key != null) return key;
+
+        return generate(generator());
+    }
+
+    // Stop making keys and drop those which have not been handed out.
+    void close() {
+        closed = true;
+        generator.interrupt();
+
+        // Wait for the key being made now, if any, so that it is dropped too.
+        try {
+            generator.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        clear();
+    }
+
+    // The keys are only dropped, not wiped. Their scalars are held in immutable
+    // BigIntegers, which cannot be overwritten, so they stay in memory until they
+    // are garbage collected.
+    private void clear() {
+        keys.clear();
+    }
+
+    // The number of keys ready to be handed out.
+    int size() {
+        return keys.size();
+    }
+}
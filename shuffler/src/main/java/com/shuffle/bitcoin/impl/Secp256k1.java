@@ -0,0 +1,360 @@
+/**
+ *
+ * Copyright © 2016 Mycelium.
+ * Use of this source code is governed by an ISC
+ * license that can be found in the LICENSE file.
+ *
+ */
+
+package com.shuffle.bitcoin.impl;
+
+import org.bitcoinj.core.ECKey;
+import org.spongycastle.math.ec.ECCurve;
+import org.spongycastle.math.ec.ECPoint;
+import org.spongycastle.math.ec.custom.sec.SecP256K1Field;
+import org.spongycastle.math.raw.Nat256;
+
+import java.math.BigInteger;
+
+/**
+ * ECDSA verification specialized for secp256k1.
+ *
+ * A signature is checked by computing u1·G + u2·Q. Each scalar is split in two halves of
+ * about 128 bits using the curve's endomorphism λ·(x, y) = (β·x, y) (GLV), and the four
+ * halves are multiplied together in a single pass of doublings (Shamir's trick), adding in
+ * odd multiples of the points according to their width-w NAF. The odd multiples of G are
+ * computed once; those of a public key are computed once per key and kept in a Table.
+ *
+ * Points are added and doubled in place in Jacobian coordinates, using the field arithmetic
+ * of bitcoinj's curve, so a verification allocates almost nothing. Verification accepts
+ * exactly the signatures that ECKey.verify accepts.
+ */
+final class Secp256k1 {
+    private static final ECCurve curve = ECKey.CURVE.getCurve();
+    private static final BigInteger n = ECKey.CURVE.getN();
+    private static final BigInteger p = curve.getField().getCharacteristic();
+
+    // The endomorphism: λ·(x, y) = (β·x, y).
+    static final BigInteger lambda = new BigInteger(
+            "5363ad4cc05c30e0a5261c028812645a122e22ea20816678df02967c1b23bd72", 16);
+    private static final int[] beta = SecP256K1Field.fromBigInteger(new BigInteger(
+            "7ae96a2b657c07106e64479eac3434e99cf0497512f58995c1396c28719501ee", 16));
+
+    // A short basis of the lattice of (a, b) such that a + b·λ = 0 mod n, and the
+    // constants g = round(2^272 · b / n) used to decompose scalars with it.
+    private static final BigInteger a1 = new BigInteger("3086d221a7d46bcde86c90e49284eb15", 16);
+    private static final BigInteger b1 = new BigInteger("-e4437ed6010e88286f547fa90abfe4c3", 16);
+    private static final BigInteger a2 = new BigInteger("114ca50f7a8e2f3f657c1108d9d44cfd8", 16);
+    private static final BigInteger b2 = a1;
+    private static final BigInteger g1 = new BigInteger(
+            "3086d221a7d46bcde86c90e49284eb153dab", 16);
+    private static final BigInteger g2 = new BigInteger(
+            "e4437ed6010e88286f547fa90abfe4c42212", 16);
+    private static final int bits = 272;
+
+    // G is used in every verification, so it gets a wider table than a key does.
+    static final int G_WIDTH = 8;
+    static final int KEY_WIDTH = 6;
+
+    // Whether bitcoinj's curve is the one this class was written for. If it is not,
+    // verification keys use ECKey.verify instead.
+    static final boolean available = available();
+
+    private static final Table generator = available ? new Table(ECKey.CURVE.getG(), G_WIDTH) : null;
+
+    private static boolean available() {
+        if (!curve.getClass().getSimpleName().equals("SecP256K1Curve")) return false;
+
+        ECPoint g = ECKey.CURVE.getG().normalize();
+        ECPoint endo = g.multiply(lambda).normalize();
+        int[] x = SecP256K1Field.fromBigInteger(g.getAffineXCoord().toBigInteger());
+        SecP256K1Field.multiply(x, beta, x);
+        return Nat256.toBigInteger(x).equals(endo.getAffineXCoord().toBigInteger())
+                && g.getAffineYCoord().equals(endo.getAffineYCoord());
+    }
+
+    /**
+     * The odd multiples P, 3P, 5P, ... of a point in affine coordinates, along with the
+     * x coordinates of their images under the endomorphism, which have the same y.
+     */
+    static final class Table {
+        final int[][] x;
+        final int[][] y;
+        final int[][] negY;
+        final int[][] endoX;
+        final int width;
+
+        Table(ECPoint point, int width) {
+            int size = 1 << (width - 2);
+            this.width = width;
+            x = new int[size][];
+            y = new int[size][];
+            negY = new int[size][];
+            endoX = new int[size][];
+
+            ECPoint[] points = new ECPoint[size];
+            points[0] = point.normalize();
+            ECPoint twice = points[0].twice();
+            for (int i = 1; i < size; i++) {
+                points[i] = points[i - 1].add(twice);
+            }
+            curve.normalizeAll(points);
+
+            for (int i = 0; i < size; i++) {
+                x[i] = SecP256K1Field.fromBigInteger(points[i].getAffineXCoord().toBigInteger());
+                y[i] = SecP256K1Field.fromBigInteger(points[i].getAffineYCoord().toBigInteger());
+                negY[i] = Nat256.create();
+                SecP256K1Field.negate(y[i], negY[i]);
+                endoX[i] = Nat256.create();
+                SecP256K1Field.multiply(x[i], beta, endoX[i]);
+            }
+        }
+    }
+
+    /**
+     * A point in Jacobian coordinates (X / Z^2, Y / Z^3), which is changed in place.
+     */
+    static final class Jacobian {
+        final int[] x = Nat256.create();
+        final int[] y = Nat256.create();
+        final int[] z = Nat256.create();
+        boolean infinity = true;
+
+        // Space for intermediate values.
+        private final int[] t1 = Nat256.create();
+        private final int[] t2 = Nat256.create();
+        private final int[] t3 = Nat256.create();
+        private final int[] t4 = Nat256.create();
+        private final int[] t5 = Nat256.create();
+        private final int[] product = Nat256.createExt();
+
+        // The field's own multiply and square make a new array for the product every time.
+        private void multiply(int[] a, int[] b, int[] out) {
+            Nat256.mul(a, b, product);
+            SecP256K1Field.reduce(product, out);
+        }
+
+        private void square(int[] a, int[] out) {
+            Nat256.square(a, product);
+            SecP256K1Field.reduce(product, out);
+        }
+
+        // Double this point (dbl-2009-l, for a = 0).
+        void twice() {
+            if (infinity) return;
+
+            // There are no points of order 2, so y is never zero here.
+            square(x, t1);                                      // A = X^2
+            square(y, t2);                                      // B = Y^2
+            square(t2, t3);                                     // C = B^2
+
+            SecP256K1Field.add(x, t2, t4);
+            square(t4, t4);
+            SecP256K1Field.subtract(t4, t1, t4);
+            SecP256K1Field.subtract(t4, t3, t4);
+            SecP256K1Field.twice(t4, t4);                       // D = 2((X + B)^2 - A - C)
+
+            SecP256K1Field.twice(t1, t5);
+            SecP256K1Field.add(t5, t1, t5);                     // E = 3A
+
+            multiply(y, z, z);
+            SecP256K1Field.twice(z, z);                         // Z' = 2YZ
+
+            square(t5, x);
+            SecP256K1Field.subtract(x, t4, x);
+            SecP256K1Field.subtract(x, t4, x);                  // X' = E^2 - 2D
+
+            SecP256K1Field.subtract(t4, x, y);
+            multiply(y, t5, y);
+            SecP256K1Field.twice(t3, t3);
+            SecP256K1Field.twice(t3, t3);
+            SecP256K1Field.twice(t3, t3);
+            SecP256K1Field.subtract(y, t3, y);                  // Y' = E(D - X') - 8C
+        }
+
+        // Add the affine point (x2, y2) to this one.
+        void add(int[] x2, int[] y2) {
+            if (infinity) {
+                Nat256.copy(x2, x);
+                Nat256.copy(y2, y);
+                Nat256.zero(z);
+                z[0] = 1;
+                infinity = false;
+                return;
+            }
+
+            square(z, t1);                                      // Z^2
+            multiply(x2, t1, t2);                               // U2 = x2 Z^2
+            multiply(t1, z, t1);
+            multiply(y2, t1, t1);                               // S2 = y2 Z^3
+
+            SecP256K1Field.subtract(t2, x, t2);                 // H = U2 - X
+            SecP256K1Field.subtract(t1, y, t1);                 // R = S2 - Y
+
+            if (Nat256.isZero(t2)) {
+                if (Nat256.isZero(t1)) {
+                    twice();
+                } else {
+                    infinity = true;
+                }
+                return;
+            }
+
+            square(t2, t3);                                     // HH = H^2
+            multiply(t2, t3, t4);                               // HHH = H^3
+            multiply(x, t3, t3);                                // V = X HH
+
+            multiply(z, t2, z);                                 // Z' = Z H
+
+            square(t1, x);
+            SecP256K1Field.subtract(x, t4, x);
+            SecP256K1Field.subtract(x, t3, x);
+            SecP256K1Field.subtract(x, t3, x);                  // X' = R^2 - HHH - 2V
+
+            multiply(y, t4, t4);                                // Y HHH
+            SecP256K1Field.subtract(t3, x, y);
+            multiply(y, t1, y);
+            SecP256K1Field.subtract(y, t4, y);                  // Y' = R(V - X') - Y HHH
+        }
+
+        // The same point as one of the curve's own.
+        ECPoint toPoint() {
+            if (infinity) return curve.getInfinity();
+
+            BigInteger zi = Nat256.toBigInteger(z).modInverse(p);
+            BigInteger zi2 = zi.multiply(zi).mod(p);
+            return curve.createPoint(
+                    Nat256.toBigInteger(x).multiply(zi2).mod(p),
+                    Nat256.toBigInteger(y).multiply(zi2).multiply(zi).mod(p));
+        }
+    }
+
+    private Secp256k1() {
+
+    }
+
+    // Verify an ECDSA signature (r, s) of a 32-byte hash.
+    static boolean verify(Table key, byte[] hash, BigInteger r, BigInteger s) {
+        if (r.signum() <= 0 || r.compareTo(n) >= 0 || s.signum() <= 0 || s.compareTo(n) >= 0) {
+            return false;
+        }
+
+        BigInteger e = new BigInteger(1, hash);
+        if (hash.length * 8 > n.bitLength()) {
+            e = e.shiftRight(hash.length * 8 - n.bitLength());
+        }
+
+        BigInteger c = s.modInverse(n);
+        Jacobian point = multiply(key, e.multiply(c).mod(n), r.multiply(c).mod(n));
+
+        if (point.infinity) return false;
+
+        // The x coordinate of the point is X / Z^2, so we can compare it with r
+        // without inverting Z.
+        int[] z2 = Nat256.create();
+        SecP256K1Field.square(point.z, z2);
+
+        int[] rz2 = SecP256K1Field.fromBigInteger(r);
+        SecP256K1Field.multiply(rz2, z2, rz2);
+        if (Nat256.eq(rz2, point.x)) return true;
+
+        // r is x mod n, and there are some values of x greater than n.
+        BigInteger rn = r.add(n);
+        if (rn.compareTo(p) >= 0) return false;
+
+        rz2 = SecP256K1Field.fromBigInteger(rn);
+        SecP256K1Field.multiply(rz2, z2, rz2);
+        return Nat256.eq(rz2, point.x);
+    }
+
+    // Compute u1·G + u2·Q, where the odd multiples of Q are in key.
+    static Jacobian multiply(Table key, BigInteger u1, BigInteger u2) {
+        BigInteger[] k = decompose(u1);
+        BigInteger[] m = decompose(u2);
+
+        BigInteger[] scalars = new BigInteger[]{k[0], k[1], m[0], m[1]};
+        Table[] tables = new Table[]{generator, generator, key, key};
+
+        int[][] nafs = new int[4][];
+        boolean[] negative = new boolean[4];
+        int length = 0;
+        for (int j = 0; j < 4; j++) {
+            negative[j] = scalars[j].signum() < 0;
+            nafs[j] = wnaf(scalars[j].abs(), tables[j].width);
+            length = Math.max(length, nafs[j].length);
+        }
+
+        Jacobian result = new Jacobian();
+        for (int i = length - 1; i >= 0; i--) {
+            result.twice();
+
+            for (int j = 0; j < 4; j++) {
+                if (i >= nafs[j].length) continue;
+
+                int digit = nafs[j][i];
+                if (digit == 0) continue;
+
+                // The second of each pair of scalars multiplies the endomorphism's image.
+                Table table = tables[j];
+                int index = Math.abs(digit) >>> 1;
+                result.add((j & 1) == 0 ? table.x[index] : table.endoX[index],
+                        (digit < 0) != negative[j] ? table.negY[index] : table.y[index]);
+            }
+        }
+
+        return result;
+    }
+
+    // Split k into (k1, k2), with k = k1 + k2·λ mod n and both about half as long as n.
+    static BigInteger[] decompose(BigInteger k) {
+        BigInteger c1 = roundedShift(k.multiply(g1));
+        BigInteger c2 = roundedShift(k.multiply(g2));
+
+        BigInteger k1 = k.subtract(c1.multiply(a1).add(c2.multiply(a2)));
+        BigInteger k2 = c1.multiply(b1).add(c2.multiply(b2)).negate();
+
+        return new BigInteger[]{k1, k2};
+    }
+
+    // round(x / 2^bits)
+    private static BigInteger roundedShift(BigInteger x) {
+        boolean up = x.testBit(bits - 1);
+        x = x.shiftRight(bits);
+        return up ? x.add(BigInteger.ONE) : x;
+    }
+
+    // The width-w non-adjacent form of a non-negative k, least significant digit first.
+    // Every non-zero digit is odd, less than 2^(w-1) in absolute value, and followed
+    // by at least w - 1 zeros.
+    static int[] wnaf(BigInteger k, int width) {
+        int length = k.bitLength() + 1;
+        int[] naf = new int[length];
+        int window = 1 << width;
+
+        int carry = 0;
+        int pos = 0;
+        while (pos < length) {
+            if ((k.testBit(pos) ? 1 : 0) == carry) {
+                pos++;
+                continue;
+            }
+
+            int word = carry;
+            for (int i = 0; i < width; i++) {
+                if (k.testBit(pos + i)) word += 1 << i;
+            }
+
+            if (word >= window >>> 1) {
+                naf[pos] = word - window;
+                carry = 1;
+            } else {
+                naf[pos] = word;
+                carry = 0;
+            }
+
+            pos += width;
+        }
+
+        return naf;
+    }
+}
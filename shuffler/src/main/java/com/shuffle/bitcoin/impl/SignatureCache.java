@@ -0,0 +1,140 @@
+/**
+ *
+ * Copyright © 2016 Mycelium.
+ * Use of this source code is governed by an ISC
+ * license that can be found in the LICENSE file.
+ *
+ */
+
+package com.shuffle.bitcoin.impl;
+
+import com.shuffle.bitcoin.LruMap;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers signatures which have already been found to be valid, so that a packet which
+ * is checked more than once, for example when it is included as evidence in a blame
+ * message, only has its signature verified the first time.
+ *
+ * An entry is the SHA-256 hash of the public key, the hash of the message, and the
+ * DER-encoded signature. Only valid signatures are remembered. The cache holds a fixed
+ * number of entries and forgets the least recently used ones first. It is split into
+ * segments with their own locks so that threads seldom wait on one another.
+ */
+public final class SignatureCache {
+    private static final int SEGMENTS = 16;
+
+    private static final ThreadLocal<MessageDigest> sha256 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+
+    // A hash of a verified signature along with what it signed.
+    private static final class Entry {
+        final byte[] hash;
+        final int code;
+
+        Entry(byte[] hash) {
+            this.hash = hash;
+            code = Arrays.hashCode(hash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry && Arrays.equals(hash, ((Entry) o).hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return code;
+        }
+    }
+
+    private final List<LruMap<Entry, Boolean>> segments = new ArrayList<>(SEGMENTS);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SignatureCache(int capacity) {
+        if (capacity < SEGMENTS) throw new IllegalArgumentException();
+
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments.add(new LruMap<Entry, Boolean>(capacity / SEGMENTS));
+        }
+    }
+
+    private static Entry entry(byte[] key, byte[] messageHash, byte[] signature) {
+        MessageDigest digest = sha256.get();
+        digest.update(key);
+        digest.update(messageHash);
+        digest.update(signature);
+        return new Entry(digest.digest());
+    }
+
+    private LruMap<Entry, Boolean> segment(Entry e) {
+        return segments.get(e.hash[0] & (SEGMENTS - 1));
+    }
+
+    // Whether this signature has already been found to be valid.
+    boolean contains(byte[] key, byte[] messageHash, byte[] signature) {
+        Entry e = entry(key, messageHash, signature);
+        LruMap<Entry, Boolean> s = segment(e);
+
+        boolean found;
+        synchronized (s) {
+            found = s.get(e) != null;
+        }
+
+        (found ? hits : misses).incrementAndGet();
+        return found;
+    }
+
+    // Remember a valid signature.
+    void put(byte[] key, byte[] messageHash, byte[] signature) {
+        Entry e = entry(key, messageHash, signature);
+        LruMap<Entry, Boolean> s = segment(e);
+
+        synchronized (s) {
+            s.put(e, Boolean.TRUE);
+        }
+    }
+
+    // The number of times a signature was found in the cache.
+    public long hits() {
+        return hits.get();
+    }
+
+    // The number of times a signature was looked for and not found.
+    public long misses() {
+        return misses.get();
+    }
+
+    public int size() {
+        int size = 0;
+        for (LruMap<Entry, Boolean> s : segments) {
+            synchronized (s) {
+                size += s.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (LruMap<Entry, Boolean> s : segments) {
+            synchronized (s) {
+                s.clear();
+            }
+        }
+    }
+}
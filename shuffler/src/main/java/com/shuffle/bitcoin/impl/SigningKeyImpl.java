@@ -21,6 +21,9 @@ public class SigningKeyImpl implements SigningKey {
     final NetworkParameters params;
     private final VerificationKeyImpl vk;
 
+    // The WIF string is what identifies a signing key, so we only make it once.
+    private String wif = null;
+
     public SigningKeyImpl(@Nonnull org.bitcoinj.core.ECKey ecKey,
                           @Nonnull NetworkParameters params) {
         signingKey = ecKey;
@@ -79,7 +82,10 @@ public class SigningKeyImpl implements SigningKey {
 
    // returns Private Key in WIF Compressed 52 characters base58
    public String toString() {
-       return this.signingKey.getPrivateKeyAsWiF(params);
+       if (wif == null) {
+           wif = this.signingKey.getPrivateKeyAsWiF(params);
+       }
+       return wif;
    }
 
    @Override
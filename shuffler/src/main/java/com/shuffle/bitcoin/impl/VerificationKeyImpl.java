@@ -21,11 +21,25 @@ public class VerificationKeyImpl implements VerificationKey {
    private final NetworkParameters params;
    public final Address address;
 
+   // Verification keys are compared and hashed all the time during the protocol,
+   // so we work out what we need for that ahead of time.
+   private final String addressString;
+   private final int hash;
+
+   // Signatures which have already been checked, shared by all keys.
+   static final int SIGNATURE_CACHE_SIZE = 4096;
+   public static final SignatureCache verified = new SignatureCache(SIGNATURE_CACHE_SIZE);
+
+   // Multiples of the key for verifying signatures, made the first time they are needed.
+   private volatile Secp256k1.Table table = null;
+
    public VerificationKeyImpl(byte[] ecKey, NetworkParameters params) {
       this.ecKey = ECKey.fromPublicOnly(ecKey);
       this.vKey = this.ecKey.getPubKey();
       this.params = params;
       this.address = new AddressImpl(this.ecKey.toAddress(params));
+      this.addressString = address.toString();
+      this.hash = hash();
    }
 
    public VerificationKeyImpl(String string, NetworkParameters params) {
@@ -35,6 +49,8 @@ public class VerificationKeyImpl implements VerificationKey {
       this.vKey = this.ecKey.getPubKey();
       this.params = params;
       this.address = new AddressImpl(this.ecKey.toAddress(params));
+      this.addressString = address.toString();
+      this.hash = hash();
    }
 
    // returns PublicKey compressed, 66 chars
@@ -46,15 +62,48 @@ public class VerificationKeyImpl implements VerificationKey {
 
    @Override
    public boolean verify(Bytestring payload, Bytestring signature) {
+      byte[] hash = Sha256Hash.of(payload.bytes).getBytes();
+
+      if (verified.contains(vKey, hash, signature.bytes)) return true;
+
+      if (!check(hash, signature)) return false;
+
+      verified.put(vKey, hash, signature.bytes);
+      return true;
+   }
+
+   // Check a signature of a hash without looking in the cache.
+   boolean check(byte[] hash, Bytestring signature) {
+      ECKey.ECDSASignature ecdsaSignature;
+      ecdsaSignature = ECKey.ECDSASignature.decodeFromDER(signature.bytes);
+
+      if (!Secp256k1.available) return ECKey.verify(hash, ecdsaSignature, vKey);
+
+      return Secp256k1.verify(table(), hash, ecdsaSignature.r, ecdsaSignature.s);
+   }
+
+   // Verification through bitcoinj, which decodes the key again every time.
+   boolean verifyWithBitcoinj(Bytestring payload, Bytestring signature) {
       ECKey.ECDSASignature ecdsaSignature;
       ecdsaSignature = ECKey.ECDSASignature.decodeFromDER(signature.bytes);
       return ECKey.verify(Sha256Hash.of(payload.bytes).getBytes(),ecdsaSignature,vKey);
    }
 
+   // Two threads might both make the table, but they make the same one.
+   private Secp256k1.Table table() {
+      Secp256k1.Table t = table;
+      if (t == null) {
+         t = new Secp256k1.Table(ecKey.getPubKeyPoint(), Secp256k1.KEY_WIDTH);
+         table = t;
+      }
+      return t;
+   }
+
    @Override
    public boolean equals(Object vk) {
       return vk != null
               && vk instanceof VerificationKeyImpl
+              && hash == ((VerificationKeyImpl) vk).hash
               && address.equals(((VerificationKeyImpl) vk).address);
 
    }
@@ -70,15 +119,19 @@ public class VerificationKeyImpl implements VerificationKey {
          throw new IllegalArgumentException("unable to compare with other VerificationKey");
       }
       //get netParams to create right address and check by address.
-      return address.toString().compareTo((((VerificationKeyImpl) o).address).toString());
+      return addressString.compareTo(((VerificationKeyImpl) o).addressString);
    }
 
-   @Override
-   public int hashCode() {
+   private int hash() {
       int result = ecKey.hashCode();
       result = 31 * result + Arrays.hashCode(vKey);
       result = 31 * result + params.hashCode();
       return result;
    }
 
+   @Override
+   public int hashCode() {
+      return hash;
+   }
+
 }
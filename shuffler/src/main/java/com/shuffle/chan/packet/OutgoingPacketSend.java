@@ -5,6 +5,7 @@ import com.shuffle.p2p.Bytestring;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * OutgoingPacketSend creates packets with the correct sequence numbers.
@@ -17,29 +18,33 @@ public class OutgoingPacketSend<Address extends Serializable, X extends Serializ
     private final Bytestring session;
     private final Address from, to;
 
-    int sequenceNumber = 0;
+    // May be shared with other channels from the same sender, so that
+    // all their packets are numbered together.
+    final AtomicInteger sequenceNumber;
     boolean closed = false;
 
     public OutgoingPacketSend(Send<Packet<Address, X>> send, Bytestring session, Address from, Address to) {
-        if (send == null || session == null || from == null || to == null) throw new NullPointerException();
+        this(send, session, from, to, new AtomicInteger());
+    }
+
+    public OutgoingPacketSend(Send<Packet<Address, X>> send, Bytestring session, Address from, Address to, AtomicInteger sequenceNumber) {
+        if (send == null || session == null || from == null || to == null || sequenceNumber == null)
+            throw new NullPointerException();
 
         this.send = send;
         this.session = session;
         this.from = from;
         this.to = to;
+        this.sequenceNumber = sequenceNumber;
     }
 
     @Override
     public boolean send(X x) throws InterruptedException, IOException {
         if (closed) return false;
 
-        boolean sent = send.send(new Packet<>(session, from, to, sequenceNumber, x));
-
-        if (sent) {
-            sequenceNumber++;
-        }
-
-        return sent;
+        // A number is used up even if the packet is not sent. Gaps are harmless,
+        // but two packets must never have the same number.
+        return send.send(new Packet<>(session, from, to, sequenceNumber.getAndIncrement(), x));
     }
 
     @Override
@@ -5,6 +5,9 @@ import com.shuffle.p2p.Bytestring;
 import java.io.Serializable;
 
 /**
+ * A packet whose value for to is null is a broadcast, which was sent to everyone
+ * in the session. That way a broadcast only needs to be signed once.
+ *
  * Created by Daniel Krawisz on 5/24/16.
  */
 public class Packet<Address extends Serializable, X extends Serializable> implements Serializable {
@@ -15,7 +18,7 @@ public class Packet<Address extends Serializable, X extends Serializable> implem
     public final X payload;
 
     public Packet(Bytestring session, Address from, Address to, int sequenceNumber, X payload) {
-        if (session == null || from == null || to == null || payload == null)
+        if (session == null || from == null || payload == null)
             throw new NullPointerException();
 
         this.session = session;
@@ -25,14 +28,19 @@ public class Packet<Address extends Serializable, X extends Serializable> implem
         this.payload = payload;
     }
 
+    public boolean isBroadcast() {
+        return to == null;
+    }
+
     @Override
     public String toString() {
-        return "Packet[session: " + session + ", from: \"" + from + "\", to: \"" + to + "\", number: " + sequenceNumber + ", payload: " + payload + "]";
+        return "Packet[session: " + session + ", from: \"" + from + "\", to: "
+                + (to == null ? "everyone" : "\"" + to + "\"") + ", number: " + sequenceNumber + ", payload: " + payload + "]";
     }
 
     @Override
     public int hashCode() {
-        return session.hashCode() + 17 * (from.hashCode() + 17 * (to.hashCode() + 17 * (sequenceNumber + 17 * payload.hashCode())));
+        return session.hashCode() + 17 * (from.hashCode() + 17 * ((to == null ? 0 : to.hashCode()) + 17 * (sequenceNumber + 17 * payload.hashCode())));
     }
 
     @Override
@@ -41,7 +49,8 @@ public class Packet<Address extends Serializable, X extends Serializable> implem
 
         Packet p = (Packet)o;
 
-        return session.equals(p.session) && from.equals(p.from) && to.equals(p.to)
+        return session.equals(p.session) && from.equals(p.from)
+                && (to == null ? p.to == null : to.equals(p.to))
                 && sequenceNumber == p.sequenceNumber && payload.equals(p.payload);
     }
 }
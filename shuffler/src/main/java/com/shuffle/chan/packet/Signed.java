@@ -13,30 +13,85 @@ import java.io.Serializable;
  * with checks which provide a high probability that it is what it claims to be; ie,
  * an object and a valid signature of the object's serialized form.
  *
+ * The serialized form is kept alongside the object, so that it does not have to be
+ * marshalled again to be sent or to have its signature checked.
+ *
  * Created by Daniel Krawisz on 5/24/16.
  */
 public class Signed<X> implements Serializable {
     public final X message;
     public final Bytestring signature;
 
+    // The bytes which were signed. These are not serialized along with the object because
+    // then there would be no guarantee that they are really the serialized form of message.
+    private final transient Bytestring serialized;
+
+    // The key which the signature was checked against when the object was constructed.
+    private final transient VerificationKey verified;
+
     // If you want to make the signature yourself, use this constructor.
     public Signed(X x, SigningKey key, Marshaller<X> m) throws IOException {
         if (x == null || key == null || m == null) throw new NullPointerException();
 
         this.message = x;
-        this.signature = key.sign(m.marshall(x));
+        this.serialized = m.marshall(x);
+        this.signature = key.sign(serialized);
+        this.verified = null;
     }
 
     // If the signature was generated by someone else, use this one.
     public Signed(Bytestring message, Bytestring signature, VerificationKey key, Marshaller<X> m) throws FormatException {
-        if (message == null || signature == null || key == null) throw new NullPointerException();
+        if (message == null || signature == null || key == null || m == null) throw new NullPointerException();
+
+        check(message, signature, key);
+
+        this.signature = signature;
+        this.serialized = message;
+        this.verified = key;
+        this.message = m.unmarshall(message);
+    }
+
+    // Use this one if the message has already been read from the bytes which were signed.
+    // The caller is responsible for x really being what was read from message.
+    public Signed(X x, Bytestring message, Bytestring signature, VerificationKey key) {
+        if (x == null || message == null || signature == null || key == null) throw new NullPointerException();
+
+        check(message, signature, key);
+
+        this.signature = signature;
+        this.serialized = message;
+        this.verified = key;
+        this.message = x;
+    }
 
+    private static void check(Bytestring message, Bytestring signature, VerificationKey key) {
         if (!key.verify(message, signature)) {
             throw new IllegalArgumentException();
         }
+    }
 
-        this.signature = signature;
-        this.message = m.unmarshall(message);
+    // The bytes which were signed, or null if this object was read from a java
+    // serialization and they have been lost.
+    public Bytestring serialized() {
+        return serialized;
+    }
+
+    // The bytes which were signed. They are only marshalled again if this object
+    // was itself read from a java serialization.
+    public Bytestring serialized(Marshaller<X> m) throws IOException {
+        if (serialized != null) return serialized;
+
+        return m.marshall(message);
+    }
+
+    // Check the signature against a given key. If it was already checked against
+    // that key when this object was constructed, it is not checked again.
+    public boolean verify(VerificationKey key, Marshaller<X> m) throws IOException {
+        if (key == null) return false;
+
+        if (verified != null && verified.equals(key)) return true;
+
+        return key.verify(serialized(m), signature);
     }
 
     @Override
@@ -31,7 +31,7 @@ public class VerifyingSend<X> implements Send<Signed<X>> {
 
     @Override
     public boolean send(Signed<X> x) throws InterruptedException, IOException {
-        return x != null && key.verify(marshaller.marshall(x.message), x.signature) && send.send(x);
+        return x != null && x.verify(key, marshaller) && send.send(x);
 
     }
 
@@ -28,6 +28,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Reader;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -184,34 +185,52 @@ public class MockCoin implements com.shuffle.sim.MockCoin {
             }
         }
 
-        @Override
-        public boolean addInputScript(Bytestring b) throws FormatException {
-
+        // Read the key from an input script, if the script is for this transaction.
+        private VerificationKey key(Bytestring b) {
             ByteArrayInputStream bais = new ByteArrayInputStream(b.bytes);
 
-            VerificationKey vk = null;
             try {
                 ObjectInputStream ois = new ObjectInputStream(bais);
 
                 MockSignature s = ((MockSignature) ois.readObject());
-                vk = s.key;
-                if (z != s.z) return false;
+                if (z != s.z) return null;
+                return s.key;
             } catch (ClassNotFoundException | IOException e) {
-                return false;
+                return null;
             }
+        }
 
+        // The unsigned input which the key can sign for, if any.
+        private Output input(VerificationKey vk) {
             for (Output o : inputs) {
                 VerificationKey s = signatures.get(o);
 
                 if (s != null) continue;
 
                 if (vk.address().equals(o.address)) {
-                    signatures.put(o, vk);
-                    return true;
+                    return o;
                 }
             }
 
-            return false;
+            return null;
+        }
+
+        @Override
+        public boolean addInputScript(Bytestring b) throws FormatException {
+            VerificationKey vk = key(b);
+            if (vk == null) return false;
+
+            Output o = input(vk);
+            if (o == null) return false;
+
+            signatures.put(o, vk);
+            return true;
+        }
+
+        @Override
+        public boolean checkInputScript(Bytestring b) {
+            VerificationKey vk = key(b);
+            return vk != null && input(vk) != null;
         }
 
         @Override
@@ -367,6 +386,11 @@ public class MockCoin implements com.shuffle.sim.MockCoin {
         return valueHeld(addr) >= amount;
     }
 
+    // Everything is already here.
+    @Override
+    public void prefetch(Collection<Address> addresses) {
+    }
+
     @Override
     public Transaction shuffleTransaction(
             final long amount,
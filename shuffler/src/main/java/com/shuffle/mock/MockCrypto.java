@@ -43,8 +43,9 @@ public class MockCrypto implements Crypto {
         return new MockSigningKey(signingKeyCounter++);
     }
 
+    // Implementations of Random must be safe to call from more than one thread.
     @Override
-    public synchronized int getRandom(int n) {
+    public int getRandom(int n) {
         return rand.getRandom(n);
     }
 }
@@ -10,8 +10,10 @@ package com.shuffle.mock;
 
 import com.shuffle.bitcoin.DecryptionKey;
 import com.shuffle.bitcoin.EncryptionKey;
+import com.shuffle.p2p.Bytestring;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 /**
  * It's a pretend decryption key for testing purposes.
@@ -50,6 +52,12 @@ public class MockDecryptionKey implements DecryptionKey, Serializable {
         return m + "~decrypt[" + index + "]";
     }
 
+    @Override
+    public Bytestring decrypt(Bytestring m) {
+        return new Bytestring(
+                decrypt(new String(m.bytes, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8));
+    }
+
     @Override
     public String toString() {
         return "dk[" + index + "]";
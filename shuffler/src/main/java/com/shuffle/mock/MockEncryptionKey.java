@@ -9,8 +9,10 @@
 package com.shuffle.mock;
 
 import com.shuffle.bitcoin.EncryptionKey;
+import com.shuffle.p2p.Bytestring;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.regex.Pattern;
 
 /**
@@ -46,6 +48,12 @@ public class MockEncryptionKey implements EncryptionKey, Serializable {
         return m + "~encrypt[" + index + "]";
     }
 
+    @Override
+    public Bytestring encrypt(Bytestring m) {
+        return new Bytestring(
+                encrypt(new String(m.bytes, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8));
+    }
+
     @Override
     public String toString() {
         return "ek[" + index + "]";
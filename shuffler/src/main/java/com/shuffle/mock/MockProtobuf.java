@@ -17,6 +17,14 @@ import java.io.IOException;
  */
 public class MockProtobuf extends Protobuf {
 
+    public MockProtobuf() {
+        super();
+    }
+
+    public MockProtobuf(Version version) {
+        super(version);
+    }
+
     @Override
     // Unmarshall an address from its string representation.
     public Address unmarshallAdress(String str) {
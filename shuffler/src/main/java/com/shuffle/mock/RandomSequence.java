@@ -12,7 +12,7 @@ public class RandomSequence implements MockCrypto.Random {
     }
 
     @Override
-    public int getRandom(int n) {
+    public synchronized int getRandom(int n) {
         // we use a premature end of the sequence blockchain simulate a problem.
         if (counter >= sequence.length) {
             return 0;
@@ -0,0 +1,237 @@
+/**
+ *
+ * Copyright © 2016 Mycelium.
+ * Use of this source code is governed by an ISC
+ * license that can be found in the LICENSE file.
+ *
+ */
+
+package com.shuffle.player;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A persistent, append-only sequence of atoms.
+ *
+ * Every version of the sequence is a window [start, end) onto a shared backing array. Appending
+ * to a version whose end is also the end of the claimed region of the array just claims the next
+ * slot, so building up a message one atom at a time is O(1) amortized. Appending to an older
+ * version (whose next slot was already taken by someone else) copies the window first, so no
+ * version is ever changed by an append to another. Taking the rest of a sequence is O(1).
+ *
+ * The atoms stored here never have a next atom; the linked form of the sequence is only built
+ * when it is needed for marshalling.
+ */
+public final class AtomVector implements Iterable<Message.Atom>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // The backing array, shared by all versions which were built on top of one another.
+    private static final class Store {
+        final Message.Atom[] atoms;
+
+        // The number of slots of the array which have been claimed by some version.
+        final AtomicInteger claimed;
+
+        Store(Message.Atom[] atoms, int claimed) {
+            this.atoms = atoms;
+            this.claimed = new AtomicInteger(claimed);
+        }
+    }
+
+    private static final int MINIMUM_CAPACITY = 4;
+
+    public static final AtomVector EMPTY = new AtomVector(new Store(new Message.Atom[0], 0), 0, 0);
+
+    private final transient Store store;
+    private final transient int start;
+    private final transient int end;
+
+    // The linked form of this sequence, which is only constructed if someone asks for it.
+    private transient volatile Message.Atom chain = null;
+
+    private AtomVector(Store store, int start, int end) {
+        this.store = store;
+        this.start = start;
+        this.end = end;
+    }
+
+    public int size() {
+        return end - start;
+    }
+
+    public boolean isEmpty() {
+        return end == start;
+    }
+
+    public Message.Atom get(int i) {
+        if (i < 0 || i >= size()) throw new IndexOutOfBoundsException();
+
+        return store.atoms[start + i];
+    }
+
+    // The first atom, or null if the sequence is empty.
+    public Message.Atom first() {
+        if (isEmpty()) return null;
+
+        return store.atoms[start];
+    }
+
+    // Everything but the first atom.
+    public AtomVector rest() {
+        if (isEmpty()) throw new NoSuchElementException();
+
+        return new AtomVector(store, start + 1, end);
+    }
+
+    public AtomVector append(Message.Atom atom) {
+        if (atom == null) throw new NullPointerException();
+
+        atom = unlinked(atom);
+
+        // If nobody has yet appended anything to this version, we can take the next slot.
+        if (end < store.atoms.length && store.claimed.compareAndSet(end, end + 1)) {
+            store.atoms[end] = atom;
+            return new AtomVector(store, start, end + 1);
+        }
+
+        // Otherwise copy the window into a new array with room to grow.
+        int size = size();
+        Message.Atom[] atoms = new Message.Atom[Math.max(MINIMUM_CAPACITY, 2 * (size + 1))];
+        System.arraycopy(store.atoms, start, atoms, 0, size);
+        atoms[size] = atom;
+        return new AtomVector(new Store(atoms, size + 1), 0, size + 1);
+    }
+
+    // Construct a sequence from the linked form. Iterative, so that long chains
+    // do not use up the stack.
+    public static AtomVector fromChain(Message.Atom chain) {
+        if (chain == null) return EMPTY;
+
+        int size = 0;
+        for (Message.Atom a = chain; a != null; a = a.next) {
+            size++;
+        }
+
+        Message.Atom[] atoms = new Message.Atom[size];
+        int i = 0;
+        for (Message.Atom a = chain; a != null; a = a.next) {
+            atoms[i] = unlinked(a);
+            i++;
+        }
+
+        AtomVector v = new AtomVector(new Store(atoms, size), 0, size);
+        v.chain = chain;
+        return v;
+    }
+
+    // The linked form of this sequence, as it is marshalled. Returns null if the
+    // sequence is empty. Built back to front so that each atom is only constructed once.
+    public Message.Atom chain() {
+        Message.Atom c = chain;
+        if (c != null || isEmpty()) return c;
+
+        for (int i = end - 1; i >= start; i--) {
+            Message.Atom a = store.atoms[i];
+            c = new Message.Atom(a.addr, a.ek, a.secureHash, a.sig, a.string, a.blame, a.ciphertext, c);
+        }
+
+        chain = c;
+        return c;
+    }
+
+    private static Message.Atom unlinked(Message.Atom a) {
+        if (a.next == null) return a;
+
+        return new Message.Atom(a.addr, a.ek, a.secureHash, a.sig, a.string, a.blame, a.ciphertext, null);
+    }
+
+    @Override
+    public Iterator<Message.Atom> iterator() {
+        return new Iterator<Message.Atom>() {
+            private int i = start;
+
+            @Override
+            public boolean hasNext() {
+                return i < end;
+            }
+
+            @Override
+            public Message.Atom next() {
+                if (i >= end) throw new NoSuchElementException();
+
+                return store.atoms[i++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof AtomVector)) return false;
+
+        AtomVector v = (AtomVector) o;
+
+        if (v.size() != size()) return false;
+
+        for (int i = 0; i < size(); i++) {
+            if (!store.atoms[start + i].equals(v.store.atoms[v.start + i])) return false;
+        }
+
+        return true;
+    }
+
+    // The same value as the hash code of the linked form, which is the sum of
+    // the hash codes of the individual atoms.
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash += store.atoms[i].hashCode();
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) return "[]";
+
+        StringBuilder str = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            if (i != start) str.append("⊕");
+            str.append(store.atoms[i].toString());
+        }
+
+        return str.toString();
+    }
+
+    // Only the atoms in the window are serialized, not the whole backing array.
+    private Object writeReplace() throws ObjectStreamException {
+        Message.Atom[] atoms = new Message.Atom[size()];
+        System.arraycopy(store.atoms, start, atoms, 0, size());
+        return new Serialized(atoms);
+    }
+
+    private static final class Serialized implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Message.Atom[] atoms;
+
+        Serialized(Message.Atom[] atoms) {
+            this.atoms = atoms;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            if (atoms.length == 0) return EMPTY;
+
+            return new AtomVector(new Store(atoms, atoms.length), 0, atoms.length);
+        }
+    }
+}
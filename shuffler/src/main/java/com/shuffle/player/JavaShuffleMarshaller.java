@@ -30,4 +30,9 @@ public class JavaShuffleMarshaller implements Messages.ShuffleMarshaller {
     public Marshaller<Signed<Packet<VerificationKey, Payload>>> signedMarshaller() {
         return new JavaMarshaller<>();
     }
+
+    @Override
+    public boolean broadcastPackets() {
+        return true;
+    }
 }
@@ -12,6 +12,7 @@ import com.shuffle.protocol.message.Phase;
 import java.io.IOException;
 import java.io.Serializable;
 import java.security.MessageDigest;
+import java.util.Collection;
 
 /**
  * Implementation of coin shuffle messages.
@@ -54,6 +55,31 @@ public class Message implements com.shuffle.protocol.message.Message, Serializab
         }
     }
 
+    // An entry in the shuffle phase, encrypted with some number of layers.
+    public static class Ciphertext implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public final Bytestring ciphertext;
+
+        public Ciphertext(Bytestring ciphertext) {
+            if (ciphertext == null) throw new NullPointerException();
+
+            this.ciphertext = ciphertext;
+        }
+
+        public String toString() {
+            return "ciphertext[" + ciphertext + "]";
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Ciphertext && ciphertext.equals(((Ciphertext) o).ciphertext);
+        }
+
+        public int hashCode() {
+            return ciphertext.hashCode();
+        }
+    }
+
     public static class Atom implements Serializable {
         public final Address addr;
         public final EncryptionKey ek;
@@ -61,6 +87,7 @@ public class Message implements com.shuffle.protocol.message.Message, Serializab
         public final Bytestring sig;
         public final String string;
         public final Blame blame;
+        public final Ciphertext ciphertext;
 
         public final Atom next;
 
@@ -71,6 +98,7 @@ public class Message implements com.shuffle.protocol.message.Message, Serializab
                 Bytestring sig,
                 String string,
                 Blame blame,
+                Ciphertext ciphertext,
                 //com.shuffle.protocol.message.Packet packet,
                 Atom next
         ) {
@@ -79,7 +107,7 @@ public class Message implements com.shuffle.protocol.message.Message, Serializab
             {
                 if (addr != null) {
                     if (ek != null || sig != null || secureHash != null
-                            || blame != null || string != null) {
+                            || blame != null || string != null || ciphertext != null) {
 
                         throw new IllegalArgumentException();
                     }
@@ -87,34 +115,43 @@ public class Message implements com.shuffle.protocol.message.Message, Serializab
                 }
 
                 if (ek != null) {
-                    if (sig != null || secureHash != null || string != null || blame != null) {
+                    if (sig != null || secureHash != null || string != null || blame != null
+                            || ciphertext != null) {
                         throw new IllegalArgumentException();
                     }
                     break format;
                 }
 
                 if (sig != null) {
-                    if (secureHash != null || string != null || blame != null) {
+                    if (secureHash != null || string != null || blame != null
+                            || ciphertext != null) {
                         throw new IllegalArgumentException();
                     }
                     break format;
                 }
 
                 if (secureHash != null) {
-                    if (string != null || blame != null) {
+                    if (string != null || blame != null || ciphertext != null) {
                         throw new IllegalArgumentException();
                     }
                     break format;
                 }
 
                 if (string != null) {
-                    if (blame != null) {
+                    if (blame != null || ciphertext != null) {
                         throw new IllegalArgumentException();
                     }
                     break format;
                 }
 
                 if (blame != null) {
+                    if (ciphertext != null) {
+                        throw new IllegalArgumentException();
+                    }
+                    break format;
+                }
+
+                if (ciphertext != null) {
                     break format;
                 }
 
@@ -127,27 +164,31 @@ public class Message implements com.shuffle.protocol.message.Message, Serializab
             this.secureHash = secureHash;
             this.string = string;
             this.blame = blame;
+            this.ciphertext = ciphertext;
             this.next = next;
         }
 
         public static Atom make(Object o, Atom next) {
             if (o instanceof Address) {
-                return new Atom((Address) o, null, null, null, null, null, next);
+                return new Atom((Address) o, null, null, null, null, null, null, next);
             }
             if (o instanceof EncryptionKey) {
-                return new Atom(null, (EncryptionKey) o, null, null, null, null, next);
+                return new Atom(null, (EncryptionKey) o, null, null, null, null, null, next);
             }
             if (o instanceof SecureHash) {
-                return new Atom(null, null, (SecureHash) o, null, null, null, next);
+                return new Atom(null, null, (SecureHash) o, null, null, null, null, next);
             }
             if (o instanceof Bytestring) {
-                return new Atom(null, null, null, (Bytestring) o, null, null, next);
+                return new Atom(null, null, null, (Bytestring) o, null, null, null, next);
             }
             if (o instanceof String) {
-                return new Atom(null, null, null, null, (String)o, null, next);
+                return new Atom(null, null, null, null, (String)o, null, null, next);
             }
             if (o instanceof Blame) {
-                return new Atom(null, null, null, null, null, (Blame) o, next);
+                return new Atom(null, null, null, null, null, (Blame) o, null, next);
+            }
+            if (o instanceof Ciphertext) {
+                return new Atom(null, null, null, null, null, null, (Ciphertext) o, next);
             }
 
             throw new IllegalArgumentException();
@@ -157,14 +198,6 @@ public class Message implements com.shuffle.protocol.message.Message, Serializab
             return make(o, null);
         }
 
-        private static Atom attach(Atom a, Atom o) {
-            if (a == null) {
-                return o;
-            }
-
-            return new Atom(a.addr, a.ek, a.secureHash, a.sig, a.string, a.blame, attach(a.next, o));
-        }
-
         @Override
         public boolean equals(Object o) {
             if (o == null) {
@@ -183,6 +216,7 @@ public class Message implements com.shuffle.protocol.message.Message, Serializab
                     && (a.blame == null && blame == null || blame != null && blame.equals(a.blame))
                     && (a.secureHash == null && secureHash == null || secureHash != null && secureHash.equals(a.secureHash))
                     && (a.string == null && string == null || string != null && string.equals(a.string))
+                    && (a.ciphertext == null && ciphertext == null || ciphertext != null && ciphertext.equals(a.ciphertext))
                     && (a.next == null && next == null || next != null && next.equals(a.next));
         }
 
@@ -193,6 +227,7 @@ public class Message implements com.shuffle.protocol.message.Message, Serializab
             hash = hash * 15 + (sig == null ? 0 : sig.hashCode());
             hash = hash * 15 + (this.secureHash == null ? 0 : this.secureHash.hashCode());
             hash = hash * 15 + (blame == null ? 0 : blame.hashCode());
+            hash = hash * 15 + (ciphertext == null ? 0 : ciphertext.hashCode());
             hash = hash * 15 + (next == null ? 0 : next.hashCode());
             return hash;
         }
@@ -213,13 +248,17 @@ public class Message implements com.shuffle.protocol.message.Message, Serializab
 
             if (blame != null) str += blame.toString();
 
+            if (ciphertext != null) str += ciphertext.toString();
+
             if (next != null) str += "⊕" + next.toString();
 
             return str;
         }
     }
 
-    public final Atom atoms;
+    // The atoms are kept in a persistent vector rather than as a linked list so that
+    // attaching a new atom to the end of a message does not copy the whole message.
+    public final AtomVector atoms;
 
     // If this message can be sent, then this is the network by
     // which it is sent. Otherwise, it's null.
@@ -229,110 +268,135 @@ public class Message implements com.shuffle.protocol.message.Message, Serializab
     public Message(Messages messages) {
         if (messages == null) throw new NullPointerException();
 
-        atoms = null;
+        atoms = AtomVector.EMPTY;
         this.messages = messages;
         this.addressMarshaller = messages.addressMarshaller;
     }
 
     public Message(Atom atom, Marshaller<Address> addressMarshaller, Messages messages) {
-        if (addressMarshaller == null) throw new NullPointerException();
+        this(AtomVector.fromChain(atom), addressMarshaller, messages);
+    }
+
+    public Message(AtomVector atoms, Marshaller<Address> addressMarshaller, Messages messages) {
+        if (atoms == null || addressMarshaller == null) throw new NullPointerException();
 
-        atoms = atom;
+        this.atoms = atoms;
         this.messages = messages;
         this.addressMarshaller = addressMarshaller;
     }
 
     @Override
     public boolean isEmpty() {
-        return atoms == null;
+        return atoms.isEmpty();
     }
 
     @Override
     public com.shuffle.protocol.message.Message attach(EncryptionKey ek) {
         if (ek == null) throw new NullPointerException();
 
-        return new Message(Atom.attach(atoms, Atom.make(ek)), addressMarshaller, messages);
+        return new Message(atoms.append(Atom.make(ek)), addressMarshaller, messages);
     }
 
     @Override
     public com.shuffle.protocol.message.Message attach(Address addr) {
         if (addr == null) throw new NullPointerException();
 
-        return new Message(Atom.attach(atoms, Atom.make(addr)), addressMarshaller, messages);
+        return new Message(atoms.append(Atom.make(addr)), addressMarshaller, messages);
     }
 
     @Override
     public com.shuffle.protocol.message.Message attach(String str) {
         if (str == null) throw new NullPointerException();
 
-        return new Message(Atom.attach(atoms, Atom.make(str)), addressMarshaller, messages);
+        return new Message(atoms.append(Atom.make(str)), addressMarshaller, messages);
     }
 
     @Override
     public com.shuffle.protocol.message.Message attach(Bytestring sig) {
         if (sig == null) throw new NullPointerException();
 
-        return new Message(Atom.attach(atoms, Atom.make(sig)), addressMarshaller, messages);
+        return new Message(atoms.append(Atom.make(sig)), addressMarshaller, messages);
     }
 
     @Override
     public com.shuffle.protocol.message.Message attach(Blame blame) {
         if (blame == null) throw new NullPointerException();
 
-        return new Message(Atom.attach(atoms, Atom.make(blame)), addressMarshaller, messages);
+        return new Message(atoms.append(Atom.make(blame)), addressMarshaller, messages);
+    }
+
+    @Override
+    public com.shuffle.protocol.message.Message attachCiphertext(Bytestring ciphertext) {
+        if (ciphertext == null) throw new NullPointerException();
+
+        return new Message(atoms.append(Atom.make(new Ciphertext(ciphertext))), addressMarshaller, messages);
     }
 
     public com.shuffle.protocol.message.Message hashed() throws FormatException, IOException {
 
         return new Message(Atom.make(
-                new SecureHash(messages.sha256, messages.atomMarshaller, this.atoms)),
+                new SecureHash(messages.sha256, messages.atomMarshaller, atoms.chain())),
                 addressMarshaller, messages);
     }
 
     @Override
     public EncryptionKey readEncryptionKey() throws FormatException {
-        if (atoms == null || atoms.ek == null) throw new FormatException("Encryption key not found.");
+        Atom atom = atoms.first();
+        if (atom == null || atom.ek == null) throw new FormatException("Encryption key not found.");
 
-        return atoms.ek;
+        return atom.ek;
     }
 
     @Override
     public Address readAddress() throws FormatException {
-        if (atoms == null) throw new FormatException("Address not found");
-        if (atoms.addr != null) return atoms.addr;
-        else if (atoms.string == null) throw new FormatException("Address not found.");
+        Atom atom = atoms.first();
+        if (atom == null) throw new FormatException("Address not found");
+        if (atom.addr != null) return atom.addr;
+        else if (atom.string == null) throw new FormatException("Address not found.");
         // Attempt to read string as an address.
-        return addressMarshaller.unmarshall(new Bytestring(atoms.string.getBytes()));
+        return addressMarshaller.unmarshall(new Bytestring(atom.string.getBytes()));
     }
 
     @Override
     public String readString() throws FormatException {
-        if (atoms == null || atoms.string == null)
+        Atom atom = atoms.first();
+        if (atom == null || atom.string == null)
             throw new FormatException("String not found.");
 
-        return atoms.string;
+        return atom.string;
+    }
+
+    @Override
+    public Bytestring readCiphertext() throws FormatException {
+        Atom atom = atoms.first();
+        if (atom == null || atom.ciphertext == null)
+            throw new FormatException("Ciphertext not found.");
+
+        return atom.ciphertext.ciphertext;
     }
 
     @Override
     public Blame readBlame() throws FormatException {
-        if (atoms == null || atoms.blame == null) throw new FormatException("Blame not found");
+        Atom atom = atoms.first();
+        if (atom == null || atom.blame == null) throw new FormatException("Blame not found");
 
-        return atoms.blame;
+        return atom.blame;
     }
 
     @Override
     public Bytestring readSignature() throws FormatException {
-        if (atoms == null || atoms.sig == null) throw new FormatException("Signature not found");
+        Atom atom = atoms.first();
+        if (atom == null || atom.sig == null) throw new FormatException("Signature not found");
 
-        return atoms.sig;
+        return atom.sig;
     }
 
     @Override
     public com.shuffle.protocol.message.Message rest() throws FormatException {
 
-        if (atoms == null) throw new FormatException("Rest called on last element.");
+        if (atoms.isEmpty()) throw new FormatException("Rest called on last element.");
 
-        return new Message(atoms.next, addressMarshaller, messages);
+        return new Message(atoms.rest(), addressMarshaller, messages);
     }
 
     @Override
@@ -344,6 +408,15 @@ public class Message implements com.shuffle.protocol.message.Message, Serializab
         return messages.send(this, phase, to);
     }
 
+    @Override
+    public com.shuffle.protocol.message.Packet broadcast(Phase phase, Collection<VerificationKey> to)
+            throws InterruptedException, IOException {
+
+        if (messages == null) return null;
+
+        return messages.broadcast(this, phase, to);
+    }
+
     @Override
     public boolean equals(Object o) {
 
@@ -353,23 +426,16 @@ public class Message implements com.shuffle.protocol.message.Message, Serializab
 
         Message mock = (Message) o;
 
-        return ((atoms == null && mock.atoms == null)
-                || (atoms != null && atoms.equals(mock.atoms)));
+        return atoms.equals(mock.atoms);
     }
 
     @Override
     public int hashCode() {
-        if (atoms == null) return 0;
-
-        int hash = 0;
-        hash = hash * 15 + atoms.hashCode();
-        return hash;
+        return atoms.hashCode();
     }
 
     @Override
     public String toString() {
-        if (atoms == null) return "[]";
-
         return atoms.toString();
     }
 }
@@ -30,10 +30,12 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * All Message handling for CoinShuffle in one convenient package!
@@ -46,6 +48,10 @@ public class Messages implements MessageFactory {
         Marshaller<Address> addressMarshaller();
         Marshaller<Packet<VerificationKey, Payload>> packetMarshaller();
         Marshaller<Signed<Packet<VerificationKey, Payload>>> signedMarshaller();
+
+        // Whether packets with no recipient can be written, so that a broadcast
+        // can be signed once for everybody.
+        boolean broadcastPackets();
     }
 
     /**
@@ -150,6 +156,15 @@ public class Messages implements MessageFactory {
 
     final Bytestring session;
     final SigningKey me;
+    private final VerificationKey vk;
+    private final Marshaller<Packet<VerificationKey, Payload>> pm;
+
+    // Every packet we send is numbered from the same counter, whether it goes to one
+    // player or to everyone, so that no two of our packets have the same number.
+    private final AtomicInteger sequenceNumber = new AtomicInteger();
+
+    // Whether a broadcast is written as one packet with no recipient.
+    private final boolean broadcastPackets;
 
     public final MessageDigest sha256;
     public final Marshaller<Message.Atom> atomMarshaller;
@@ -173,9 +188,10 @@ public class Messages implements MessageFactory {
         sha256 = MessageDigest.getInstance("SHA-256");
         this.atomMarshaller = m.atomMarshaller();
         this.addressMarshaller = m.addressMarshaller();
-        Marshaller<Packet<VerificationKey, Payload>> pm = m.packetMarshaller();
+        pm = m.packetMarshaller();
+        broadcastPackets = m.broadcastPackets();
 
-        VerificationKey vk = me.VerificationKey();
+        vk = me.VerificationKey();
 
         for (Map.Entry<VerificationKey, Send<Signed<Packet<VerificationKey, Payload>>>> z : net.entrySet()) {
 
@@ -184,7 +200,7 @@ public class Messages implements MessageFactory {
             
             HistorySend<Signed<Packet<VerificationKey, Payload>>> h = new HistorySend<>(z.getValue());
             Send<Packet<VerificationKey, Payload>> signer = new SigningSend<>(h, pm, me);
-            Send<Payload> p = new OutgoingPacketSend<>(signer, session, vk, k);
+            Send<Payload> p = new OutgoingPacketSend<>(signer, session, vk, k, sequenceNumber);
             this.net.put(k, new Outgoing(p, h, vk));
         }
 
@@ -192,7 +208,7 @@ public class Messages implements MessageFactory {
         HistorySend<Signed<Packet<VerificationKey, Payload>>> h = new HistorySend<>(
                 new IgnoreSend<Signed<Packet<VerificationKey, Payload>>>());
 
-        Send<Payload> p = new OutgoingPacketSend<>(new SigningSend<>(h, pm, me), session, vk, vk);
+        Send<Payload> p = new OutgoingPacketSend<>(new SigningSend<>(h, pm, me), session, vk, vk, sequenceNumber);
         this.net.put(vk, new Outgoing(p, h, vk));
     }
 
@@ -240,4 +256,44 @@ public class Messages implements MessageFactory {
 
         return new SignedPacket(x.last());
     }
+
+    // Send a message to a set of players. If the wire format allows it, rather than
+    // making a packet for each of them we make one packet addressed to everyone and
+    // sign it once. Otherwise each player gets their own packet, and the one sent to
+    // ourselves is returned.
+    public SignedPacket broadcast(Message m, Phase phase, Collection<VerificationKey> to)
+            throws InterruptedException, IOException {
+
+        Map<VerificationKey, Outgoing> net = m.messages.net;
+
+        if (net.isEmpty()) return null;
+
+        if (!broadcastPackets) {
+            SignedPacket packet = null;
+            for (VerificationKey k : to) {
+                SignedPacket sent = send(m, phase, k);
+
+                if (sent != null && (packet == null || vk.equals(k))) {
+                    packet = sent;
+                }
+            }
+
+            return packet;
+        }
+
+        Signed<Packet<VerificationKey, Payload>> signed = new Signed<>(
+                new Packet<>(session, vk, null, sequenceNumber.getAndIncrement(),
+                        new Payload(phase, m)),
+                me, pm);
+
+        for (VerificationKey k : to) {
+            Outgoing x = net.get(k);
+
+            if (x == null) continue;
+
+            x.h.send(signed);
+        }
+
+        return new SignedPacket(signed);
+    }
 }
@@ -12,13 +12,27 @@ public class Payload implements Serializable {
     public final Message message;
     public final Phase phase;
 
+    // The wire format that this payload was read from, if it came from
+    // the network. It is not part of the payload's value.
+    public final Protobuf.Version version;
+
     public Payload(
             Phase phase,
             Message message
     ) {
 
+        this(phase, message, null);
+    }
+
+    public Payload(
+            Phase phase,
+            Message message,
+            Protobuf.Version version
+    ) {
+
         this.phase = phase;
         this.message = message;
+        this.version = version;
     }
 
     @Override
@@ -41,12 +41,12 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -80,6 +80,7 @@ class Player {
     private final Address change;
     private final Messages.ShuffleMarshaller m;
     private final PrintStream stream;
+    private final Executor executor;
 
     public Report report = null;
 
@@ -98,7 +99,8 @@ class Player {
          Crypto crypto,
          Channel<VerificationKey, Signed<Packet<VerificationKey, Payload>>> channel,
          Messages.ShuffleMarshaller m,
-         PrintStream stream
+         PrintStream stream,
+         Executor executor // Used to decrypt in parallel in the shuffle phase. (may be null).
     ) {
         if (sk == null || coin == null || session == null || addrs == null
                 || crypto == null || anon == null || channel == null) {
@@ -117,6 +119,7 @@ class Player {
         this.addrs = addrs;
         this.m = m;
         this.stream = stream;
+        this.executor = executor;
     }
 
     public Running start() throws IOException, InterruptedException {
@@ -156,7 +159,7 @@ class Player {
                 // If the protocol returns correctly without throwing a Matrix, then
                 // it has been successful.
                 Messages messages = new Messages(session, sk, collector.connected, collector.inbox, m);
-                CoinShuffle cs = new CoinShuffle(messages, crypto, coin);
+                CoinShuffle cs = new CoinShuffle(messages, crypto, coin, executor);
                 return Report.success(cs.runProtocol(amount, fee, sk, addrs, anon, change, ch));
             } catch (Matrix m) {
                 return Report.failure(m, addrs);
@@ -389,18 +392,16 @@ class Player {
             // Stores evidences required to eliminate players.
             Map<VerificationKey, Evidence> evidences = new HashMap<>();
 
+            // The players blamed by everyone except themselves.
+            Set<VerificationKey> blamedByAll = blame.blamedByAll(identities);
+
             // Next go through the set of blamed players and decide what to do with them.
             for (Map.Entry<VerificationKey, Map<VerificationKey, Evidence>> entry : blamed.entrySet()) {
                 VerificationKey player = entry.getKey();
 
                 Map<VerificationKey, Evidence> accusers = entry.getValue();
 
-                // Does everyone blame this player except himself?
-                Set<VerificationKey> everyone = new HashSet<>();
-                everyone.addAll(identities);
-                everyone.removeAll(accusers.keySet());
-
-                if (everyone.size() == 0 || everyone.size() == 1 && everyone.contains(player)) {
+                if (blamedByAll.contains(player)) {
                     eliminated.add(player); // Can eliminate this player without extra evidence.
                     continue;
                 }
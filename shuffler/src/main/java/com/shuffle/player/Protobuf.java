@@ -1,7 +1,10 @@
 package com.shuffle.player;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
 import com.shuffle.bitcoin.Address;
 import com.shuffle.bitcoin.DecryptionKey;
 import com.shuffle.bitcoin.EncryptionKey;
@@ -22,6 +25,7 @@ import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 
 /**
@@ -29,6 +33,18 @@ import java.util.Queue;
  */
 public abstract class Protobuf implements Messages.ShuffleMarshaller {
 
+    // Versions of the wire format for packets. Every packet says which version it is
+    // written in, so a marshaller can read either one regardless of which one it writes.
+    public enum Version {
+        // The message is a linked list of atoms. Each atom is nested inside the one before
+        // it, so reading and writing it is recursive and the depth grows with the number
+        // of players. (Protobuf will not parse beyond a depth of 100.)
+        V1,
+
+        // The message is a flat list of atoms.
+        V2
+    }
+
     // Unmarshall an address from its string representation.
     public abstract Address unmarshallAdress(String str) throws FormatException;
 
@@ -44,15 +60,17 @@ public abstract class Protobuf implements Messages.ShuffleMarshaller {
     // Unmarshall a Transaction
     public abstract Transaction unmarshallTransaction(byte[] bytes) throws FormatException;
 
-    public static Proto.Signed.Builder marshallSignedPacket(com.shuffle.protocol.message.Packet p) {
+    public static Proto.Signed.Builder marshallSignedPacket(com.shuffle.protocol.message.Packet p, Version version) {
         if (p == null || !(p instanceof Messages.SignedPacket)) {
             throw new IllegalArgumentException("Unknown implementation of Packet.");
         }
 
-        return marshallSignedPacket(((Messages.SignedPacket) p).packet);
+        return marshallSignedPacket(((Messages.SignedPacket) p).packet, version);
     }
 
-    public static Proto.Packet.Builder marshallPacket(com.shuffle.chan.packet.Packet<VerificationKey, Payload> p) {
+    // A packet that we received is written back in the version that it came in. Otherwise
+    // the signature would not match if we had to pass it along as evidence in a blame message.
+    public static Proto.Packet.Builder marshallPacket(com.shuffle.chan.packet.Packet<VerificationKey, Payload> p, Version version) {
         Proto.Phase phase;
         switch(p.payload.phase) {
             case Announcement: {
@@ -84,32 +102,82 @@ public abstract class Protobuf implements Messages.ShuffleMarshaller {
             }
         }
 
-        Proto.Message.Builder mb = Proto.Message.newBuilder();
         Message msg = p.payload.message;
 
         if (msg == null) {
            throw new IllegalArgumentException("Null or unknown Message format.");
         }
 
+        if (p.payload.version != null) {
+            version = p.payload.version;
+        }
+
         Proto.Packet.Builder pb = Proto.Packet.newBuilder()
                 .setSession(ByteString.copyFrom(p.session.bytes))
-                .setTo(Proto.VerificationKey.newBuilder()
-                        .setKey(p.to.toString()))
                 .setFrom(Proto.VerificationKey.newBuilder()
                         .setKey(p.from.toString()))
                 .setNumber(p.sequenceNumber)
-                .setPhase(phase)
-                .setMessage(mb);
+                .setPhase(phase);
+
+        // A broadcast packet has no recipient. Version 1 readers require one, so
+        // only a version 2 packet can be a broadcast.
+        if (p.to != null) {
+            pb.setTo(Proto.VerificationKey.newBuilder().setKey(p.to.toString()));
+        } else if (version != Version.V2) {
+            throw new IllegalArgumentException("Version " + version + " packet must have a recipient.");
+        }
 
-        Message.Atom atom = (msg).atoms;
-        if (atom != null) {
-            pb.setMessage(marshallAtom(atom));
+        switch (version) {
+            case V1: {
+                if (msg.atoms.isEmpty()) {
+                    pb.setMessage(Proto.Message.newBuilder());
+                } else {
+                    pb.setMessage(marshallAtoms(msg.atoms, version));
+                }
+                break;
+            }
+            case V2: {
+                pb.setVersion(2);
+                for (Message.Atom atom : msg.atoms) {
+                    pb.addAtoms(marshallAtomValue(atom, version));
+                }
+                break;
+            }
+            default : {
+                throw new IllegalArgumentException("Invalid version " + version);
+            }
         }
 
         return pb;
     }
 
-    public static Proto.Message.Builder marshallAtom(Message.Atom atom) {
+    // Write a sequence of atoms as a linked list in the version 1 format. The list is
+    // built from the end so that we do not need to recurse.
+    public static Proto.Message.Builder marshallAtoms(AtomVector atoms, Version version) {
+        if (atoms.isEmpty()) throw new IllegalArgumentException("Atom cannot be empty.");
+
+        Proto.Message next = null;
+        for (int i = atoms.size() - 1; i > 0; i--) {
+            Proto.Message.Builder ab = marshallAtomValue(atoms.get(i), version);
+            if (next != null) {
+                ab.setNext(next);
+            }
+            next = ab.build();
+        }
+
+        Proto.Message.Builder ab = marshallAtomValue(atoms.first(), version);
+        if (next != null) {
+            ab.setNext(next);
+        }
+        return ab;
+    }
+
+    public static Proto.Message.Builder marshallAtom(Message.Atom atom, Version version) {
+        return marshallAtoms(AtomVector.fromChain(atom), version);
+    }
+
+    // Write a single atom, ignoring anything that comes after it.
+    static Proto.Message.Builder marshallAtomValue(Message.Atom atom, Version version) {
         Proto.Message.Builder ab = Proto.Message.newBuilder();
 
         if (atom.addr != null) {
@@ -125,24 +193,30 @@ public abstract class Protobuf implements Messages.ShuffleMarshaller {
         } else if (atom.string != null) {
             ab.setStr(atom.string);
         } else if (atom.blame != null) {
-            ab.setBlame(marshallBlame(atom.blame));
+            ab.setBlame(marshallBlame(atom.blame, version));
+        } else if (atom.ciphertext != null) {
+            ab.setCiphertext(ByteString.copyFrom(atom.ciphertext.ciphertext.bytes));
         } else {
             throw new IllegalArgumentException("Atom cannot be empty.");
         }
 
-        if (atom.next != null) {
-            ab.setNext(marshallAtom(atom.next));
-        }
-
         return ab;
     }
 
-    public static Proto.Signed.Builder marshallSignedPacket(Signed<com.shuffle.chan.packet.Packet<VerificationKey, Payload>> p) {
-        return Proto.Signed.newBuilder().setPacket(marshallPacket(p.message)).setSignature(
+    // A signed packet is written with exactly the bytes that were signed, so that the
+    // signature can still be checked when it is passed along as evidence. Only a packet
+    // which was read from a java serialization has lost them and is marshalled again.
+    public static Proto.Signed.Builder marshallSignedPacket(Signed<com.shuffle.chan.packet.Packet<VerificationKey, Payload>> p, Version version) {
+        Bytestring packet = p.serialized();
+        if (packet == null) {
+            packet = new Bytestring(marshallPacket(p.message, version).build().toByteArray());
+        }
+
+        return Proto.Signed.newBuilder().setPacket(ByteString.copyFrom(packet.bytes)).setSignature(
                 Proto.Signature.newBuilder().setSignature(ByteString.copyFrom(p.signature.bytes)));
     }
 
-    public static Proto.Blame.Builder marshallBlame(Blame b) {
+    public static Proto.Blame.Builder marshallBlame(Blame b, Version version) {
         Proto.Reason reason;
 
         if (b.reason == Reason.InsufficientFunds) {
@@ -191,7 +265,7 @@ public abstract class Protobuf implements Messages.ShuffleMarshaller {
             Proto.Packets.Builder packets = Proto.Packets.newBuilder();
 
             for (com.shuffle.protocol.message.Packet p : b.packets) {
-                bb.setPackets(packets.addPacket(marshallSignedPacket(p)));
+                bb.setPackets(packets.addPacket(marshallSignedPacket(p, version)));
             }
 
             bb.setPackets(packets);
@@ -200,11 +274,56 @@ public abstract class Protobuf implements Messages.ShuffleMarshaller {
         return bb;
     }
 
+    // Read a linked list of atoms in the version 1 format.
     public final Message.Atom unmarshallAtom(Proto.Message atom) throws FormatException {
+        return unmarshallAtoms(atom).chain();
+    }
+
+    // Read a linked list of atoms in the version 1 format without recursion.
+    public final AtomVector unmarshallAtoms(Proto.Message atom) throws FormatException {
+        AtomVector atoms = AtomVector.EMPTY;
+
+        while (true) {
+            atoms = atoms.append(Message.Atom.make(unmarshallAtomValue(atom)));
+
+            if (!atom.hasNext()) {
+                return atoms;
+            }
+
+            atom = atom.getNext();
+        }
+    }
+
+    // Read a flat list of atoms in the version 2 format.
+    public final AtomVector unmarshallAtoms(List<Proto.Message> list) throws FormatException {
+        AtomVector atoms = AtomVector.EMPTY;
+
+        for (Proto.Message atom : list) {
+            if (atom.hasNext()) {
+                throw new FormatException("Atoms in a version 2 message cannot be linked.");
+            }
+
+            atoms = atoms.append(Message.Atom.make(unmarshallAtomValue(atom)));
+        }
+
+        return atoms;
+    }
+
+    // Read the value of a single atom, ignoring anything that comes after it.
+    private Object unmarshallAtomValue(Proto.Message atom) throws FormatException {
 
         Object o;
+        boolean hasCiphertext = !atom.getCiphertext().isEmpty();
+
         // Only one field is allowed to be set in the Atom.
-        if (!atom.getStr().equals("")) {
+        if (hasCiphertext) {
+            if (!atom.getStr().equals("") || atom.hasAddress() || atom.hasKey()
+                    || atom.hasHash() || atom.hasSignature() || atom.hasBlame()) {
+                throw new FormatException("Atom contains more than one value.");
+            }
+
+            o = new Message.Ciphertext(new Bytestring(atom.getCiphertext().toByteArray()));
+        } else if (!atom.getStr().equals("")) {
             if (atom.hasAddress() || atom.hasKey() || atom.hasSignature() || atom.hasBlame()) {
                 throw new FormatException("Atom contains more than one value.");
             }
@@ -244,11 +363,7 @@ public abstract class Protobuf implements Messages.ShuffleMarshaller {
             throw new FormatException("Atom contains no values.");
         }
 
-        if (atom.hasNext()) {
-            return Message.Atom.make(o, unmarshallAtom(atom.getNext()));
-        } else {
-            return Message.Atom.make(o);
-        }
+        return o;
     }
 
     public final Blame unmarshallBlame(Proto.Blame blame) throws FormatException {
@@ -342,22 +457,66 @@ public abstract class Protobuf implements Messages.ShuffleMarshaller {
     }
 
     public final Signed<com.shuffle.chan.packet.Packet<VerificationKey, Payload>> unmarshallSignedPacket(Proto.Signed sp) throws FormatException {
-        if (!(sp.hasSignature() && sp.hasPacket() && sp.getPacket().hasFrom())) {
+        if (!sp.hasSignature() || sp.getPacket().isEmpty()) {
             throw new FormatException("All entries in Signed must be filled:" + sp);
         }
 
-        return new Signed<>(
-                new Bytestring(sp.getPacket().toByteArray()),
-                new Bytestring(sp.getSignature().getSignature().toByteArray()),
-                unmarshallVerificationKey(sp.getPacket().getFrom().getKey()),
-                packetMarshaller);
+        // The signature is checked against the bytes we were given, not the packet
+        // written again, which might not come out the same.
+        byte[] packet = sp.getPacket().toByteArray();
+        try {
+            return unmarshallSignedPacket(Proto.Packet.parseFrom(packet), new Bytestring(packet),
+                    new Bytestring(sp.getSignature().getSignature().toByteArray()));
+        } catch (InvalidProtocolBufferException e) {
+            throw new FormatException("Could not read " + new Bytestring(packet) + " as Packet.");
+        }
+    }
+
+    // Read a signed packet, given the bytes which were signed and the packet that was
+    // read from them, so that the packet does not have to be read twice.
+    private Signed<com.shuffle.chan.packet.Packet<VerificationKey, Payload>> unmarshallSignedPacket(
+            Proto.Packet p, Bytestring packet, Bytestring signature) throws FormatException {
+
+        if (!p.hasFrom()) {
+            throw new FormatException("All entries in Signed must be filled:" + p);
+        }
+
+        return new Signed<>(unmarshallPacket(p), packet, signature,
+                unmarshallVerificationKey(p.getFrom().getKey()));
     }
 
     public final com.shuffle.chan.packet.Packet<VerificationKey, Payload> unmarshallPacket(Proto.Packet p) throws FormatException {
-        if (!(p.hasFrom() && p.hasTo() && p.hasMessage())) {
+        if (!p.hasFrom()) {
             throw new FormatException("All entries in Packet must be filled: " + p);
         }
 
+        Version version;
+        AtomVector atoms;
+        switch (p.getVersion()) {
+            case 0 :
+            case 1 : {
+                if (!p.hasMessage() || p.getAtomsCount() != 0) {
+                    throw new FormatException("Version 1 packet must contain a linked message: " + p);
+                }
+
+                version = Version.V1;
+                atoms = unmarshallAtoms(p.getMessage());
+                break;
+            }
+            case 2 : {
+                if (p.hasMessage()) {
+                    throw new FormatException("Version 2 packet cannot contain a linked message: " + p);
+                }
+
+                version = Version.V2;
+                atoms = unmarshallAtoms(p.getAtomsList());
+                break;
+            }
+            default : {
+                throw new FormatException("Unknown packet version " + p.getVersion());
+            }
+        }
+
         Phase phase;
         switch (p.getPhase()) {
             case ANNOUNCEMENT: {
@@ -392,9 +551,9 @@ public abstract class Protobuf implements Messages.ShuffleMarshaller {
         return new com.shuffle.chan.packet.Packet<>(
                 new Bytestring(p.getSession().toByteArray()),
                 unmarshallVerificationKey(p.getFrom().getKey()),
-                unmarshallVerificationKey(p.getTo().getKey()),
+                p.hasTo() ? unmarshallVerificationKey(p.getTo().getKey()) : null,
                 p.getNumber(),
-                new Payload(phase, new Message(unmarshallAtom(p.getMessage()), addressMarshaller(), null)));
+                new Payload(phase, new Message(atoms, addressMarshaller(), null), version));
 
     }
 
@@ -402,7 +561,21 @@ public abstract class Protobuf implements Messages.ShuffleMarshaller {
     public final Marshaller<Message.Atom> atomMarshaller;
     public final Marshaller<Signed<Packet<VerificationKey, Payload>>> signedMarshaller;
 
+    // The version in which we write new packets.
+    public final Version version;
+
+    // Every player reads both versions, and players running code from before version 2
+    // cannot read a ciphertext atom in either, so there is nothing to negotiate and
+    // version 2 is always written.
     public Protobuf() {
+        this(Version.V2);
+    }
+
+    // Only for testing that version 1 packets are still read correctly.
+    public Protobuf(Version version) {
+        if (version == null) throw new NullPointerException();
+
+        this.version = version;
         packetMarshaller = new PacketMarshaller();
         atomMarshaller = new AtomMarshaller();
         signedMarshaller = new SignedMarshaller();
@@ -423,11 +596,19 @@ public abstract class Protobuf implements Messages.ShuffleMarshaller {
         return signedMarshaller;
     }
 
+    // A broadcast can only be written as a single packet in version 2.
+    @Override
+    public boolean broadcastPackets() {
+        return version == Version.V2;
+    }
+
+    // Atoms are hashed in the equivocation check, so they are always written in
+    // version 1 so that every player gets the same hash.
     class AtomMarshaller implements Marshaller<Message.Atom> {
 
         @Override
         public Bytestring marshall(Message.Atom atom) {
-            return new Bytestring(marshallAtom(atom).build().toByteArray());
+            return new Bytestring(marshallAtom(atom, Version.V1).build().toByteArray());
         }
 
         @Override
@@ -448,7 +629,7 @@ public abstract class Protobuf implements Messages.ShuffleMarshaller {
 
         @Override
         public Bytestring marshall(com.shuffle.chan.packet.Packet<VerificationKey, Payload> p) throws IOException {
-            return new Bytestring(marshallPacket(p).build().toByteArray());
+            return new Bytestring(marshallPacket(p, version).build().toByteArray());
         }
 
         @Override
@@ -461,18 +642,62 @@ public abstract class Protobuf implements Messages.ShuffleMarshaller {
         }
     }
 
+    // A signed packet is written using the bytes of the packet that were signed, rather
+    // than by marshalling the packet again, and it is read in such a way as to keep the
+    // bytes that were received, so that the packet is only read once.
     private class SignedMarshaller implements Marshaller<Signed<Packet<VerificationKey, Payload>>> {
 
         @Override
         public Bytestring marshall(Signed<Packet<VerificationKey, Payload>> signed) throws IOException {
-            return new Bytestring(marshallSignedPacket(signed).build().toByteArray());
+            byte[] packet = signed.serialized(packetMarshaller).bytes;
+            Proto.Signature signature = Proto.Signature.newBuilder().setSignature(
+                    ByteString.copyFrom(signed.signature.bytes)).build();
+
+            byte[] b = new byte[CodedOutputStream.computeByteArraySize(1, packet)
+                    + CodedOutputStream.computeMessageSize(2, signature)];
+
+            CodedOutputStream out = CodedOutputStream.newInstance(b);
+            out.writeByteArray(1, packet);
+            out.writeMessage(2, signature);
+            out.checkNoSpaceLeft();
+
+            return new Bytestring(b);
         }
 
         @Override
         public Signed<Packet<VerificationKey, Payload>> unmarshall(Bytestring string) throws FormatException {
+            byte[] packet = null;
+            byte[] signature = null;
+
             try {
-                return unmarshallSignedPacket(Proto.Signed.parseFrom(string.bytes));
-            } catch (InvalidProtocolBufferException e) {
+                CodedInputStream in = CodedInputStream.newInstance(string.bytes);
+
+                while (true) {
+                    int tag = in.readTag();
+                    if (tag == 0) break;
+
+                    if (WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                        int field = WireFormat.getTagFieldNumber(tag);
+
+                        if (field == 1) {
+                            packet = in.readByteArray();
+                            continue;
+                        } else if (field == 2) {
+                            signature = Proto.Signature.parseFrom(in.readBytes()).getSignature().toByteArray();
+                            continue;
+                        }
+                    }
+
+                    if (!in.skipField(tag)) break;
+                }
+
+                if (packet == null || signature == null) {
+                    throw new FormatException("All entries in Signed must be filled: " + string);
+                }
+
+                return unmarshallSignedPacket(Proto.Packet.parseFrom(packet),
+                        new Bytestring(packet), new Bytestring(signature));
+            } catch (IOException e) {
                 throw new FormatException("Could not read " + string + " as Packet.");
             }
         }
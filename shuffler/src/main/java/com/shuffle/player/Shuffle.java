@@ -616,7 +616,7 @@ public class Shuffle {
         return new Player(
                 sk, session, anonAddress,
                 changeAddress, keys, time,
-                amount, fee, coin, crypto, channel, m, System.out);
+                amount, fee, coin, crypto, channel, m, System.out, executor);
     }
 
     private static JSONArray readJSONArray(String ar) {
@@ -679,6 +679,10 @@ public class Shuffle {
 
     public void close() {
         executor.shutdownNow();
+
+        if (crypto instanceof BitcoinCrypto) {
+            ((BitcoinCrypto) crypto).close();
+        }
     }
 
     public static void main(String[] opts) throws IOException {
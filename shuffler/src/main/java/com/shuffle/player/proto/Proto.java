@@ -326,17 +326,13 @@ public final class Proto {
       com.google.protobuf.MessageOrBuilder {
 
     /**
-     * <code>optional .Packet packet = 1;</code>
+     * <pre>
+     * The packet exactly as it was signed. It has the same encoding as a Packet.
+     * </pre>
+     *
+     * <code>optional bytes packet = 1;</code>
      */
-    boolean hasPacket();
-    /**
-     * <code>optional .Packet packet = 1;</code>
-     */
-    com.shuffle.player.proto.Proto.Packet getPacket();
-    /**
-     * <code>optional .Packet packet = 1;</code>
-     */
-    com.shuffle.player.proto.Proto.PacketOrBuilder getPacketOrBuilder();
+    com.google.protobuf.ByteString getPacket();
 
     /**
      * <code>optional .Signature signature = 2;</code>
@@ -363,6 +359,7 @@ public final class Proto {
       super(builder);
     }
     private Signed() {
+      packet_ = com.google.protobuf.ByteString.EMPTY;
     }
 
     @java.lang.Override
@@ -391,16 +388,8 @@ public final class Proto {
               break;
             }
             case 10: {
-              com.shuffle.player.proto.Proto.Packet.Builder subBuilder = null;
-              if (packet_ != null) {
-                subBuilder = packet_.toBuilder();
-              }
-              packet_ = input.readMessage(com.shuffle.player.proto.Proto.Packet.parser(), extensionRegistry);
-              if (subBuilder != null) {
-                subBuilder.mergeFrom(packet_);
-                packet_ = subBuilder.buildPartial();
-              }
 
+              packet_ = input.readBytes();
               break;
             }
             case 18: {
@@ -440,24 +429,16 @@ public final class Proto {
     }
 
     public static final int PACKET_FIELD_NUMBER = 1;
-    private com.shuffle.player.proto.Proto.Packet packet_;
-    /**
-     * <code>optional .Packet packet = 1;</code>
-     */
-    public boolean hasPacket() {
-      return packet_ != null;
-    }
-    /**
-     * <code>optional .Packet packet = 1;</code>
-     */
-    public com.shuffle.player.proto.Proto.Packet getPacket() {
-      return packet_ == null ? com.shuffle.player.proto.Proto.Packet.getDefaultInstance() : packet_;
-    }
+    private com.google.protobuf.ByteString packet_;
     /**
-     * <code>optional .Packet packet = 1;</code>
+     * <pre>
+     * The packet exactly as it was signed. It has the same encoding as a Packet.
+     * </pre>
+     *
+     * <code>optional bytes packet = 1;</code>
      */
-    public com.shuffle.player.proto.Proto.PacketOrBuilder getPacketOrBuilder() {
-      return getPacket();
+    public com.google.protobuf.ByteString getPacket() {
+      return packet_;
     }
 
     public static final int SIGNATURE_FIELD_NUMBER = 2;
@@ -493,8 +474,8 @@ public final class Proto {
 
     public void writeTo(com.google.protobuf.CodedOutputStream output)
                         throws java.io.IOException {
-      if (packet_ != null) {
-        output.writeMessage(1, getPacket());
+      if (!packet_.isEmpty()) {
+        output.writeBytes(1, packet_);
       }
       if (signature_ != null) {
         output.writeMessage(2, getSignature());
@@ -506,9 +487,9 @@ public final class Proto {
       if (size != -1) return size;
 
       size = 0;
-      if (packet_ != null) {
+      if (!packet_.isEmpty()) {
         size += com.google.protobuf.CodedOutputStream
-          .computeMessageSize(1, getPacket());
+          .computeBytesSize(1, packet_);
       }
       if (signature_ != null) {
         size += com.google.protobuf.CodedOutputStream
@@ -631,12 +612,8 @@ public final class Proto {
       }
       public Builder clear() {
         super.clear();
-        if (packetBuilder_ == null) {
-          packet_ = null;
-        } else {
-          packet_ = null;
-          packetBuilder_ = null;
-        }
+        packet_ = com.google.protobuf.ByteString.EMPTY;
+
         if (signatureBuilder_ == null) {
           signature_ = null;
         } else {
@@ -665,11 +642,7 @@ public final class Proto {
 
       public com.shuffle.player.proto.Proto.Signed buildPartial() {
         com.shuffle.player.proto.Proto.Signed result = new com.shuffle.player.proto.Proto.Signed(this);
-        if (packetBuilder_ == null) {
-          result.packet_ = packet_;
-        } else {
-          result.packet_ = packetBuilder_.build();
-        }
+        result.packet_ = packet_;
         if (signatureBuilder_ == null) {
           result.signature_ = signature_;
         } else {
@@ -690,8 +663,8 @@ public final class Proto {
 
       public Builder mergeFrom(com.shuffle.player.proto.Proto.Signed other) {
         if (other == com.shuffle.player.proto.Proto.Signed.getDefaultInstance()) return this;
-        if (other.hasPacket()) {
-          mergePacket(other.getPacket());
+        if (other.getPacket() != com.google.protobuf.ByteString.EMPTY) {
+          setPacket(other.getPacket());
         }
         if (other.hasSignature()) {
           mergeSignature(other.getSignature());
@@ -722,121 +695,45 @@ public final class Proto {
         return this;
       }
 
-      private com.shuffle.player.proto.Proto.Packet packet_ = null;
-      private com.google.protobuf.SingleFieldBuilder<
-          com.shuffle.player.proto.Proto.Packet, com.shuffle.player.proto.Proto.Packet.Builder, com.shuffle.player.proto.Proto.PacketOrBuilder> packetBuilder_;
+      private com.google.protobuf.ByteString packet_ = com.google.protobuf.ByteString.EMPTY;
       /**
-       * <code>optional .Packet packet = 1;</code>
+       * <pre>
+       * The packet exactly as it was signed. It has the same encoding as a Packet.
+       * </pre>
+       *
+       * <code>optional bytes packet = 1;</code>
        */
-      public boolean hasPacket() {
-        return packetBuilder_ != null || packet_ != null;
+      public com.google.protobuf.ByteString getPacket() {
+        return packet_;
       }
       /**
-       * <code>optional .Packet packet = 1;</code>
+       * <pre>
+       * The packet exactly as it was signed. It has the same encoding as a Packet.
+       * </pre>
+       *
+       * <code>optional bytes packet = 1;</code>
        */
-      public com.shuffle.player.proto.Proto.Packet getPacket() {
-        if (packetBuilder_ == null) {
-          return packet_ == null ? com.shuffle.player.proto.Proto.Packet.getDefaultInstance() : packet_;
-        } else {
-          return packetBuilder_.getMessage();
-        }
-      }
-      /**
-       * <code>optional .Packet packet = 1;</code>
-       */
-      public Builder setPacket(com.shuffle.player.proto.Proto.Packet value) {
-        if (packetBuilder_ == null) {
-          if (value == null) {
-            throw new NullPointerException();
-          }
-          packet_ = value;
-          onChanged();
-        } else {
-          packetBuilder_.setMessage(value);
-        }
-
-        return this;
-      }
-      /**
-       * <code>optional .Packet packet = 1;</code>
-       */
-      public Builder setPacket(
-          com.shuffle.player.proto.Proto.Packet.Builder builderForValue) {
-        if (packetBuilder_ == null) {
-          packet_ = builderForValue.build();
-          onChanged();
-        } else {
-          packetBuilder_.setMessage(builderForValue.build());
-        }
-
-        return this;
-      }
-      /**
-       * <code>optional .Packet packet = 1;</code>
-       */
-      public Builder mergePacket(com.shuffle.player.proto.Proto.Packet value) {
-        if (packetBuilder_ == null) {
-          if (packet_ != null) {
-            packet_ =
-              com.shuffle.player.proto.Proto.Packet.newBuilder(packet_).mergeFrom(value).buildPartial();
-          } else {
-            packet_ = value;
-          }
-          onChanged();
-        } else {
-          packetBuilder_.mergeFrom(value);
-        }
-
+      public Builder setPacket(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  
+        packet_ = value;
+        onChanged();
         return this;
       }
       /**
-       * <code>optional .Packet packet = 1;</code>
+       * <pre>
+       * The packet exactly as it was signed. It has the same encoding as a Packet.
+       * </pre>
+       *
+       * <code>optional bytes packet = 1;</code>
        */
       public Builder clearPacket() {
-        if (packetBuilder_ == null) {
-          packet_ = null;
-          onChanged();
-        } else {
-          packet_ = null;
-          packetBuilder_ = null;
-        }
-
-        return this;
-      }
-      /**
-       * <code>optional .Packet packet = 1;</code>
-       */
-      public com.shuffle.player.proto.Proto.Packet.Builder getPacketBuilder() {
         
+        packet_ = getDefaultInstance().getPacket();
         onChanged();
-        return getPacketFieldBuilder().getBuilder();
-      }
-      /**
-       * <code>optional .Packet packet = 1;</code>
-       */
-      public com.shuffle.player.proto.Proto.PacketOrBuilder getPacketOrBuilder() {
-        if (packetBuilder_ != null) {
-          return packetBuilder_.getMessageOrBuilder();
-        } else {
-          return packet_ == null ?
-              com.shuffle.player.proto.Proto.Packet.getDefaultInstance() : packet_;
-        }
-      }
-      /**
-       * <code>optional .Packet packet = 1;</code>
-       */
-      private com.google.protobuf.SingleFieldBuilder<
-          com.shuffle.player.proto.Proto.Packet, com.shuffle.player.proto.Proto.Packet.Builder, com.shuffle.player.proto.Proto.PacketOrBuilder> 
-          getPacketFieldBuilder() {
-        if (packetBuilder_ == null) {
-          packetBuilder_ = new com.google.protobuf.SingleFieldBuilder<
-              com.shuffle.player.proto.Proto.Packet, com.shuffle.player.proto.Proto.Packet.Builder, com.shuffle.player.proto.Proto.PacketOrBuilder>(
-                  getPacket(),
-                  getParentForChildren(),
-                  isClean());
-          packet_ = null;
-        }
-        return packetBuilder_;
+        return this;
       }
 
       private com.shuffle.player.proto.Proto.Signature signature_ = null;
@@ -1032,14 +929,26 @@ public final class Proto {
     com.shuffle.player.proto.Proto.VerificationKeyOrBuilder getFromOrBuilder();
 
     /**
+     * <pre>
+     * Not set if the packet is a broadcast.
+     * </pre>
+     *
      * <code>optional .VerificationKey to = 4;</code>
      */
     boolean hasTo();
     /**
+     * <pre>
+     * Not set if the packet is a broadcast.
+     * </pre>
+     *
      * <code>optional .VerificationKey to = 4;</code>
      */
     com.shuffle.player.proto.Proto.VerificationKey getTo();
     /**
+     * <pre>
+     * Not set if the packet is a broadcast.
+     * </pre>
+     *
      * <code>optional .VerificationKey to = 4;</code>
      */
     com.shuffle.player.proto.Proto.VerificationKeyOrBuilder getToOrBuilder();
@@ -1054,22 +963,67 @@ public final class Proto {
     com.shuffle.player.proto.Proto.Phase getPhase();
 
     /**
+     * <pre>
+     * Version 1: the message as a linked list of atoms.
+     * </pre>
+     *
      * <code>optional .Message message = 6;</code>
      */
     boolean hasMessage();
     /**
+     * <pre>
+     * Version 1: the message as a linked list of atoms.
+     * </pre>
+     *
      * <code>optional .Message message = 6;</code>
      */
     com.shuffle.player.proto.Proto.Message getMessage();
     /**
+     * <pre>
+     * Version 1: the message as a linked list of atoms.
+     * </pre>
+     *
      * <code>optional .Message message = 6;</code>
      */
     com.shuffle.player.proto.Proto.MessageOrBuilder getMessageOrBuilder();
+
+    /**
+     * <pre>
+     * Version 2: the message as a flat list of atoms, none of which has next set.
+     * </pre>
+     *
+     * <code>optional uint32 version = 7;</code>
+     */
+    int getVersion();
+
+    /**
+     * <code>repeated .Message atoms = 8;</code>
+     */
+    java.util.List<com.shuffle.player.proto.Proto.Message> 
+        getAtomsList();
+    /**
+     * <code>repeated .Message atoms = 8;</code>
+     */
+    com.shuffle.player.proto.Proto.Message getAtoms(int index);
+    /**
+     * <code>repeated .Message atoms = 8;</code>
+     */
+    int getAtomsCount();
+    /**
+     * <code>repeated .Message atoms = 8;</code>
+     */
+    java.util.List<? extends com.shuffle.player.proto.Proto.MessageOrBuilder> 
+        getAtomsOrBuilderList();
+    /**
+     * <code>repeated .Message atoms = 8;</code>
+     */
+    com.shuffle.player.proto.Proto.MessageOrBuilder getAtomsOrBuilder(
+        int index);
   }
   /**
    * Protobuf type {@code Packet}
    */
-  public static final class Packet extends
+  public  static final class Packet extends
       com.google.protobuf.GeneratedMessage implements
       // @@protoc_insertion_point(message_implements:Packet)
       PacketOrBuilder {
@@ -1081,6 +1035,8 @@ public final class Proto {
       session_ = com.google.protobuf.ByteString.EMPTY;
       number_ = 0;
       phase_ = 0;
+      version_ = 0;
+      atoms_ = java.util.Collections.emptyList();
     }
 
     @java.lang.Override
@@ -1163,6 +1119,19 @@ public final class Proto {
 
               break;
             }
+            case 56: {
+
+              version_ = input.readUInt32();
+              break;
+            }
+            case 66: {
+              if (!((mutable_bitField0_ & 0x00000080) == 0x00000080)) {
+                atoms_ = new java.util.ArrayList<com.shuffle.player.proto.Proto.Message>();
+                mutable_bitField0_ |= 0x00000080;
+              }
+              atoms_.add(input.readMessage(com.shuffle.player.proto.Proto.Message.parser(), extensionRegistry));
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -1171,6 +1140,9 @@ public final class Proto {
         throw new com.google.protobuf.InvalidProtocolBufferException(
             e).setUnfinishedMessage(this);
       } finally {
+        if (((mutable_bitField0_ & 0x00000080) == 0x00000080)) {
+          atoms_ = java.util.Collections.unmodifiableList(atoms_);
+        }
         makeExtensionsImmutable();
       }
     }
@@ -1186,6 +1158,7 @@ public final class Proto {
               com.shuffle.player.proto.Proto.Packet.class, com.shuffle.player.proto.Proto.Packet.Builder.class);
     }
 
+    private int bitField0_;
     public static final int SESSION_FIELD_NUMBER = 1;
     private com.google.protobuf.ByteString session_;
     /**
@@ -1228,18 +1201,30 @@ public final class Proto {
     public static final int TO_FIELD_NUMBER = 4;
     private com.shuffle.player.proto.Proto.VerificationKey to_;
     /**
+     * <pre>
+     * Not set if the packet is a broadcast.
+     * </pre>
+     *
      * <code>optional .VerificationKey to = 4;</code>
      */
     public boolean hasTo() {
       return to_ != null;
     }
     /**
+     * <pre>
+     * Not set if the packet is a broadcast.
+     * </pre>
+     *
      * <code>optional .VerificationKey to = 4;</code>
      */
     public com.shuffle.player.proto.Proto.VerificationKey getTo() {
       return to_ == null ? com.shuffle.player.proto.Proto.VerificationKey.getDefaultInstance() : to_;
     }
     /**
+     * <pre>
+     * Not set if the packet is a broadcast.
+     * </pre>
+     *
      * <code>optional .VerificationKey to = 4;</code>
      */
     public com.shuffle.player.proto.Proto.VerificationKeyOrBuilder getToOrBuilder() {
@@ -1265,24 +1250,84 @@ public final class Proto {
     public static final int MESSAGE_FIELD_NUMBER = 6;
     private com.shuffle.player.proto.Proto.Message message_;
     /**
+     * <pre>
+     * Version 1: the message as a linked list of atoms.
+     * </pre>
+     *
      * <code>optional .Message message = 6;</code>
      */
     public boolean hasMessage() {
       return message_ != null;
     }
     /**
+     * <pre>
+     * Version 1: the message as a linked list of atoms.
+     * </pre>
+     *
      * <code>optional .Message message = 6;</code>
      */
     public com.shuffle.player.proto.Proto.Message getMessage() {
       return message_ == null ? com.shuffle.player.proto.Proto.Message.getDefaultInstance() : message_;
     }
     /**
+     * <pre>
+     * Version 1: the message as a linked list of atoms.
+     * </pre>
+     *
      * <code>optional .Message message = 6;</code>
      */
     public com.shuffle.player.proto.Proto.MessageOrBuilder getMessageOrBuilder() {
       return getMessage();
     }
 
+    public static final int VERSION_FIELD_NUMBER = 7;
+    private int version_;
+    /**
+     * <pre>
+     * Version 2: the message as a flat list of atoms, none of which has next set.
+     * </pre>
+     *
+     * <code>optional uint32 version = 7;</code>
+     */
+    public int getVersion() {
+      return version_;
+    }
+
+    public static final int ATOMS_FIELD_NUMBER = 8;
+    private java.util.List<com.shuffle.player.proto.Proto.Message> atoms_;
+    /**
+     * <code>repeated .Message atoms = 8;</code>
+     */
+    public java.util.List<com.shuffle.player.proto.Proto.Message> getAtomsList() {
+      return atoms_;
+    }
+    /**
+     * <code>repeated .Message atoms = 8;</code>
+     */
+    public java.util.List<? extends com.shuffle.player.proto.Proto.MessageOrBuilder> 
+        getAtomsOrBuilderList() {
+      return atoms_;
+    }
+    /**
+     * <code>repeated .Message atoms = 8;</code>
+     */
+    public int getAtomsCount() {
+      return atoms_.size();
+    }
+    /**
+     * <code>repeated .Message atoms = 8;</code>
+     */
+    public com.shuffle.player.proto.Proto.Message getAtoms(int index) {
+      return atoms_.get(index);
+    }
+    /**
+     * <code>repeated .Message atoms = 8;</code>
+     */
+    public com.shuffle.player.proto.Proto.MessageOrBuilder getAtomsOrBuilder(
+        int index) {
+      return atoms_.get(index);
+    }
+
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
       byte isInitialized = memoizedIsInitialized;
@@ -1313,6 +1358,12 @@ public final class Proto {
       if (message_ != null) {
         output.writeMessage(6, getMessage());
       }
+      if (version_ != 0) {
+        output.writeUInt32(7, version_);
+      }
+      for (int i = 0; i < atoms_.size(); i++) {
+        output.writeMessage(8, atoms_.get(i));
+      }
     }
 
     public int getSerializedSize() {
@@ -1344,6 +1395,14 @@ public final class Proto {
         size += com.google.protobuf.CodedOutputStream
           .computeMessageSize(6, getMessage());
       }
+      if (version_ != 0) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeUInt32Size(7, version_);
+      }
+      for (int i = 0; i < atoms_.size(); i++) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeMessageSize(8, atoms_.get(i));
+      }
       memoizedSize = size;
       return size;
     }
@@ -1457,6 +1516,7 @@ public final class Proto {
       }
       private void maybeForceBuilderInitialization() {
         if (com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders) {
+          getAtomsFieldBuilder();
         }
       }
       public Builder clear() {
@@ -1485,6 +1545,14 @@ public final class Proto {
           message_ = null;
           messageBuilder_ = null;
         }
+        version_ = 0;
+
+        if (atomsBuilder_ == null) {
+          atoms_ = java.util.Collections.emptyList();
+          bitField0_ = (bitField0_ & ~0x00000080);
+        } else {
+          atomsBuilder_.clear();
+        }
         return this;
       }
 
@@ -1507,6 +1575,8 @@ public final class Proto {
 
       public com.shuffle.player.proto.Proto.Packet buildPartial() {
         com.shuffle.player.proto.Proto.Packet result = new com.shuffle.player.proto.Proto.Packet(this);
+        int from_bitField0_ = bitField0_;
+        int to_bitField0_ = 0;
         result.session_ = session_;
         result.number_ = number_;
         if (fromBuilder_ == null) {
@@ -1525,6 +1595,17 @@ public final class Proto {
         } else {
           result.message_ = messageBuilder_.build();
         }
+        result.version_ = version_;
+        if (atomsBuilder_ == null) {
+          if (((bitField0_ & 0x00000080) == 0x00000080)) {
+            atoms_ = java.util.Collections.unmodifiableList(atoms_);
+            bitField0_ = (bitField0_ & ~0x00000080);
+          }
+          result.atoms_ = atoms_;
+        } else {
+          result.atoms_ = atomsBuilder_.build();
+        }
+        result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
       }
@@ -1558,6 +1639,35 @@ public final class Proto {
         if (other.hasMessage()) {
           mergeMessage(other.getMessage());
         }
+        if (other.getVersion() != 0) {
+          setVersion(other.getVersion());
+        }
+        if (atomsBuilder_ == null) {
+          if (!other.atoms_.isEmpty()) {
+            if (atoms_.isEmpty()) {
+              atoms_ = other.atoms_;
+              bitField0_ = (bitField0_ & ~0x00000080);
+            } else {
+              ensureAtomsIsMutable();
+              atoms_.addAll(other.atoms_);
+            }
+            onChanged();
+          }
+        } else {
+          if (!other.atoms_.isEmpty()) {
+            if (atomsBuilder_.isEmpty()) {
+              atomsBuilder_.dispose();
+              atomsBuilder_ = null;
+              atoms_ = other.atoms_;
+              bitField0_ = (bitField0_ & ~0x00000080);
+              atomsBuilder_ = 
+                com.google.protobuf.GeneratedMessage.alwaysUseFieldBuilders ?
+                   getAtomsFieldBuilder() : null;
+            } else {
+              atomsBuilder_.addAllMessages(other.atoms_);
+            }
+          }
+        }
         onChanged();
         return this;
       }
@@ -1583,6 +1693,7 @@ public final class Proto {
         }
         return this;
       }
+      private int bitField0_;
 
       private com.google.protobuf.ByteString session_ = com.google.protobuf.ByteString.EMPTY;
       /**
@@ -1760,12 +1871,20 @@ public final class Proto {
       private com.google.protobuf.SingleFieldBuilder<
           com.shuffle.player.proto.Proto.VerificationKey, com.shuffle.player.proto.Proto.VerificationKey.Builder, com.shuffle.player.proto.Proto.VerificationKeyOrBuilder> toBuilder_;
       /**
+       * <pre>
+       * Not set if the packet is a broadcast.
+       * </pre>
+       *
        * <code>optional .VerificationKey to = 4;</code>
        */
       public boolean hasTo() {
         return toBuilder_ != null || to_ != null;
       }
       /**
+       * <pre>
+       * Not set if the packet is a broadcast.
+       * </pre>
+       *
        * <code>optional .VerificationKey to = 4;</code>
        */
       public com.shuffle.player.proto.Proto.VerificationKey getTo() {
@@ -1776,6 +1895,10 @@ public final class Proto {
         }
       }
       /**
+       * <pre>
+       * Not set if the packet is a broadcast.
+       * </pre>
+       *
        * <code>optional .VerificationKey to = 4;</code>
        */
       public Builder setTo(com.shuffle.player.proto.Proto.VerificationKey value) {
@@ -1792,6 +1915,10 @@ public final class Proto {
         return this;
       }
       /**
+       * <pre>
+       * Not set if the packet is a broadcast.
+       * </pre>
+       *
        * <code>optional .VerificationKey to = 4;</code>
        */
       public Builder setTo(
@@ -1806,6 +1933,10 @@ public final class Proto {
         return this;
       }
       /**
+       * <pre>
+       * Not set if the packet is a broadcast.
+       * </pre>
+       *
        * <code>optional .VerificationKey to = 4;</code>
        */
       public Builder mergeTo(com.shuffle.player.proto.Proto.VerificationKey value) {
@@ -1824,6 +1955,10 @@ public final class Proto {
         return this;
       }
       /**
+       * <pre>
+       * Not set if the packet is a broadcast.
+       * </pre>
+       *
        * <code>optional .VerificationKey to = 4;</code>
        */
       public Builder clearTo() {
@@ -1838,6 +1973,10 @@ public final class Proto {
         return this;
       }
       /**
+       * <pre>
+       * Not set if the packet is a broadcast.
+       * </pre>
+       *
        * <code>optional .VerificationKey to = 4;</code>
        */
       public com.shuffle.player.proto.Proto.VerificationKey.Builder getToBuilder() {
@@ -1846,6 +1985,10 @@ public final class Proto {
         return getToFieldBuilder().getBuilder();
       }
       /**
+       * <pre>
+       * Not set if the packet is a broadcast.
+       * </pre>
+       *
        * <code>optional .VerificationKey to = 4;</code>
        */
       public com.shuffle.player.proto.Proto.VerificationKeyOrBuilder getToOrBuilder() {
@@ -1857,6 +2000,10 @@ public final class Proto {
         }
       }
       /**
+       * <pre>
+       * Not set if the packet is a broadcast.
+       * </pre>
+       *
        * <code>optional .VerificationKey to = 4;</code>
        */
       private com.google.protobuf.SingleFieldBuilder<
@@ -1921,12 +2068,20 @@ public final class Proto {
       private com.google.protobuf.SingleFieldBuilder<
           com.shuffle.player.proto.Proto.Message, com.shuffle.player.proto.Proto.Message.Builder, com.shuffle.player.proto.Proto.MessageOrBuilder> messageBuilder_;
       /**
+       * <pre>
+       * Version 1: the message as a linked list of atoms.
+       * </pre>
+       *
        * <code>optional .Message message = 6;</code>
        */
       public boolean hasMessage() {
         return messageBuilder_ != null || message_ != null;
       }
       /**
+       * <pre>
+       * Version 1: the message as a linked list of atoms.
+       * </pre>
+       *
        * <code>optional .Message message = 6;</code>
        */
       public com.shuffle.player.proto.Proto.Message getMessage() {
@@ -1937,6 +2092,10 @@ public final class Proto {
         }
       }
       /**
+       * <pre>
+       * Version 1: the message as a linked list of atoms.
+       * </pre>
+       *
        * <code>optional .Message message = 6;</code>
        */
       public Builder setMessage(com.shuffle.player.proto.Proto.Message value) {
@@ -1953,6 +2112,10 @@ public final class Proto {
         return this;
       }
       /**
+       * <pre>
+       * Version 1: the message as a linked list of atoms.
+       * </pre>
+       *
        * <code>optional .Message message = 6;</code>
        */
       public Builder setMessage(
@@ -1967,6 +2130,10 @@ public final class Proto {
         return this;
       }
       /**
+       * <pre>
+       * Version 1: the message as a linked list of atoms.
+       * </pre>
+       *
        * <code>optional .Message message = 6;</code>
        */
       public Builder mergeMessage(com.shuffle.player.proto.Proto.Message value) {
@@ -1985,6 +2152,10 @@ public final class Proto {
         return this;
       }
       /**
+       * <pre>
+       * Version 1: the message as a linked list of atoms.
+       * </pre>
+       *
        * <code>optional .Message message = 6;</code>
        */
       public Builder clearMessage() {
@@ -1999,6 +2170,10 @@ public final class Proto {
         return this;
       }
       /**
+       * <pre>
+       * Version 1: the message as a linked list of atoms.
+       * </pre>
+       *
        * <code>optional .Message message = 6;</code>
        */
       public com.shuffle.player.proto.Proto.Message.Builder getMessageBuilder() {
@@ -2007,6 +2182,10 @@ public final class Proto {
         return getMessageFieldBuilder().getBuilder();
       }
       /**
+       * <pre>
+       * Version 1: the message as a linked list of atoms.
+       * </pre>
+       *
        * <code>optional .Message message = 6;</code>
        */
       public com.shuffle.player.proto.Proto.MessageOrBuilder getMessageOrBuilder() {
@@ -2018,6 +2197,10 @@ public final class Proto {
         }
       }
       /**
+       * <pre>
+       * Version 1: the message as a linked list of atoms.
+       * </pre>
+       *
        * <code>optional .Message message = 6;</code>
        */
       private com.google.protobuf.SingleFieldBuilder<
@@ -2033,6 +2216,284 @@ public final class Proto {
         }
         return messageBuilder_;
       }
+
+      private int version_ ;
+      /**
+       * <pre>
+       * Version 2: the message as a flat list of atoms, none of which has next set.
+       * </pre>
+       *
+       * <code>optional uint32 version = 7;</code>
+       */
+      public int getVersion() {
+        return version_;
+      }
+      /**
+       * <pre>
+       * Version 2: the message as a flat list of atoms, none of which has next set.
+       * </pre>
+       *
+       * <code>optional uint32 version = 7;</code>
+       */
+      public Builder setVersion(int value) {
+        
+        version_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <pre>
+       * Version 2: the message as a flat list of atoms, none of which has next set.
+       * </pre>
+       *
+       * <code>optional uint32 version = 7;</code>
+       */
+      public Builder clearVersion() {
+        
+        version_ = 0;
+        onChanged();
+        return this;
+      }
+
+      private java.util.List<com.shuffle.player.proto.Proto.Message> atoms_ =
+        java.util.Collections.emptyList();
+      private void ensureAtomsIsMutable() {
+        if (!((bitField0_ & 0x00000080) == 0x00000080)) {
+          atoms_ = new java.util.ArrayList<com.shuffle.player.proto.Proto.Message>(atoms_);
+          bitField0_ |= 0x00000080;
+         }
+      }
+
+      private com.google.protobuf.RepeatedFieldBuilder<
+          com.shuffle.player.proto.Proto.Message, com.shuffle.player.proto.Proto.Message.Builder, com.shuffle.player.proto.Proto.MessageOrBuilder> atomsBuilder_;
+
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public java.util.List<com.shuffle.player.proto.Proto.Message> getAtomsList() {
+        if (atomsBuilder_ == null) {
+          return java.util.Collections.unmodifiableList(atoms_);
+        } else {
+          return atomsBuilder_.getMessageList();
+        }
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public int getAtomsCount() {
+        if (atomsBuilder_ == null) {
+          return atoms_.size();
+        } else {
+          return atomsBuilder_.getCount();
+        }
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public com.shuffle.player.proto.Proto.Message getAtoms(int index) {
+        if (atomsBuilder_ == null) {
+          return atoms_.get(index);
+        } else {
+          return atomsBuilder_.getMessage(index);
+        }
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public Builder setAtoms(
+          int index, com.shuffle.player.proto.Proto.Message value) {
+        if (atomsBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureAtomsIsMutable();
+          atoms_.set(index, value);
+          onChanged();
+        } else {
+          atomsBuilder_.setMessage(index, value);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public Builder setAtoms(
+          int index, com.shuffle.player.proto.Proto.Message.Builder builderForValue) {
+        if (atomsBuilder_ == null) {
+          ensureAtomsIsMutable();
+          atoms_.set(index, builderForValue.build());
+          onChanged();
+        } else {
+          atomsBuilder_.setMessage(index, builderForValue.build());
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public Builder addAtoms(com.shuffle.player.proto.Proto.Message value) {
+        if (atomsBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureAtomsIsMutable();
+          atoms_.add(value);
+          onChanged();
+        } else {
+          atomsBuilder_.addMessage(value);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public Builder addAtoms(
+          int index, com.shuffle.player.proto.Proto.Message value) {
+        if (atomsBuilder_ == null) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          ensureAtomsIsMutable();
+          atoms_.add(index, value);
+          onChanged();
+        } else {
+          atomsBuilder_.addMessage(index, value);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public Builder addAtoms(
+          com.shuffle.player.proto.Proto.Message.Builder builderForValue) {
+        if (atomsBuilder_ == null) {
+          ensureAtomsIsMutable();
+          atoms_.add(builderForValue.build());
+          onChanged();
+        } else {
+          atomsBuilder_.addMessage(builderForValue.build());
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public Builder addAtoms(
+          int index, com.shuffle.player.proto.Proto.Message.Builder builderForValue) {
+        if (atomsBuilder_ == null) {
+          ensureAtomsIsMutable();
+          atoms_.add(index, builderForValue.build());
+          onChanged();
+        } else {
+          atomsBuilder_.addMessage(index, builderForValue.build());
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public Builder addAllAtoms(
+          java.lang.Iterable<? extends com.shuffle.player.proto.Proto.Message> values) {
+        if (atomsBuilder_ == null) {
+          ensureAtomsIsMutable();
+          com.google.protobuf.AbstractMessageLite.Builder.addAll(
+              values, atoms_);
+          onChanged();
+        } else {
+          atomsBuilder_.addAllMessages(values);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public Builder clearAtoms() {
+        if (atomsBuilder_ == null) {
+          atoms_ = java.util.Collections.emptyList();
+          bitField0_ = (bitField0_ & ~0x00000080);
+          onChanged();
+        } else {
+          atomsBuilder_.clear();
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public Builder removeAtoms(int index) {
+        if (atomsBuilder_ == null) {
+          ensureAtomsIsMutable();
+          atoms_.remove(index);
+          onChanged();
+        } else {
+          atomsBuilder_.remove(index);
+        }
+        return this;
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public com.shuffle.player.proto.Proto.Message.Builder getAtomsBuilder(
+          int index) {
+        return getAtomsFieldBuilder().getBuilder(index);
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public com.shuffle.player.proto.Proto.MessageOrBuilder getAtomsOrBuilder(
+          int index) {
+        if (atomsBuilder_ == null) {
+          return atoms_.get(index);  } else {
+          return atomsBuilder_.getMessageOrBuilder(index);
+        }
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public java.util.List<? extends com.shuffle.player.proto.Proto.MessageOrBuilder> 
+           getAtomsOrBuilderList() {
+        if (atomsBuilder_ != null) {
+          return atomsBuilder_.getMessageOrBuilderList();
+        } else {
+          return java.util.Collections.unmodifiableList(atoms_);
+        }
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public com.shuffle.player.proto.Proto.Message.Builder addAtomsBuilder() {
+        return getAtomsFieldBuilder().addBuilder(
+            com.shuffle.player.proto.Proto.Message.getDefaultInstance());
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public com.shuffle.player.proto.Proto.Message.Builder addAtomsBuilder(
+          int index) {
+        return getAtomsFieldBuilder().addBuilder(
+            index, com.shuffle.player.proto.Proto.Message.getDefaultInstance());
+      }
+      /**
+       * <code>repeated .Message atoms = 8;</code>
+       */
+      public java.util.List<com.shuffle.player.proto.Proto.Message.Builder> 
+           getAtomsBuilderList() {
+        return getAtomsFieldBuilder().getBuilderList();
+      }
+      private com.google.protobuf.RepeatedFieldBuilder<
+          com.shuffle.player.proto.Proto.Message, com.shuffle.player.proto.Proto.Message.Builder, com.shuffle.player.proto.Proto.MessageOrBuilder> 
+          getAtomsFieldBuilder() {
+        if (atomsBuilder_ == null) {
+          atomsBuilder_ = new com.google.protobuf.RepeatedFieldBuilder<
+              com.shuffle.player.proto.Proto.Message, com.shuffle.player.proto.Proto.Message.Builder, com.shuffle.player.proto.Proto.MessageOrBuilder>(
+                  atoms_,
+                  ((bitField0_ & 0x00000080) == 0x00000080),
+                  getParentForChildren(),
+                  isClean());
+          atoms_ = null;
+        }
+        return atomsBuilder_;
+      }
       public final Builder setUnknownFields(
           final com.google.protobuf.UnknownFieldSet unknownFields) {
         return this;
@@ -2173,6 +2634,11 @@ public final class Proto {
      * <code>optional .Message next = 7;</code>
      */
     com.shuffle.player.proto.Proto.MessageOrBuilder getNextOrBuilder();
+
+    /**
+     * <code>optional bytes ciphertext = 8;</code>
+     */
+    com.google.protobuf.ByteString getCiphertext();
   }
   /**
    * Protobuf type {@code Message}
@@ -2187,6 +2653,7 @@ public final class Proto {
     }
     private Message() {
       str_ = "";
+      ciphertext_ = com.google.protobuf.ByteString.EMPTY;
     }
 
     @java.lang.Override
@@ -2298,6 +2765,11 @@ public final class Proto {
 
               break;
             }
+            case 66: {
+
+              ciphertext_ = input.readBytes();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -2481,6 +2953,15 @@ public final class Proto {
       return getNext();
     }
 
+    public static final int CIPHERTEXT_FIELD_NUMBER = 8;
+    private com.google.protobuf.ByteString ciphertext_;
+    /**
+     * <code>optional bytes ciphertext = 8;</code>
+     */
+    public com.google.protobuf.ByteString getCiphertext() {
+      return ciphertext_;
+    }
+
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
       byte isInitialized = memoizedIsInitialized;
@@ -2514,6 +2995,9 @@ public final class Proto {
       if (next_ != null) {
         output.writeMessage(7, getNext());
       }
+      if (!ciphertext_.isEmpty()) {
+        output.writeBytes(8, ciphertext_);
+      }
     }
 
     public int getSerializedSize() {
@@ -2548,6 +3032,10 @@ public final class Proto {
         size += com.google.protobuf.CodedOutputStream
           .computeMessageSize(7, getNext());
       }
+      if (!ciphertext_.isEmpty()) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(8, ciphertext_);
+      }
       memoizedSize = size;
       return size;
     }
@@ -2703,6 +3191,8 @@ public final class Proto {
           next_ = null;
           nextBuilder_ = null;
         }
+        ciphertext_ = com.google.protobuf.ByteString.EMPTY;
+
         return this;
       }
 
@@ -2756,6 +3246,7 @@ public final class Proto {
         } else {
           result.next_ = nextBuilder_.build();
         }
+        result.ciphertext_ = ciphertext_;
         onBuilt();
         return result;
       }
@@ -2793,6 +3284,9 @@ public final class Proto {
         if (other.hasNext()) {
           mergeNext(other.getNext());
         }
+        if (other.getCiphertext() != com.google.protobuf.ByteString.EMPTY) {
+          setCiphertext(other.getCiphertext());
+        }
         onChanged();
         return this;
       }
@@ -3589,6 +4083,35 @@ public final class Proto {
         }
         return nextBuilder_;
       }
+
+      private com.google.protobuf.ByteString ciphertext_ = com.google.protobuf.ByteString.EMPTY;
+      /**
+       * <code>optional bytes ciphertext = 8;</code>
+       */
+      public com.google.protobuf.ByteString getCiphertext() {
+        return ciphertext_;
+      }
+      /**
+       * <code>optional bytes ciphertext = 8;</code>
+       */
+      public Builder setCiphertext(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  
+        ciphertext_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional bytes ciphertext = 8;</code>
+       */
+      public Builder clearCiphertext() {
+        
+        ciphertext_ = getDefaultInstance().getCiphertext();
+        onChanged();
+        return this;
+      }
       public final Builder setUnknownFields(
           final com.google.protobuf.UnknownFieldSet unknownFields) {
         return this;
@@ -9132,39 +9655,40 @@ public final class Proto {
   static {
     java.lang.String[] descriptorData = {
       "\n4src/main/java/com/shuffle/player/proto" +
-      "/message.proto\"@\n\006Signed\022\027\n\006packet\030\001 \001(\013" +
-      "2\007.Packet\022\035\n\tsignature\030\002 \001(\0132\n.Signature" +
-      "\"\231\001\n\006Packet\022\017\n\007session\030\001 \001(\014\022\016\n\006number\030\002" +
-      " \001(\r\022\036\n\004from\030\003 \001(\0132\020.VerificationKey\022\034\n\002" +
-      "to\030\004 \001(\0132\020.VerificationKey\022\025\n\005phase\030\005 \001(" +
-      "\0162\006.Phase\022\031\n\007message\030\006 \001(\0132\010.Message\"\261\001\n" +
-      "\007Message\022\031\n\007address\030\001 \001(\0132\010.Address\022\033\n\003k" +
-      "ey\030\002 \001(\0132\016.EncryptionKey\022\023\n\004hash\030\003 \001(\0132\005" +
-      ".Hash\022\035\n\tsignature\030\004 \001(\0132\n.Signature\022\013\n\003",
-      "str\030\005 \001(\t\022\025\n\005blame\030\006 \001(\0132\006.Blame\022\026\n\004next" +
-      "\030\007 \001(\0132\010.Message\"\032\n\007Address\022\017\n\007address\030\001" +
-      " \001(\t\"\036\n\017VerificationKey\022\013\n\003key\030\001 \001(\t\"\034\n\r" +
-      "EncryptionKey\022\013\n\003key\030\001 \001(\t\",\n\rDecryption" +
-      "Key\022\013\n\003key\030\001 \001(\t\022\016\n\006public\030\002 \001(\t\"\024\n\004Hash" +
-      "\022\014\n\004hash\030\001 \001(\014\"\036\n\tSignature\022\021\n\tsignature" +
-      "\030\001 \001(\014\"\"\n\013Transaction\022\023\n\013transaction\030\001 \001" +
-      "(\014\"\271\001\n\005Blame\022\027\n\006reason\030\001 \001(\0162\007.Reason\022!\n" +
-      "\007accused\030\002 \001(\0132\020.VerificationKey\022\033\n\003key\030" +
-      "\003 \001(\0132\016.DecryptionKey\022!\n\013transaction\030\004 \001",
-      "(\0132\014.Transaction\022\031\n\007invalid\030\005 \001(\0132\010.Inva" +
-      "lid\022\031\n\007packets\030\006 \001(\0132\010.Packets\"\032\n\007Invali" +
-      "d\022\017\n\007invalid\030\001 \001(\014\"\"\n\007Packets\022\027\n\006packet\030" +
-      "\001 \003(\0132\007.Signed*\220\001\n\005Phase\022\010\n\004NONE\020\000\022\020\n\014AN" +
-      "NOUNCEMENT\020\001\022\013\n\007SHUFFLE\020\002\022\r\n\tBROADCAST\020\003" +
-      "\022\026\n\022EQUIVOCATION_CHECK\020\004\022\013\n\007SIGNING\020\005\022\037\n" +
-      "\033VERIFICATION_AND_SUBMISSION\020\006\022\t\n\005BLAME\020" +
-      "\007*\306\001\n\006Reason\022\025\n\021INSUFFICIENTFUNDS\020\000\022\017\n\013D" +
-      "OUBLESPEND\020\001\022\027\n\023EQUIVOCATIONFAILURE\020\002\022\022\n" +
-      "\016SHUFFLEFAILURE\020\003\022!\n\035SHUFFLEANDEQUIVOCAT",
-      "IONFAILURE\020\004\022\024\n\020INVALIDSIGNATURE\020\005\022\021\n\rMI" +
-      "SSINGOUTPUT\020\006\022\010\n\004LIAR\020\007\022\021\n\rINVALIDFORMAT" +
-      "\020\010B!\n\030com.shuffle.player.protoB\005Protob\006p" +
-      "roto3"
+      "/message.proto\"7\n\006Signed\022\016\n\006packet\030\001 \001(\014" +
+      "\022\035\n\tsignature\030\002 \001(\0132\n.Signature\"\303\001\n\006Pack" +
+      "et\022\017\n\007session\030\001 \001(\014\022\016\n\006number\030\002 \001(\r\022\036\n\004f" +
+      "rom\030\003 \001(\0132\020.VerificationKey\022\034\n\002to\030\004 \001(\0132" +
+      "\020.VerificationKey\022\025\n\005phase\030\005 \001(\0162\006.Phase" +
+      "\022\031\n\007message\030\006 \001(\0132\010.Message\022\017\n\007version\030\007" +
+      " \001(\r\022\027\n\005atoms\030\010 \003(\0132\010.Message\"\305\001\n\007Messag" +
+      "e\022\031\n\007address\030\001 \001(\0132\010.Address\022\033\n\003key\030\002 \001(" +
+      "\0132\016.EncryptionKey\022\023\n\004hash\030\003 \001(\0132\005.Hash\022\035",
+      "\n\tsignature\030\004 \001(\0132\n.Signature\022\013\n\003str\030\005 \001" +
+      "(\t\022\025\n\005blame\030\006 \001(\0132\006.Blame\022\026\n\004next\030\007 \001(\0132" +
+      "\010.Message\022\022\n\nciphertext\030\010 \001(\014\"\032\n\007Address" +
+      "\022\017\n\007address\030\001 \001(\t\"\036\n\017VerificationKey\022\013\n\003" +
+      "key\030\001 \001(\t\"\034\n\rEncryptionKey\022\013\n\003key\030\001 \001(\t\"" +
+      ",\n\rDecryptionKey\022\013\n\003key\030\001 \001(\t\022\016\n\006public\030" +
+      "\002 \001(\t\"\024\n\004Hash\022\014\n\004hash\030\001 \001(\014\"\036\n\tSignature" +
+      "\022\021\n\tsignature\030\001 \001(\014\"\"\n\013Transaction\022\023\n\013tr" +
+      "ansaction\030\001 \001(\014\"\271\001\n\005Blame\022\027\n\006reason\030\001 \001(" +
+      "\0162\007.Reason\022!\n\007accused\030\002 \001(\0132\020.Verificati",
+      "onKey\022\033\n\003key\030\003 \001(\0132\016.DecryptionKey\022!\n\013tr" +
+      "ansaction\030\004 \001(\0132\014.Transaction\022\031\n\007invalid" +
+      "\030\005 \001(\0132\010.Invalid\022\031\n\007packets\030\006 \001(\0132\010.Pack" +
+      "ets\"\032\n\007Invalid\022\017\n\007invalid\030\001 \001(\014\"\"\n\007Packe" +
+      "ts\022\027\n\006packet\030\001 \003(\0132\007.Signed*\220\001\n\005Phase\022\010\n" +
+      "\004NONE\020\000\022\020\n\014ANNOUNCEMENT\020\001\022\013\n\007SHUFFLE\020\002\022\r" +
+      "\n\tBROADCAST\020\003\022\026\n\022EQUIVOCATION_CHECK\020\004\022\013\n" +
+      "\007SIGNING\020\005\022\037\n\033VERIFICATION_AND_SUBMISSIO" +
+      "N\020\006\022\t\n\005BLAME\020\007*\306\001\n\006Reason\022\025\n\021INSUFFICIEN" +
+      "TFUNDS\020\000\022\017\n\013DOUBLESPEND\020\001\022\027\n\023EQUIVOCATIO",
+      "NFAILURE\020\002\022\022\n\016SHUFFLEFAILURE\020\003\022!\n\035SHUFFL" +
+      "EANDEQUIVOCATIONFAILURE\020\004\022\024\n\020INVALIDSIGN" +
+      "ATURE\020\005\022\021\n\rMISSINGOUTPUT\020\006\022\010\n\004LIAR\020\007\022\021\n\r" +
+      "INVALIDFORMAT\020\010B!\n\030com.shuffle.player.pr" +
+      "otoB\005Protob\006proto3"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
         new com.google.protobuf.Descriptors.FileDescriptor.    InternalDescriptorAssigner() {
@@ -9189,13 +9713,13 @@ public final class Proto {
     internal_static_Packet_fieldAccessorTable = new
       com.google.protobuf.GeneratedMessage.FieldAccessorTable(
         internal_static_Packet_descriptor,
-        new java.lang.String[] { "Session", "Number", "From", "To", "Phase", "Message", });
+        new java.lang.String[] { "Session", "Number", "From", "To", "Phase", "Message", "Version", "Atoms", });
     internal_static_Message_descriptor =
       getDescriptor().getMessageTypes().get(2);
     internal_static_Message_fieldAccessorTable = new
       com.google.protobuf.GeneratedMessage.FieldAccessorTable(
         internal_static_Message_descriptor,
-        new java.lang.String[] { "Address", "Key", "Hash", "Signature", "Str", "Blame", "Next", });
+        new java.lang.String[] { "Address", "Key", "Hash", "Signature", "Str", "Blame", "Next", "Ciphertext", });
     internal_static_Address_descriptor =
       getDescriptor().getMessageTypes().get(3);
     internal_static_Address_fieldAccessorTable = new
@@ -34,9 +34,12 @@ import org.apache.logging.log4j.LogManager;
 import org.bitcoinj.core.AddressFormatException;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -45,7 +48,10 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 /**
  *
@@ -67,6 +73,10 @@ public class CoinShuffle {
 
     final MessageFactory messages;
 
+    // Used to decrypt the shuffle message in parallel. If null, it is decrypted
+    // one entry at a time.
+    final Executor executor;
+
     // A single round of the protocol. It is possible that the players may go through
     // several failed rounds until they have eliminated malicious players.
     class Round {
@@ -80,7 +90,7 @@ public class CoinShuffle {
 
         public final int me; // Which player am I?
 
-        public final Map<Integer, VerificationKey> players; // The players' public keys.
+        public final Players players; // The players' public keys.
 
         public final int N; // The number of players.
 
@@ -102,6 +112,9 @@ public class CoinShuffle {
 
         public final Mailbox mailbox;
 
+        // Our new address, encrypted with the keys of the players after us.
+        private FutureTask<Bytestring> onion = null;
+
         Transaction protocolDefinition(
         ) throws TimeoutException, Matrix, InterruptedException,
                 FormatException, IOException, CoinNetworkException,
@@ -153,10 +166,12 @@ public class CoinShuffle {
             // given by the previous player. They insert their own address in a random location.
             // Everyone has the incentive to insert their own address at a random location, which
             // is sufficient to ensure that the result appears random to everybody.
-            phase.set(Phase.Shuffling);
-            System.out.println("Player " + me + " reaches phase 2: " + encryptionKeys);
-
             try {
+                precomputeOnion();
+
+                phase.set(Phase.Shuffling);
+                System.out.println("Player " + me + " reaches phase 2: " + encryptionKeys);
+
                 // Player one begins the cycle and encrypts its new address with everyone's
                 // public encryption key, in order.
                 // Each subsequent player reorders the cycle and removes one layer of encryption.
@@ -206,6 +221,12 @@ public class CoinShuffle {
                         throw fillBlameMatrix();
                     }
                 }
+            } finally {
+                // The onion is not needed once we have shuffled. If we never got that far
+                // because of blame, a timeout, or an exception, don't leave it running.
+                if (onion != null) {
+                    onion.cancel(true);
+                }
             }
 
             // Everyone else receives the broadcast and checks that their message was included.
@@ -239,7 +260,7 @@ public class CoinShuffle {
             }
 
             // Generate the join transaction.
-            Transaction t = coin.shuffleTransaction(
+            final Transaction t = coin.shuffleTransaction(
                     amount, fee, inputs, newAddresses, changeAddresses);
 
             checkDoubleSpending(t);
@@ -280,13 +301,46 @@ public class CoinShuffle {
                 }
             }
 
-            // Verify the signatures.
-            Map<VerificationKey, Bytestring> invalid = new HashMap<>();
-            for (Map.Entry<VerificationKey, Message> sig : signatureMessages.entrySet()) {
-                VerificationKey key = sig.getKey();
-                Bytestring signature = sig.getValue().readSignature();
+            // Verify the signatures. They are all checked at once, and then the valid ones
+            // are added to the transaction one at a time in the order of the players.
+            Map<VerificationKey, FutureTask<Boolean>> checks = new LinkedHashMap<>();
+            for (int i = 1; i <= N; i++) {
+                VerificationKey key = players.get(i);
+                Message message = signatureMessages.get(key);
+                if (message == null) continue;
+
+                final Bytestring signature = message.readSignature();
                 signatures.put(key, signature);
 
+                FutureTask<Boolean> check = new FutureTask<>(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return t.checkInputScript(signature);
+                    }
+                });
+
+                checks.put(key, check);
+                if (executor != null) executor.execute(check);
+            }
+
+            Map<VerificationKey, Bytestring> invalid = new HashMap<>();
+            try {
+                for (Map.Entry<VerificationKey, FutureTask<Boolean>> check : checks.entrySet()) {
+                    if (!await(check.getValue())) {
+                        VerificationKey key = check.getKey();
+                        invalid.put(key, signatures.get(key));
+                    }
+                }
+            } finally {
+                for (FutureTask<Boolean> check : checks.values()) {
+                    check.cancel(true);
+                }
+            }
+
+            for (VerificationKey key : checks.keySet()) {
+                if (invalid.containsKey(key)) continue;
+
+                Bytestring signature = signatures.get(key);
                 if (!t.addInputScript(signature)) {
                     invalid.put(key, signature);
                 }
@@ -346,18 +400,55 @@ public class CoinShuffle {
         }
 
         // The shuffle phase.
-        Message shufflePhase(Message shuffled, Address addrNew) throws FormatException {
+        Message shufflePhase(Message shuffled, Address addrNew)
+                throws FormatException, InterruptedException {
+
+            // The last player has removed every layer of encryption, which leaves the new
+            // addresses. The last player's own address is added without encrypting it.
+            if (me == N) {
+                return shuffle(shuffled.attach(addrNew.toString()));
+            }
 
-            // Add our own address to the mix. Note that if me == N, ie, the last player, then no
-            // encryption is done. That is because we have reached the last layer of encryption.
-            String encrypted = addrNew.toString();
+            // Add our own address to the mix.
+            Bytestring encrypted;
+            if (onion != null && addrNew.equals(this.addrNew)) {
+                encrypted = await(onion);
+            } else {
+                encrypted = encryptNewAddress(addrNew);
+            }
+
+            // Insert new entry and reorder the keys.
+            return shuffleCiphertexts(shuffled.attachCiphertext(encrypted));
+        }
+
+        // Note that if me == N, ie, the last player, then no encryption is done.
+        // That is because we have reached the last layer of encryption.
+        Bytestring encryptNewAddress(Address addrNew) {
+            Bytestring encrypted = new Bytestring(addrNew.toString().getBytes(StandardCharsets.UTF_8));
             for (int i = N; i > me; i--) {
                 // Successively encrypt with the keys of the players who haven't had their turn yet.
                 encrypted = encryptionKeys.get(players.get(i)).encrypt(encrypted);
             }
 
-            // Insert new entry and reorder the keys.
-            return shuffle(shuffled.attach(encrypted));
+            return encrypted;
+        }
+
+        // Everything needed to encrypt our new address is known as soon as the announcements
+        // have been read, so we start on it then rather than waiting for our turn to shuffle.
+        void precomputeOnion() {
+            // The last player doesn't encrypt anything.
+            if (me == N) return;
+
+            onion = new FutureTask<>(new Callable<Bytestring>() {
+                @Override
+                public Bytestring call() {
+                    return encryptNewAddress(addrNew);
+                }
+            });
+
+            if (executor != null) {
+                executor.execute(onion);
+            }
         }
 
         // In the broadcast phase, we have to either receive all the
@@ -381,26 +472,23 @@ public class CoinShuffle {
             return newAddresses;
         }
 
-        // In the shuffle phase, we have to receive a set of strings from the previous player and
-        // decrypt them all.
-        final Message decryptAll(Message message, DecryptionKey key, int expected)
+        // In the shuffle phase, we have to receive a set of ciphertexts from the previous player
+        // and decrypt them all. If we are the last player, what's left are the new addresses.
+        final Message decryptAll(Message message, final DecryptionKey key, int expected)
                 throws IOException, InterruptedException, FormatException {
 
-            Message decrypted = messages.make();
-
-            int count = 0;
-            Set<String> addrs = new HashSet<>(); // Used to check that all addresses are different.
+            List<Bytestring> encrypted = new LinkedList<>();
+            Set<Bytestring> addrs = new HashSet<>(); // Used to check that all addresses are different.
 
             while (!message.isEmpty()) {
-                String encrypted = message.readString();
+                Bytestring ciphertext = message.readCiphertext();
                 message = message.rest();
 
-                addrs.add(encrypted);
-                count++;
-                decrypted = decrypted.attach(key.decrypt(encrypted));
+                addrs.add(ciphertext);
+                encrypted.add(ciphertext);
             }
 
-            if (addrs.size() != count || count != expected) {
+            if (addrs.size() != encrypted.size() || encrypted.size() != expected) {
                 phase.set(Phase.Blame);
                 mailbox.broadcast(messages.make().attach(Blame.ShuffleFailure(players.get(N))),
                         phase.get());
@@ -408,9 +496,52 @@ public class CoinShuffle {
                 return null;
             }
 
+            Message decrypted = messages.make();
+
+            if (executor == null) {
+                for (Bytestring ciphertext : encrypted) {
+                    decrypted = attachDecrypted(decrypted, key.decrypt(ciphertext));
+                }
+
+                return decrypted;
+            }
+
+            // Every entry is decrypted independently, so they can all be done at once.
+            List<FutureTask<Bytestring>> tasks = new LinkedList<>();
+            for (final Bytestring ciphertext : encrypted) {
+                FutureTask<Bytestring> task = new FutureTask<>(new Callable<Bytestring>() {
+                    @Override
+                    public Bytestring call() {
+                        return key.decrypt(ciphertext);
+                    }
+                });
+
+                tasks.add(task);
+                executor.execute(task);
+            }
+
+            // The results are collected in the order in which the entries came in.
+            try {
+                for (FutureTask<Bytestring> task : tasks) {
+                    decrypted = attachDecrypted(decrypted, await(task));
+                }
+            } finally {
+                for (FutureTask<Bytestring> task : tasks) {
+                    task.cancel(true);
+                }
+            }
+
             return decrypted;
         }
 
+        private Message attachDecrypted(Message message, Bytestring decrypted) {
+            if (me == N) {
+                return message.attach(new String(decrypted.bytes, StandardCharsets.UTF_8));
+            }
+
+            return message.attachCiphertext(decrypted);
+        }
+
         // Some misbehavior that has occurred during the shuffle phase and we want to
         // find out what happened!
         private void blameShuffleMisbehavior()
@@ -477,6 +608,7 @@ public class CoinShuffle {
             List<VerificationKey> offenders = new LinkedList<>();
 
             // Check that each participant has the required amounts.
+            coin.prefetch(addresses());
             for (VerificationKey player : players.values()) {
                 if (!coin.sufficientFunds(player.address(), amount + fee)) {
                     // Enter the blame phase.
@@ -524,6 +656,7 @@ public class CoinShuffle {
 
             // Check for double spending.
             Message doubleSpend = messages.make();
+            coin.prefetch(addresses());
             for (VerificationKey key : players.values()) {
                 Transaction o = coin.getConflictingTransaction(t, key.address(), amount);
                 if (o != null) {
@@ -542,7 +675,7 @@ public class CoinShuffle {
         // When we know we'll receive a bunch of blame messages, we have to go through them all
         // to figure out what's going on.
         final Matrix fillBlameMatrix() throws IOException, InterruptedException, FormatException {
-            Matrix matrix = new Matrix();
+            Matrix matrix = new Matrix(players.values());
 
             Map<VerificationKey, Queue<Packet>> blameMessages = mailbox.receiveAllBlame();
 
@@ -831,6 +964,15 @@ public class CoinShuffle {
             return playerSet(1, N);
         }
 
+        // The addresses of all players in this round.
+        final List<Address> addresses() {
+            List<Address> addresses = new ArrayList<>();
+            for (VerificationKey player : players.values()) {
+                addresses.add(player.address());
+            }
+            return addresses;
+        }
+
         // Generate the message sent during the equivocation check phase.
         // This message hashes some information that the player has received.
         // It is used to check that other players have received the same information.
@@ -880,25 +1022,18 @@ public class CoinShuffle {
             this.amount = amount;
             this.fee = fee;
             this.sk = sk;
-            this.players = players;
+            this.players = players instanceof Players ? (Players) players : new Players(players);
             this.change = change;
             vk = sk.VerificationKey();
             this.mailbox = mailbox;
             this.addrNew = addrNew;
 
-            int m = -1;
             N = players.size();
 
             // Determine what my index number is.
-            for (int i = 1; i <= N; i++) {
-                if (players.get(i).equals(vk)) {
-                    m = i;
-                    break;
-                }
-            }
-            me = m;
+            me = this.players.number(vk);
 
-            if (me < 0) {
+            if (me < 1) {
                 throw new InvalidParticipantSetException(vk, players);
             }
         }
@@ -907,31 +1042,54 @@ public class CoinShuffle {
     // Algorithm to randomly shuffle the elements of a message.
     final Message shuffle(Message message) throws FormatException {
 
+        // Read all elements of the packet into an array.
+        List<String> read = new ArrayList<>();
+        while (!message.isEmpty()) {
+            read.add(message.readString());
+            message = message.rest();
+        }
+
         Message shuffled = messages.make();
+        for (String selected : shuffle(read.toArray(new String[read.size()]))) {
+            shuffled = shuffled.attach(selected);
+        }
 
-        // Read all elements of the packet and insert them in a Queue.
-        Queue<String> old = new LinkedList<>();
-        int N = 0;
+        return shuffled;
+    }
+
+    // Shuffle a message consisting of ciphertexts.
+    final Message shuffleCiphertexts(Message message) throws FormatException {
+
+        List<Bytestring> read = new ArrayList<>();
         while (!message.isEmpty()) {
-            old.add(message.readString());
+            read.add(message.readCiphertext());
             message = message.rest();
-            N++;
         }
 
-        // Then successively and randomly select which one will be inserted until none remain.
-        for (int i = N; i > 0; i--) {
-            // Get a random number between 0 and N - 1 inclusive.
-            int n = crypto.getRandom(i - 1);
+        Message shuffled = messages.make();
+        for (Bytestring selected : shuffle(read.toArray(new Bytestring[read.size()]))) {
+            shuffled = shuffled.attachCiphertext(selected);
+        }
 
-            for (int j = 0; j < n; j++) {
-                old.add(old.remove());
-            }
+        return shuffled;
+    }
+
+    private <X> X[] shuffle(X[] old) {
+        int N = old.length;
+
+        // Successively and randomly select which one will be inserted until none remain.
+        // (This is a Fisher-Yates shuffle. The first i elements of the array are those which
+        // have already been selected.) If every random number is zero, the order is unchanged.
+        for (int i = 0; i < N; i++) {
+            // Get a random number between i and N - 1 inclusive.
+            int n = i + crypto.getRandom(N - i - 1);
 
-            // add the randomly selected element to the queue.
-            shuffled = shuffled.attach(old.remove());
+            X selected = old[n];
+            old[n] = old[i];
+            old[i] = selected;
         }
 
-        return shuffled;
+        return old;
     }
 
     // Test whether a set of messages are equal.
@@ -1077,11 +1235,12 @@ public class CoinShuffle {
                             players.get(i), decryptionKeys, shuffleMessages, broadcastMessages);
                 }
 
-                String address = message.readString();
+                Bytestring ciphertext = message.readCiphertext();
                 message = message.rest();
                 for (int k = i + 1; k <= players.size(); k++) {
-                    address = decryptionKeys.get(players.get(k)).decrypt(address);
+                    ciphertext = decryptionKeys.get(players.get(k)).decrypt(ciphertext);
                 }
+                String address = new String(ciphertext.bytes, StandardCharsets.UTF_8);
 
                 // There shouldn't be duplicates.
                 if (decrypted.contains(address)) {
@@ -1196,11 +1355,12 @@ public class CoinShuffle {
 
         // Get the initial ordering of the players.
         int i = 1;
-        Map<Integer, VerificationKey> numberedPlayers = new TreeMap<>();
+        Map<Integer, VerificationKey> ordering = new TreeMap<>();
         for (VerificationKey player : players) {
-            numberedPlayers.put(i, player);
+            ordering.put(i, player);
             i++;
         }
+        Players numberedPlayers = new Players(ordering);
 
         // Make an inbox for the next round.
         Mailbox mailbox = new Mailbox(
@@ -1211,10 +1371,38 @@ public class CoinShuffle {
         ).protocolDefinition();
     }
 
+    // Wait for the result of a task. If no one has started it yet, we run it ourselves.
+    static <X> X await(FutureTask<X> task) throws InterruptedException {
+        task.run();
+
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
     public CoinShuffle(
             MessageFactory messages, // Object that knows how to create and copy messages.
             Crypto crypto, // Connects to the cryptography.
             Coin coin // Connects us to the Bitcoin or other cryptocurrency netork.
+    ) {
+        this(messages, crypto, coin, null);
+    }
+
+    public CoinShuffle(
+            MessageFactory messages, // Object that knows how to create and copy messages.
+            Crypto crypto, // Connects to the cryptography.
+            Coin coin, // Connects us to the Bitcoin or other cryptocurrency netork.
+            Executor executor // Runs decryptions in parallel. (may be null).
     ) {
         if (crypto == null || coin == null || messages == null) {
             throw new NullPointerException();
@@ -1222,6 +1410,7 @@ public class CoinShuffle {
         this.crypto = crypto;
         this.coin = coin;
         this.messages = messages;
+        this.executor = executor;
     }
 
     /**
@@ -19,9 +19,10 @@ import com.shuffle.protocol.message.Phase;
 import java.io.IOException;
 import java.net.ProtocolException;
 import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
@@ -37,13 +38,18 @@ public class Mailbox {
     private final VerificationKey me;
     private final Collection<VerificationKey> players; // The keys representing all the players.
 
-    // A queue of messages that has been delivered that we aren't ready to look at yet.
-    private final Queue<Packet> delivered = new LinkedList<>();
+    // Messages that have been delivered that we aren't ready to look at yet, by phase,
+    // in the order in which they were delivered.
+    private final Map<Phase, Queue<Packet>> delivered = new EnumMap<>(Phase.class);
 
-    // All messages received (does not include those in delivered).
-    private final Queue<Packet> history = new LinkedList<>();
+    // All messages received (does not include those in delivered), by phase, in the
+    // order in which they were received.
+    private final Map<Phase, Queue<Packet>> history = new EnumMap<>(Phase.class);
 
-    private final Set<Reason> blame = new HashSet<>();
+    // The blame messages in history, by sender.
+    private final Map<VerificationKey, Queue<Packet>> blameHistory = new HashMap<>();
+
+    private final Set<Reason> blame = EnumSet.noneOf(Reason.class);
 
     public Mailbox(
             VerificationKey me,
@@ -52,7 +58,14 @@ public class Mailbox {
 
         this.me = me;
         this.messages = messages;
-        this.players = players;
+
+        // We look up players in here every time we send a message. The players of a round
+        // are already a set, so they are only copied if they are not.
+        if (players instanceof Set) {
+            this.players = players;
+        } else {
+            this.players = new LinkedHashSet<>(players);
+        }
     }
 
     // Whether a blame message with the given reason has been received.
@@ -78,18 +91,49 @@ public class Mailbox {
         // If this is a message to myself, don't send it. Just pretend we received it.
         // This is useful later when we have to collect all blame messages later.
         if (to.equals(me)) {
-            history.add(packet);
-            if (packet.phase() == Phase.Blame) {
-                blame.add(packet.payload().readBlame().reason);
-            }
+            receiveFromMyself(packet);
         }
     }
 
+    // Send a message to every player. Where possible, it is signed once for everybody.
     public void broadcast(Message message, Phase phase)
             throws IOException, InterruptedException, FormatException {
 
-        for (VerificationKey to : players) {
-            send(message, phase, to);
+        Packet packet = message.broadcast(phase, players);
+
+        if (packet != null && players.contains(me)) {
+            receiveFromMyself(packet);
+        }
+    }
+
+    private void receiveFromMyself(Packet packet) throws FormatException {
+        addToHistory(packet);
+        if (packet.phase() == Phase.Blame) {
+            blame.add(packet.payload().readBlame().reason);
+        }
+    }
+
+    private static void add(Map<Phase, Queue<Packet>> packets, Packet packet) {
+        Queue<Packet> queue = packets.get(packet.phase());
+        if (queue == null) {
+            queue = new LinkedList<>();
+            packets.put(packet.phase(), queue);
+        }
+
+        queue.add(packet);
+    }
+
+    private void addToHistory(Packet packet) {
+        add(history, packet);
+
+        if (packet.phase() == Phase.Blame) {
+            Queue<Packet> queue = blameHistory.get(packet.from());
+            if (queue == null) {
+                queue = new LinkedList<>();
+                blameHistory.put(packet.from(), queue);
+            }
+
+            queue.add(packet);
         }
     }
 
@@ -99,19 +143,10 @@ public class Mailbox {
     private Packet receiveNextPacket(Phase expectedPhase) throws InterruptedException, IOException {
         Packet found = null;
 
-        // Go through the queue of received messages if any are there.
-        if (delivered.size() > 0) {
-            Iterator<Packet> i = delivered.iterator();
-            while (i.hasNext()) {
-                Packet packet = i.next();
-
-                // Return any that matches what we're looking for.
-                if (expectedPhase == packet.phase()) {
-                    i.remove();
-                    found = packet;
-                    break;
-                }
-            }
+        // Take the first message that was delivered for this phase if any are there.
+        Queue<Packet> waiting = delivered.get(expectedPhase);
+        if (waiting != null) {
+            found = waiting.poll();
         }
 
         // Now we wait for the right message from the network, since we haven't already received it.
@@ -130,11 +165,14 @@ public class Mailbox {
                     break;
                 }
 
-                delivered.add(packet);
+                // A packet without a phase could never be received anyway.
+                if (phase != null) {
+                    add(delivered, packet);
+                }
             }
         }
 
-        history.add(found);
+        addToHistory(found);
         if (found.phase() == Phase.Blame) {
 
             try {
@@ -151,16 +189,14 @@ public class Mailbox {
     public Queue<Packet> getPacketsByPhase(Phase phase) {
         Queue<Packet> selection = new LinkedList<>();
 
-        for (Packet packet : history) {
-            if (packet.phase() == phase) {
-                selection.add(packet);
-            }
+        Queue<Packet> received = history.get(phase);
+        if (received != null) {
+            selection.addAll(received);
         }
 
-        for (Packet packet : delivered) {
-            if (packet.phase() == phase) {
-                selection.add(packet);
-            }
+        Queue<Packet> waiting = delivered.get(phase);
+        if (waiting != null) {
+            selection.addAll(waiting);
         }
 
         return selection;
@@ -219,7 +255,7 @@ public class Mailbox {
                 if (!ignoreBlame) {
                     // Put the messages already collected back so that they can be received later.
                     for (Packet p : broadcasts.values()) {
-                        delivered.add(p);
+                        add(delivered, p);
                     }
 
                     throw new BlameException(packet.from(), packet);
@@ -280,10 +316,8 @@ public class Mailbox {
         }
 
         // First get the blame messages in history.
-        for (Packet packet : history) {
-            if (packet.phase() == Phase.Blame) {
-                blame.get(packet.from()).add(packet);
-            }
+        for (Map.Entry<VerificationKey, Queue<Packet>> received : blameHistory.entrySet()) {
+            blame.get(received.getKey()).addAll(received.getValue());
         }
 
         // Then receive any more blame messages until there are no more.
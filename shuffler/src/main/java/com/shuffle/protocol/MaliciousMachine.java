@@ -18,6 +18,7 @@ import com.shuffle.bitcoin.SigningKey;
 import com.shuffle.bitcoin.Transaction;
 import com.shuffle.bitcoin.VerificationKey;
 import com.shuffle.chan.Send;
+import com.shuffle.p2p.Bytestring;
 import com.shuffle.protocol.blame.Blame;
 import com.shuffle.protocol.blame.BlameException;
 import com.shuffle.protocol.blame.Matrix;
@@ -29,6 +30,7 @@ import com.shuffle.protocol.message.Phase;
 import org.bitcoinj.core.AddressFormatException;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -47,6 +49,24 @@ import java.util.concurrent.ExecutionException;
  */
 public final class MaliciousMachine extends CoinShuffle {
 
+    // The entries in the shuffle phase are ciphertexts, except for the last player, who
+    // has removed every layer of encryption and has the new addresses.
+    private static Bytestring readEntry(Message message, boolean last) throws FormatException {
+        if (last) {
+            return new Bytestring(message.readString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        return message.readCiphertext();
+    }
+
+    private static Message attachEntry(Message message, Bytestring entry, boolean last) {
+        if (last) {
+            return message.attach(new String(entry.bytes, StandardCharsets.UTF_8));
+        }
+
+        return message.attachCiphertext(entry);
+    }
+
     private final class AnnouncementEquivocatorRound extends Round {
         final Set<VerificationKey> equivocate;
         DecryptionKey alt = null;
@@ -238,21 +258,13 @@ public final class MaliciousMachine extends CoinShuffle {
 
         @Override
         Message shufflePhase(Message shuffled, Address addrNew)
-                throws FormatException {
+                throws FormatException, InterruptedException {
 
             // If the dropped address is MY address, just do a normal shuffle phase
             // without adding any new addresses.
             if (drop == me) {
-                // Add our own address to the mix. Note that if me == N, ie, the last player, then no
-                // encryption is done. That is because we have reached the last layer of encryption.
-                String encrypted = addrNew.toString();
-                for (int i = N; i > me; i--) {
-                    // Successively encrypt with the keys of the players who haven't had their turn yet.
-                    encrypted = encryptionKeys.get(players.get(i)).encrypt(encrypted);
-                }
-
-                // Insert new entry and reorder the keys.
-                return shuffle(shuffled);
+                // Reorder the keys without inserting a new entry.
+                return me == N ? shuffle(shuffled) : shuffleCiphertexts(shuffled);
             }
 
             Message dropped = messages.make();
@@ -260,7 +272,7 @@ public final class MaliciousMachine extends CoinShuffle {
             int i = 1;
             while (!shuffled.isEmpty()) {
                 if (i != drop) {
-                    dropped = dropped.attach(shuffled.readString());
+                    dropped = attachEntry(dropped, readEntry(shuffled, me == N), me == N);
                 }
                 shuffled = shuffled.rest();
                 i ++;
@@ -290,18 +302,18 @@ public final class MaliciousMachine extends CoinShuffle {
 
         @Override
         Message shufflePhase(Message shuffled, Address addrNew)
-                throws FormatException {
+                throws FormatException, InterruptedException {
             Message findDuplcate = shuffled;
             shuffled = messages.make();
-            String duplicate = null;
+            Bytestring duplicate = null;
 
             int i = 1;
             while (!shuffled.isEmpty()) {
-                String address = findDuplcate.readString();
+                Bytestring address = readEntry(findDuplcate, me == N);
                 if (i == replace) {
                     duplicate = address;
                 }
-                shuffled = shuffled.attach(address);
+                shuffled = attachEntry(shuffled, address, me == N);
                 findDuplcate = findDuplcate.rest();
                 i++;
             }
@@ -310,9 +322,9 @@ public final class MaliciousMachine extends CoinShuffle {
             i = 1;
             while (!shuffled.isEmpty()) {
                 if (i != drop && duplicate != null) {
-                    dropped = dropped.attach(shuffled.readString());
+                    dropped = attachEntry(dropped, readEntry(shuffled, me == N), me == N);
                 } else {
-                    dropped = dropped.attach(duplicate);
+                    dropped = attachEntry(dropped, duplicate, me == N);
                 }
                 shuffled = shuffled.rest();
                 i ++;
@@ -342,15 +354,16 @@ public final class MaliciousMachine extends CoinShuffle {
 
         @Override
         Message shufflePhase(Message shuffled, Address addrNew)
-                throws FormatException {
+                throws FormatException, InterruptedException {
             Message dropped = messages.make();
 
             int i = 1;
             while (!shuffled.isEmpty()) {
                 if (i != drop) {
-                    dropped = dropped.attach(shuffled.readString());
+                    dropped = attachEntry(dropped, readEntry(shuffled, me == N), me == N);
                 } else {
-                    dropped = dropped.attach(replace);
+                    dropped = attachEntry(
+                            dropped, new Bytestring(replace.getBytes(StandardCharsets.UTF_8)), me == N);
                 }
                 shuffled = shuffled.rest();
                 i ++;
@@ -446,11 +459,12 @@ public final class MaliciousMachine extends CoinShuffle {
 
         // Get the initial ordering of the players.
         int i = 1;
-        Map<Integer, VerificationKey> numberedPlayers = new TreeMap<>();
+        Map<Integer, VerificationKey> ordering = new TreeMap<>();
         for (VerificationKey player : players) {
-            numberedPlayers.put(i, player);
+            ordering.put(i, player);
             i++;
         }
+        Players numberedPlayers = new Players(ordering);
 
         // Make an inbox for the next round.
         Mailbox mailbox = new Mailbox(
@@ -0,0 +1,170 @@
+/**
+ *
+ * Copyright © 2016 Mycelium.
+ * Use of this source code is governed by an ISC
+ * license that can be found in the LICENSE file.
+ *
+ */
+
+package com.shuffle.protocol;
+
+import com.shuffle.bitcoin.VerificationKey;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The players in a round, numbered from 1 to N. A player's key is found from their number
+ * by looking in an array, and their number from their key with a single hash lookup.
+ */
+final class Players extends AbstractMap<Integer, VerificationKey> {
+
+    // keys[i - 1] is the key of player i.
+    private final VerificationKey[] keys;
+
+    private final Map<VerificationKey, Integer> numbers;
+
+    Players(Map<Integer, VerificationKey> players) {
+        int n = players.size();
+        keys = new VerificationKey[n];
+        numbers = new HashMap<>(2 * n);
+
+        for (int i = 1; i <= n; i++) {
+            VerificationKey key = players.get(i);
+            if (key == null) {
+                throw new IllegalArgumentException("Players must be numbered from 1 to " + n);
+            }
+
+            keys[i - 1] = key;
+
+            // If a key appears more than once, it belongs to the first player who has it.
+            if (!numbers.containsKey(key)) {
+                numbers.put(key, i);
+            }
+        }
+    }
+
+    // The number of the player with the given key, or zero if there is none.
+    int number(VerificationKey key) {
+        Integer i = numbers.get(key);
+        if (i == null) return 0;
+
+        return i;
+    }
+
+    @Override
+    public VerificationKey get(Object o) {
+        if (!(o instanceof Integer)) return null;
+
+        int i = (Integer) o;
+        if (i < 1 || i > keys.length) return null;
+
+        return keys[i - 1];
+    }
+
+    @Override
+    public boolean containsKey(Object o) {
+        return get(o) != null;
+    }
+
+    @Override
+    public boolean containsValue(Object o) {
+        return numbers.containsKey(o);
+    }
+
+    @Override
+    public int size() {
+        return keys.length;
+    }
+
+    // The keys of the players in order, as a set, so that whether someone is playing
+    // is a hash lookup. A key which appears more than once is only listed for the first
+    // player who has it.
+    @Override
+    public Set<VerificationKey> values() {
+        return new AbstractSet<VerificationKey>() {
+            @Override
+            public Iterator<VerificationKey> iterator() {
+                return new Iterator<VerificationKey>() {
+                    private int i = next(1);
+
+                    // The next player from j on who is the first to have their key.
+                    private int next(int j) {
+                        while (j <= keys.length && numbers.get(keys[j - 1]) != j) j++;
+                        return j;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return i <= keys.length;
+                    }
+
+                    @Override
+                    public VerificationKey next() {
+                        if (i > keys.length) throw new NoSuchElementException();
+
+                        VerificationKey key = keys[i - 1];
+                        i = next(i + 1);
+                        return key;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return numbers.containsKey(o);
+            }
+
+            @Override
+            public int size() {
+                return numbers.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<Integer, VerificationKey>> entrySet() {
+        return new AbstractSet<Entry<Integer, VerificationKey>>() {
+            @Override
+            public Iterator<Entry<Integer, VerificationKey>> iterator() {
+                return new Iterator<Entry<Integer, VerificationKey>>() {
+                    private int i = 1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i <= keys.length;
+                    }
+
+                    @Override
+                    public Entry<Integer, VerificationKey> next() {
+                        if (i > keys.length) throw new NoSuchElementException();
+
+                        Entry<Integer, VerificationKey> e = new SimpleImmutableEntry<>(i, keys[i - 1]);
+                        i++;
+                        return e;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+        };
+    }
+}
@@ -13,20 +13,65 @@ import com.shuffle.bitcoin.VerificationKey;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by Daniel Krawisz on 12/22/15.
  *
  * The matrix represents a set blame accusations from one player to another along with
  * the evidence to prove it.
+ *
+ * Every player who appears in the matrix is given a number, and the evidence is kept in
+ * an array indexed by the numbers of the accused and the accuser. For every player we also
+ * keep the set of players who blame them as a bitset.
  */
 public class Matrix extends Throwable {
     private static final Logger log = LogManager.getLogger(Matrix.class);
 
-    // Who blames who?
-    final Map<VerificationKey, Map<VerificationKey, Evidence>> blame = new HashMap<>();
+    // The number of every player who appears in the matrix.
+    private final Map<VerificationKey, Integer> numbers = new HashMap<>();
+    private final List<VerificationKey> players = new ArrayList<>();
+
+    // Who blames who? evidence.get(accused)[accuser]
+    private final List<Evidence[]> evidence = new ArrayList<>();
+
+    // accusers.get(accused) is the set of players who blame accused.
+    private final List<BitSet> accusers = new ArrayList<>();
+
+    private int entries = 0;
+
+    public Matrix() {
+
+    }
+
+    // Number the given players ahead of time, in the order given. Given the players of a
+    // round in order, player i gets the number i - 1.
+    public Matrix(Collection<VerificationKey> players) {
+        for (VerificationKey player : players) {
+            number(player);
+        }
+    }
+
+    // Get the number of a player, giving it one if it does not have one yet.
+    private int number(VerificationKey player) {
+        Integer n = numbers.get(player);
+        if (n != null) return n;
+
+        n = players.size();
+        numbers.put(player, n);
+        players.add(player);
+        evidence.add(new Evidence[0]);
+        accusers.add(new BitSet());
+        return n;
+    }
 
     // Put a new entry in the blame matrix.
     public void put(VerificationKey accuser, Evidence evidence) {
@@ -36,14 +81,16 @@ public class Matrix extends Throwable {
 
         VerificationKey accused = evidence.accused;
 
-        Map<VerificationKey, Evidence> blames = blame.get(accused);
+        int i = number(accused);
+        int j = number(accuser);
 
-        if (blames == null) {
-            blames = new HashMap<>();
-            blame.put(accused, blames);
+        Evidence[] blames = this.evidence.get(i);
+        if (blames.length <= j) {
+            blames = Arrays.copyOf(blames, players.size());
+            this.evidence.set(i, blames);
         }
 
-        Evidence blame = blames.get(accuser);
+        Evidence blame = blames[j];
 
         if (blame != null) {
             log.error("Overwriting blame matrix entry "
@@ -51,18 +98,14 @@ public class Matrix extends Throwable {
             throw new IllegalArgumentException();
         }
 
-        blames.put(accuser, evidence);
+        blames[j] = evidence;
+        accusers.get(i).set(j);
+        entries++;
     }
 
     // Check whether one player already blamed another for a given offense.
     public boolean blameExists(VerificationKey accuser, VerificationKey accused, Reason reason) {
-        Map<VerificationKey, Evidence> blames = blame.get(accused);
-
-        if (blames == null) {
-            return false;
-        }
-
-        Evidence offense = blames.get(accuser);
+        Evidence offense = get(accuser, accused);
 
         return offense != null && offense.reason == reason;
 
@@ -70,101 +113,137 @@ public class Matrix extends Throwable {
 
     public Map<VerificationKey, Evidence> getAccusations(VerificationKey accused) {
         Map<VerificationKey, Evidence> accusations = new HashMap<>();
-        Map<VerificationKey, Evidence> oobleck = blame.get(accused);
-        if (oobleck != null) {
-            accusations.putAll(oobleck);
+
+        Integer i = numbers.get(accused);
+        if (i == null) {
+            return accusations;
+        }
+
+        Evidence[] blames = evidence.get(i);
+        BitSet row = accusers.get(i);
+        for (int j = row.nextSetBit(0); j >= 0; j = row.nextSetBit(j + 1)) {
+            accusations.put(players.get(j), blames[j]);
         }
+
         return accusations;
     }
 
-    private static Map<VerificationKey, Evidence> put(
-            Map<VerificationKey, Evidence> to,
-            Map<VerificationKey, Evidence> row) {
-        if (to == null) {
-            return row;
-        } else {
-            to.putAll(row);
-            return to;
+    // The players among those given who are blamed by every one of the others. (Whether
+    // they blame themselves does not matter.)
+    public Set<VerificationKey> blamedByAll(Collection<VerificationKey> players) {
+        Set<VerificationKey> blamed = new HashSet<>();
+
+        BitSet everyone = new BitSet();
+        for (VerificationKey player : players) {
+            Integer n = numbers.get(player);
+
+            // Someone who is not in the matrix doesn't blame anybody.
+            if (n == null) return blamed;
+
+            everyone.set(n);
         }
-    }
 
-    private static void putAll(
-            Map<VerificationKey, Map<VerificationKey, Evidence>> to,
-            Map<VerificationKey, Map<VerificationKey, Evidence>> bm
-    ) {
-        for (Map.Entry<VerificationKey, Map<VerificationKey, Evidence>> row : bm.entrySet()) {
-            VerificationKey key = row.getKey();
-            to.put(key, put(to.get(key), row.getValue()));
+        for (VerificationKey player : players) {
+            int i = numbers.get(player);
+            BitSet row = accusers.get(i);
+
+            if (row.isEmpty()) continue;
+
+            BitSet missing = (BitSet) everyone.clone();
+            missing.clear(i);
+            missing.andNot(row);
+
+            if (missing.isEmpty()) {
+                blamed.add(player);
+            }
         }
+
+        return blamed;
     }
 
+    // The evidence given by accuser against accused.
     public Evidence get(VerificationKey accuser, VerificationKey accused) {
-        Map<VerificationKey, Evidence> accusations = blame.get(accuser);
+        Integer i = numbers.get(accused);
+        Integer j = numbers.get(accuser);
 
-        if (accusations == null) {
+        if (i == null || j == null) {
             return null;
         }
 
-        return accusations.get(accused);
+        Evidence[] blames = evidence.get(i);
+
+        if (blames.length <= j) {
+            return null;
+        }
+
+        return blames[j];
 
     }
 
     public boolean isEmpty() {
-        if (blame.isEmpty()) return true;
+        return entries == 0;
+    }
+
+    // The matrix as a map from accused to accuser to evidence.
+    private Map<VerificationKey, Map<VerificationKey, Evidence>> rows() {
+        Map<VerificationKey, Map<VerificationKey, Evidence>> rows = new HashMap<>();
 
-        for (Map<VerificationKey, Evidence> row : blame.values()) {
-            if (!row.isEmpty()) return false;
+        for (int i = 0; i < players.size(); i++) {
+            if (!accusers.get(i).isEmpty()) {
+                rows.put(players.get(i), getAccusations(players.get(i)));
+            }
         }
 
-        return true;
+        return rows;
     }
 
     @Override
     public boolean equals(Object o) {
-        return o != null && o instanceof Matrix && blame.equals(((Matrix)o).blame);
+        return o != null && o instanceof Matrix && rows().equals(((Matrix)o).rows());
     }
 
     @Override
     public int hashCode() {
-        return blame.hashCode();
+        return rows().hashCode();
     }
 
     public boolean match(Matrix bm) {
         if (bm == null) {
             bm = new Matrix();
         }
-        Map<VerificationKey, Map<VerificationKey, Evidence>> bml = new HashMap<>();
-        putAll(bml, bm.blame);
-
-        for (VerificationKey accused : blame.keySet()) {
-            Map<VerificationKey, Evidence> us = blame.get(accused);
-            Map<VerificationKey, Evidence> them = new HashMap<>();
-            if (bml.containsKey(accused)) {
-                them.putAll(bml.get(accused));
-            }
 
-            for (VerificationKey accuser : us.keySet()) {
-                if (!us.get(accuser).match(them.get(accuser))) {
+        // Every entry of ours must match the corresponding entry of theirs.
+        for (int i = 0; i < players.size(); i++) {
+            VerificationKey accused = players.get(i);
+            Evidence[] blames = evidence.get(i);
+            BitSet row = accusers.get(i);
+
+            for (int j = row.nextSetBit(0); j >= 0; j = row.nextSetBit(j + 1)) {
+                if (!blames[j].match(bm.get(players.get(j), accused))) {
                     return false;
                 }
-
-                them.remove(accuser);
             }
+        }
 
-            if (!them.isEmpty()) {
-                return false;
-            }
+        // And they must not have any entries that we don't.
+        for (int i = 0; i < bm.players.size(); i++) {
+            VerificationKey accused = bm.players.get(i);
+            BitSet row = bm.accusers.get(i);
 
-            bml.remove(accused);
+            for (int j = row.nextSetBit(0); j >= 0; j = row.nextSetBit(j + 1)) {
+                if (get(bm.players.get(j), accused) == null) {
+                    return false;
+                }
+            }
         }
 
-        return bml.isEmpty();
+        return true;
 
     }
 
     @Override
     public String toString() {
-        return blame.toString();
+        return rows().toString();
     }
 
 }
@@ -17,6 +17,7 @@ import com.shuffle.protocol.blame.Blame;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
 
 /**
  * Created by Daniel Krawisz on 12/19/15.
@@ -34,6 +35,9 @@ public interface Message extends Serializable {
 
     Message attach(Blame blame);
 
+    // Ciphertexts are byte strings, but they are not signatures.
+    Message attachCiphertext(Bytestring ciphertext);
+
     EncryptionKey readEncryptionKey() throws FormatException;
 
     Bytestring readSignature() throws FormatException;
@@ -42,6 +46,8 @@ public interface Message extends Serializable {
 
     String readString() throws FormatException;
 
+    Bytestring readCiphertext() throws FormatException;
+
     Blame readBlame() throws FormatException;
 
     Message rest() throws FormatException;
@@ -52,4 +58,10 @@ public interface Message extends Serializable {
     Packet send(Phase phase, VerificationKey to) throws // May be thrown if this protocol runs in an interruptable thread.
             InterruptedException,
             IOException; // May be thrown if the internet connection fails.
+
+    // Send the same message to several players at once. The packet is signed only once
+    // if the wire format allows it.
+    Packet broadcast(Phase phase, Collection<VerificationKey> to) throws
+            InterruptedException,
+            IOException;
 }
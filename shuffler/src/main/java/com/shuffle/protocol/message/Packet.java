@@ -27,6 +27,8 @@ public interface Packet extends Serializable {
     // The phase the message was created or purported to be created.
     Phase phase();
     VerificationKey from();
+
+    // Null if the packet was broadcast to everyone.
     VerificationKey to();
 
     Bytestring signature();
@@ -0,0 +1,97 @@
+package com.shuffle.bitcoin.blockchain;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests working out the unspent outputs of an address from its history.
+ */
+public class AddressIndexTest {
+    private static final NetworkParameters netParams = MainNetParams.get();
+
+    private final Btcd btcd;
+    private final Address address = new ECKey().toAddress(netParams);
+    private final Address other = new ECKey().toAddress(netParams);
+
+    public AddressIndexTest() throws IOException {
+        btcd = new Btcd(netParams, new URL("http://127.0.0.1:1"), "user", "pass");
+    }
+
+    private Bitcoin.Transaction tx(Transaction tx) {
+        return btcd.new Transaction(tx.getHashAsString(), tx, false, true);
+    }
+
+    @Test
+    public void testBalance() {
+        Transaction funding = new Transaction(netParams);
+        funding.addOutput(Coin.valueOf(1000), address);
+        funding.addOutput(Coin.valueOf(2000), address);
+        funding.addOutput(Coin.valueOf(4000), other);
+
+        Transaction spend = new Transaction(netParams);
+        spend.addInput(funding.getOutput(0));
+        spend.addOutput(Coin.valueOf(500), address);
+        spend.addOutput(Coin.valueOf(400), other);
+
+        Transaction doubleSpend = new Transaction(netParams);
+        doubleSpend.addInput(funding.getOutput(0));
+        doubleSpend.addOutput(Coin.valueOf(900), other);
+
+        Bitcoin.Transaction first = tx(funding);
+        Bitcoin.Transaction second = tx(spend);
+        List<Bitcoin.Transaction> history = Arrays.asList(first, second, first);
+
+        AddressIndex index = new AddressIndex(address.toString(), netParams, history);
+        Assert.assertEquals(2500, index.balance());
+        Assert.assertSame(history, index.history);
+
+        Assert.assertSame(second, index.spender(doubleSpend.getInput(0).getOutpoint(), null));
+        Assert.assertNull(index.spender(doubleSpend.getInput(0).getOutpoint(), spend.getHash()));
+        Assert.assertNull(index.spender(funding.getOutput(1).getOutPointFor(), null));
+
+        // If both spends are in the history, each is found as the other's conflict,
+        // whichever order they come in.
+        Bitcoin.Transaction third = tx(doubleSpend);
+        for (List<Bitcoin.Transaction> both : Arrays.asList(
+                Arrays.asList(first, second, third), Arrays.asList(first, third, second))) {
+
+            index = new AddressIndex(address.toString(), netParams, both);
+            Assert.assertSame(third, index.spender(spend.getInput(0).getOutpoint(), spend.getHash()));
+            Assert.assertSame(second, index.spender(spend.getInput(0).getOutpoint(), doubleSpend.getHash()));
+        }
+    }
+
+    @Test
+    public void testLongHistory() {
+        List<Bitcoin.Transaction> history = new ArrayList<>();
+
+        Transaction previous = new Transaction(netParams);
+        previous.addOutput(Coin.valueOf(100000), address);
+        history.add(tx(previous));
+
+        // Each transaction spends the last one and sends a little elsewhere.
+        for (int i = 0; i < 5000; i++) {
+            Transaction next = new Transaction(netParams);
+            next.addInput(previous.getOutput(0));
+            next.addOutput(previous.getOutput(0).getValue().subtract(Coin.valueOf(10)), address);
+            next.addOutput(Coin.valueOf(10), other);
+            history.add(tx(next));
+            previous = next;
+        }
+
+        AddressIndex index = new AddressIndex(address.toString(), netParams, history);
+        Assert.assertEquals(100000 - 5000 * 10, index.balance());
+    }
+}
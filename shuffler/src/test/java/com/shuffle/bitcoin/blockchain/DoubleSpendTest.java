@@ -0,0 +1,154 @@
+package com.shuffle.bitcoin.blockchain;
+
+import com.shuffle.bitcoin.Address;
+import com.shuffle.bitcoin.CoinNetworkException;
+import com.shuffle.bitcoin.VerificationKey;
+import com.shuffle.bitcoin.impl.AddressImpl;
+import com.shuffle.bitcoin.impl.VerificationKeyImpl;
+
+import org.bitcoinj.core.AddressFormatException;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests that the double spending check sees transactions which appear after the shuffle
+ * transaction was made, even though the histories it was made from are still cached.
+ */
+public class DoubleSpendTest {
+    private static final NetworkParameters netParams = MainNetParams.get();
+
+    // A blockchain whose histories can be changed while it is being used. (In here,
+    // Transaction means Bitcoin.Transaction.)
+    private class MockBitcoin extends Bitcoin {
+        final Map<String, List<Transaction>> histories = new ConcurrentHashMap<>();
+        final Map<String, org.bitcoinj.core.Transaction> transactions = new ConcurrentHashMap<>();
+        final AtomicInteger lookups = new AtomicInteger();
+
+        // Whether looking up many addresses together fails.
+        volatile boolean batchFails = false;
+
+        MockBitcoin() {
+            super(MainNetParams.get(), 0);
+        }
+
+        void history(String address, org.bitcoinj.core.Transaction... txs) {
+            List<Transaction> history = new LinkedList<>();
+            for (org.bitcoinj.core.Transaction tx : txs) {
+                transactions.put(tx.getHashAsString(), tx);
+                history.add(new Transaction(tx.getHashAsString(), false, true));
+            }
+            histories.put(address, history);
+        }
+
+        @Override
+        protected List<Transaction> getAddressTransactionsInner(String address) {
+            lookups.incrementAndGet();
+            List<Transaction> history = histories.get(address);
+            return history == null ? Collections.<Transaction>emptyList() : history;
+        }
+
+        @Override
+        protected Map<String, List<Transaction>> getAddressTransactionsInner(List<String> addresses)
+                throws IOException, CoinNetworkException, AddressFormatException {
+
+            if (batchFails) throw new IOException("Batch failed.");
+            return super.getAddressTransactionsInner(addresses);
+        }
+
+        @Override
+        org.bitcoinj.core.Transaction getTransaction(String transactionHash) {
+            return transactions.get(transactionHash);
+        }
+    }
+
+    private static Address address(ECKey key) throws Exception {
+        return new AddressImpl(key.toAddress(netParams).toString());
+    }
+
+    // A shuffle transaction spending the output of funding which goes to vk.
+    private static Bitcoin.Transaction shuffle(MockBitcoin coin, VerificationKey vk) throws Exception {
+        Map<VerificationKey, Address> from = new HashMap<>();
+        from.put(vk, vk.address());
+        Queue<Address> to = new LinkedList<>(Collections.singletonList(address(new ECKey())));
+        Map<VerificationKey, Address> change = new HashMap<>();
+        change.put(vk, address(new ECKey()));
+
+        return coin.shuffleTransaction(1000, 100, from, to, change);
+    }
+
+    // A transaction which spends the same output elsewhere.
+    private static Transaction doubleSpend(Transaction funding) {
+        Transaction doubleSpend = new Transaction(netParams);
+        doubleSpend.addInput(funding.getOutput(0));
+        doubleSpend.addOutput(Coin.valueOf(90000), new ECKey().toAddress(netParams));
+        return doubleSpend;
+    }
+
+    @Test
+    public void testHistoryChanges() throws Exception {
+        MockBitcoin coin = new MockBitcoin();
+
+        VerificationKey vk = new VerificationKeyImpl(new ECKey().getPubKey(), netParams);
+        String from = vk.address().toString();
+
+        Transaction funding = new Transaction(netParams);
+        funding.addOutput(Coin.valueOf(100000), new org.bitcoinj.core.Address(netParams, from));
+        coin.history(from, funding);
+
+        Bitcoin.Transaction t = shuffle(coin, vk);
+        Assert.assertNotNull(t);
+
+        // The player spends the same output elsewhere before the check is made.
+        Transaction doubleSpend = doubleSpend(funding);
+        coin.history(from, funding, doubleSpend);
+
+        // The check looks up the history once more, and only once.
+        int lookups = coin.lookups.get();
+        coin.prefetch(Arrays.asList(vk.address()));
+        com.shuffle.bitcoin.Transaction conflict = coin.getConflictingTransaction(t, vk.address(), 1000);
+        Assert.assertEquals(lookups + 1, coin.lookups.get());
+
+        Assert.assertNotNull(conflict);
+        Assert.assertEquals(doubleSpend.getHash(), ((Bitcoin.Transaction) conflict).loaded().getHash());
+    }
+
+    // If the addresses cannot be looked up ahead of time, each is looked up on its own.
+    @Test
+    public void testPrefetchFails() throws Exception {
+        MockBitcoin coin = new MockBitcoin();
+        coin.batchFails = true;
+
+        VerificationKey vk = new VerificationKeyImpl(new ECKey().getPubKey(), netParams);
+        String from = vk.address().toString();
+
+        Transaction funding = new Transaction(netParams);
+        funding.addOutput(Coin.valueOf(100000), new org.bitcoinj.core.Address(netParams, from));
+        coin.history(from, funding);
+
+        Bitcoin.Transaction t = shuffle(coin, vk);
+        Assert.assertNotNull(t);
+
+        Transaction doubleSpend = doubleSpend(funding);
+        coin.history(from, funding, doubleSpend);
+
+        coin.prefetch(Arrays.asList(vk.address()));
+        Assert.assertFalse(coin.sufficientFunds(vk.address(), 1000));
+        Assert.assertNotNull(coin.getConflictingTransaction(t, vk.address(), 1000));
+    }
+}
@@ -0,0 +1,135 @@
+package com.shuffle.bitcoin.blockchain;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests that the JSON-RPC client sends requests at the same time, but no more than it
+ * is allowed to, and gives up on a server which does not answer.
+ */
+public class JsonRpcClientTest {
+    private HttpServer server;
+    private ExecutorService serverThreads;
+
+    // How long the server takes to answer, in milliseconds.
+    private volatile int delay = 200;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger mostActive = new AtomicInteger();
+
+    // Echoes the request back after a delay.
+    private final HttpHandler handler = new HttpHandler() {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            int now = active.incrementAndGet();
+            while (true) {
+                int most = mostActive.get();
+                if (now <= most || mostActive.compareAndSet(most, now)) break;
+            }
+
+            try {
+                InputStream in = exchange.getRequestBody();
+                byte[] buf = new byte[1024];
+                int n = in.read(buf);
+                Thread.sleep(delay);
+
+                exchange.sendResponseHeaders(200, n);
+                OutputStream out = exchange.getResponseBody();
+                out.write(buf, 0, n);
+                out.close();
+            } catch (InterruptedException e) {
+                exchange.close();
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    };
+
+    private JsonRpcClient client(int connections, int timeout) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort());
+        return new JsonRpcClient(url, "user", "pass", connections, timeout);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.createContext("/", handler);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrency() throws Exception {
+        JsonRpcClient client = client(3, 10000);
+
+        List<Future<String>> responses = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            responses.add(client.call("request " + i));
+        }
+
+        for (int i = 0; i < 9; i++) {
+            Assert.assertEquals("request " + i, responses.get(i).get());
+        }
+
+        Assert.assertEquals(3, mostActive.get());
+    }
+
+    // Clients talking to the same server share its limit.
+    @Test
+    public void testShared() throws Exception {
+        JsonRpcClient first = client(2, 10000);
+        JsonRpcClient second = client(2, 10000);
+
+        List<Future<String>> responses = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            responses.add((i % 2 == 0 ? first : second).call("request " + i));
+        }
+
+        for (int i = 0; i < 8; i++) {
+            Assert.assertEquals("request " + i, responses.get(i).get());
+        }
+
+        Assert.assertEquals(2, mostActive.get());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        delay = 2000;
+        JsonRpcClient client = client(1, 200);
+
+        try {
+            client.call("request").get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.shuffle.bitcoin.blockchain;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the shared cache of blockchain queries.
+ */
+public class QueryCacheTest {
+
+    // A query which counts how many times it is made.
+    private static class Counted implements QueryCache.Query<String> {
+        final AtomicInteger made = new AtomicInteger();
+        final String result;
+
+        Counted(String result) {
+            this.result = result;
+        }
+
+        @Override
+        public String run() throws IOException {
+            made.incrementAndGet();
+            return result;
+        }
+    }
+
+    @Test
+    public void testHitsAndExpiry() throws Exception {
+        QueryCache<String> cache = new QueryCache<>(16, 200);
+        Counted query = new Counted("a");
+
+        Assert.assertEquals("a", cache.get("key", query));
+        Assert.assertEquals("a", cache.get("key", query));
+        Assert.assertEquals(1, query.made.get());
+        Assert.assertEquals(1, cache.hits());
+        Assert.assertEquals(1, cache.misses());
+        Assert.assertEquals(0.5, cache.hitRate(), 0);
+
+        Thread.sleep(300);
+        Assert.assertEquals("a", cache.get("key", query));
+        Assert.assertEquals(2, query.made.get());
+
+        cache.remove("key");
+        Assert.assertEquals("a", cache.get("key", query));
+        Assert.assertEquals(3, query.made.get());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        QueryCache<String> cache = new QueryCache<>(4, 60000);
+        Counted query = new Counted("a");
+
+        for (int i = 0; i < 10; i++) {
+            cache.get(Integer.toString(i), query);
+            // The first one is kept because it keeps being used.
+            cache.get("0", query);
+        }
+
+        Assert.assertEquals(4, cache.size());
+        Assert.assertEquals(10, query.made.get());
+
+        cache.get("1", query);
+        Assert.assertEquals(11, query.made.get());
+    }
+
+    @Test
+    public void testFailuresNotKept() throws Exception {
+        QueryCache<String> cache = new QueryCache<>(16, 60000);
+        final AtomicInteger made = new AtomicInteger();
+        QueryCache.Query<String> failing = new QueryCache.Query<String>() {
+            @Override
+            public String run() throws IOException {
+                made.incrementAndGet();
+                throw new IOException("no");
+            }
+        };
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("key", failing);
+                Assert.fail();
+            } catch (IOException e) {
+                Assert.assertEquals("no", e.getMessage());
+            }
+        }
+        Assert.assertEquals(2, made.get());
+
+        Counted nothing = new Counted(null);
+        Assert.assertNull(cache.get("key", nothing));
+        Assert.assertNull(cache.get("key", nothing));
+        Assert.assertEquals(2, nothing.made.get());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    // Results which are not in the cache are asked for in one batch. Those which are
+    // count as hits, and peeking counts as nothing.
+    @Test
+    public void testGetAll() throws Exception {
+        QueryCache<String> cache = new QueryCache<>(16, 60000);
+        Counted query = new Counted("a");
+        cache.get("p a", query);
+
+        final List<List<String>> batches = new ArrayList<>();
+        QueryCache.Batch<String> batch = new QueryCache.Batch<String>() {
+            @Override
+            public Map<String, String> run(List<String> names) throws IOException {
+                batches.add(new ArrayList<>(names));
+                Map<String, String> results = new HashMap<>();
+                for (String name : names) {
+                    if (!name.equals("none")) results.put(name, name);
+                }
+                return results;
+            }
+        };
+
+        Map<String, String> results = cache.getAll("p ", Arrays.asList("a", "b", "c", "b", "none"), batch);
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals("a", results.get("a"));
+        Assert.assertEquals("c", results.get("c"));
+        Assert.assertEquals(Collections.singletonList(Arrays.asList("b", "c", "none")), batches);
+        Assert.assertEquals(1, cache.hits());
+        Assert.assertEquals(4, cache.misses());
+
+        Assert.assertEquals("b", cache.get("p b", query));
+        Assert.assertEquals("b", cache.peek("p b"));
+        Assert.assertNull(cache.peek("p none"));
+        Assert.assertEquals(2, cache.hits());
+        Assert.assertEquals(4, cache.misses());
+        Assert.assertEquals(1, query.made.get());
+    }
+
+    // Threads which ask for the same thing at the same time only cause one query.
+    @Test
+    public void testSingleFlight() throws Exception {
+        final QueryCache<String> cache = new QueryCache<>(16, 60000);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger made = new AtomicInteger();
+
+        final QueryCache.Query<String> slow = new QueryCache.Query<String>() {
+            @Override
+            public String run() throws IOException {
+                made.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return "slow";
+            }
+        };
+
+        int threads = 8;
+        final String[] results = new String[threads];
+        Thread[] waiting = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int j = i;
+            waiting[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        results[j] = cache.get("key", slow);
+                    } catch (Exception e) {
+                        results[j] = e.toString();
+                    }
+                }
+            });
+            waiting[i].start();
+            if (i == 0) started.await();
+        }
+
+        // Wait until every thread has joined the query in flight.
+        while (cache.hits() < threads - 1) Thread.sleep(10);
+        release.countDown();
+
+        for (int i = 0; i < threads; i++) {
+            waiting[i].join();
+            Assert.assertEquals("slow", results[i]);
+        }
+        Assert.assertEquals(1, made.get());
+    }
+}
@@ -0,0 +1,96 @@
+package com.shuffle.bitcoin.blockchain;
+
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests reading searchrawtransactions responses as they arrive.
+ */
+public class SearchRawTransactionsTest {
+    private static final String txid = "7301b595279ece985f0c415e420e425451fcf7f684fcce087ba14d10ffec1121";
+    private static final String hexTx = "01000000014dff4050dcee16672e48d755c6dd25d324492b5ea306f85a3ab23b4df26e16e9000000008c493046022100cb6dc911ef0bae0ab0e6265a45f25e081fc7ea4975517c9f848f82bc2b80a909022100e30fb6bb4fb64f414c351ed3abaed7491b8f0b1b9bcd75286036df8bfabc3ea5014104b70574006425b61867d2cbb8de7c26095fbc00ba4041b061cf75b85699cb2b449c6758741f640adffa356406632610efb267cb1efa0442c207059dd7fd652eeaffffffff020049d971020000001976a91461cf5af7bb84348df3fd695672e53c7d5b3f3db988ac30601c0c060000001976a914fd4ed114ef85d350d6d40ed3f6dc23743f8f99c488ac00000000";
+
+    private final Btcd btcd;
+
+    public SearchRawTransactionsTest() throws IOException {
+        btcd = new Btcd(MainNetParams.get(), new URL("http://127.0.0.1:1"), "user", "pass");
+    }
+
+    // A transaction as btcd describes it, with some of the fields that are skipped.
+    private static String tx(String txid, String hex, int confirmations) {
+        return "{\"hex\":\"" + hex + "\",\"txid\":\"" + txid + "\",\"version\":1,"
+                + "\"vin\":[{\"txid\":\"00\",\"vout\":0,\"scriptSig\":{\"hex\":\"00\"}}],"
+                + "\"vout\":[{\"value\":1.5,\"scriptPubKey\":{\"addresses\":[\"x\"]}}],"
+                + "\"confirmations\":" + confirmations + "}";
+    }
+
+    // Gives out the first part of a response and then fails, like a connection which
+    // breaks while a long response is being sent.
+    private static class Broken extends Reader {
+        private final StringReader first;
+
+        Broken(String first) {
+            this.first = new StringReader(first);
+        }
+
+        @Override
+        public int read(char[] buf, int off, int len) throws IOException {
+            int n = first.read(buf, off, len);
+            if (n == -1) throw new IOException("Read past the end.");
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void testResult() throws Exception {
+        SearchRawTransactions search = new SearchRawTransactions(btcd, Integer.MAX_VALUE);
+        search.parse(new StringReader("{\"id\":\"null\",\"error\":null,\"result\":["
+                + tx(txid, hexTx, 3) + "," + tx("unread", "not hex", 0) + "]}"));
+
+        // The second transaction cannot be deserialized, but nobody asks it to be.
+        List<Bitcoin.Transaction> txList = search.result();
+        Assert.assertEquals(2, txList.size());
+        Assert.assertEquals(txid, txList.get(0).hash);
+        Assert.assertTrue(txList.get(0).confirmed);
+        Assert.assertEquals(txid, txList.get(0).bitcoinj().getHashAsString());
+        Assert.assertEquals("unread", txList.get(1).hash);
+        Assert.assertFalse(txList.get(1).confirmed);
+
+        search = new SearchRawTransactions(btcd, Integer.MAX_VALUE);
+        search.parse(new StringReader("{\"result\":null,\"error\":{\"code\":-5},\"id\":\"null\"}"));
+        Assert.assertTrue(search.result().isEmpty());
+    }
+
+    @Test
+    public void testStopEarly() throws Exception {
+        SearchRawTransactions search = new SearchRawTransactions(btcd, 2);
+        search.parse(new Broken("{\"result\":[" + tx(txid, hexTx, 1) + "," + tx(txid, hexTx, 1)));
+        Assert.assertEquals(2, search.result().size());
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        SearchRawTransactions search = new SearchRawTransactions(btcd, 1);
+        search.parse(new StringReader("[{\"result\":null,\"id\":2},"
+                + "{\"result\":[" + tx(txid, hexTx, 1) + "," + tx(txid, hexTx, 1) + "],\"id\":0},"
+                + "{\"id\":1,\"result\":[]}]"));
+
+        Map<Integer, List<Bitcoin.Transaction>> results = search.results();
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals(1, results.get(0).size());
+        Assert.assertTrue(results.get(1).isEmpty());
+        Assert.assertTrue(results.get(2).isEmpty());
+    }
+}
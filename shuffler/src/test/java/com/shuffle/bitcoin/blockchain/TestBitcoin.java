@@ -2,16 +2,22 @@ package com.shuffle.bitcoin.blockchain;
 
 import com.shuffle.bitcoin.Address;
 import com.shuffle.bitcoin.CoinNetworkException;
+import com.shuffle.bitcoin.impl.SigningKeyImpl;
 import com.shuffle.mock.MockAddress;
 import com.shuffle.p2p.Bytestring;
+import com.shuffle.protocol.FormatException;
 
 import org.bitcoinj.core.AddressFormatException;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.Context;
 import org.bitcoinj.core.ECKey;
 import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.core.Transaction;
 import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.crypto.TransactionSignature;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.script.ScriptBuilder;
 import org.bouncycastle.util.encoders.Hex;
 import org.junit.Assert;
 import org.junit.Test;
@@ -244,4 +250,98 @@ public class TestBitcoin {
          * has already been spent..
          */
     }
+
+    // Input scripts are matched to the input they spend, whatever order they come in.
+    @Test
+    public void testInputScripts() throws AddressFormatException, FormatException {
+        MockBitcoin mock = new MockBitcoin();
+        HexBinaryAdapter adapter = new HexBinaryAdapter();
+        ECKey privKey1 = ECKey.fromPrivate(Hex.decode("bd28acf50b7304b098aefa12fd1bb1cbeb4975cc20e86055b3b9ea65b1c80972"));
+        ECKey privKey2 = ECKey.fromPrivate(Hex.decode("224de2bacfba369f854e8db918540d40f45f7459c83f8b47a9501306bce29715"));
+        byte[] parentBytes1 = adapter.unmarshal("01000000013607cf0cd0c29a6b5d6dd4d7e95c85be0577ee62bf3685c26ea6f36a55bba167000000006b483045022100c75ca43c81d9ecd0aaf1327b80512c1f386accbe2684ae8bcd302bc6e164979f02203efbc08bc5aaaaeb98cda97adf34903f67b803c364b0dde03c9284891d5fc2ee012102834755244b98488d24dd643c81403f0660abf9dff5804ce7d1a2076924e45862ffffffff01a001da60000000001976a914dea86c67b46e5d5bd89ab24d40590f871591ffae88ac00000000");
+        byte[] parentBytes2 = adapter.unmarshal("01000000018fff9cf295ab3545b974b4dbf87c8cf268f93b4fd88b0acfb9504ca187e1e548000000006a4730440220709d86aa33fabee055f6df16596ac3f171465edd1551856d46ce31a9a9b7bfb202204e482f8d2161322fc7665ad9184f5f0910934cf92b6b91e4176ba17982ee6948012103a3b087c39703146c561c7e9ddd9637de3176e2dfba1773307d9c6e7a5373fd25ffffffff01f0c6f601000000001976a9149c294ec749de349f114e19a32b6c3c585aa0f83588ac00000000");
+        Transaction parentTx1 = new Transaction(mock.netParams, parentBytes1);
+        Transaction parentTx2 = new Transaction(mock.netParams, parentBytes2);
+        Transaction tx = new Transaction(mock.netParams);
+        tx.addOutput(Coin.SATOSHI.multiply(parentTx1.getOutput(0).getValue().value - 50000l), new org.bitcoinj.core.Address(mock.netParams, "mivwStMcpCfVqnDw5zmHYtEffCNgy7uqj6"));
+        tx.addOutput(Coin.SATOSHI.multiply(parentTx2.getOutput(0).getValue().value - 50000l), new org.bitcoinj.core.Address(mock.netParams, "mthh7gRXtEwznD1tqbxaWggS8QjtfqkiSP"));
+        tx.addInput(parentTx1.getOutput(0));
+        tx.addInput(parentTx2.getOutput(0));
+
+        Bytestring sig1 = mock.getSignature(tx, privKey1);
+        Bytestring sig2 = mock.getSignature(tx, privKey2);
+
+        // A key which has no input in the transaction.
+        ECKey other = new ECKey();
+        TransactionSignature otherSig = new TransactionSignature(
+                other.sign(tx.hashForSignature(0, parentTx1.getOutput(0).getScriptPubKey(), Transaction.SigHash.ALL, false)),
+                Transaction.SigHash.ALL, false);
+        Bytestring sig3 = new Bytestring(ScriptBuilder.createInputScript(otherSig, other).getProgram());
+
+        Bitcoin.Transaction t = mock.new Transaction(tx.getHashAsString(), tx, false);
+        Assert.assertTrue(t.checkInputScript(sig2));
+        Assert.assertTrue(t.checkInputScript(sig1));
+        Assert.assertFalse(t.checkInputScript(sig3));
+        Assert.assertFalse(t.checkInputScript(new Bytestring(new byte[]{1, 2, 3})));
+        Assert.assertFalse(t.addInputScript(sig3));
+
+        Assert.assertTrue(t.addInputScript(sig2));
+        Assert.assertTrue(t.addInputScript(sig1));
+        Assert.assertArrayEquals(sig1.bytes, tx.getInput(0).getScriptBytes());
+        Assert.assertArrayEquals(sig2.bytes, tx.getInput(1).getScriptBytes());
+        Assert.assertTrue(t.isValid());
+
+        List<Bytestring> reversed = new LinkedList<>();
+        reversed.add(sig2);
+        reversed.add(sig1);
+        Assert.assertNotNull(mock.signTransaction(tx, reversed));
+        Assert.assertArrayEquals(sig1.bytes, tx.getInput(0).getScriptBytes());
+
+        reversed.add(sig3);
+        Assert.assertNull(mock.signTransaction(tx, reversed));
+    }
+
+    // Signature hashes must be the same as the ones bitcoinj computes.
+    @Test
+    public void testSignatureHashes() throws AddressFormatException, FormatException {
+        MockBitcoin mock = new MockBitcoin();
+        HexBinaryAdapter adapter = new HexBinaryAdapter();
+        ECKey privKey1 = ECKey.fromPrivate(Hex.decode("bd28acf50b7304b098aefa12fd1bb1cbeb4975cc20e86055b3b9ea65b1c80972"));
+        ECKey privKey2 = ECKey.fromPrivate(Hex.decode("224de2bacfba369f854e8db918540d40f45f7459c83f8b47a9501306bce29715"));
+        Transaction parentTx1 = new Transaction(mock.netParams, adapter.unmarshal("01000000013607cf0cd0c29a6b5d6dd4d7e95c85be0577ee62bf3685c26ea6f36a55bba167000000006b483045022100c75ca43c81d9ecd0aaf1327b80512c1f386accbe2684ae8bcd302bc6e164979f02203efbc08bc5aaaaeb98cda97adf34903f67b803c364b0dde03c9284891d5fc2ee012102834755244b98488d24dd643c81403f0660abf9dff5804ce7d1a2076924e45862ffffffff01a001da60000000001976a914dea86c67b46e5d5bd89ab24d40590f871591ffae88ac00000000"));
+        Transaction parentTx2 = new Transaction(mock.netParams, adapter.unmarshal("01000000018fff9cf295ab3545b974b4dbf87c8cf268f93b4fd88b0acfb9504ca187e1e548000000006a4730440220709d86aa33fabee055f6df16596ac3f171465edd1551856d46ce31a9a9b7bfb202204e482f8d2161322fc7665ad9184f5f0910934cf92b6b91e4176ba17982ee6948012103a3b087c39703146c561c7e9ddd9637de3176e2dfba1773307d9c6e7a5373fd25ffffffff01f0c6f601000000001976a9149c294ec749de349f114e19a32b6c3c585aa0f83588ac00000000"));
+        Transaction tx = new Transaction(mock.netParams);
+        tx.addOutput(Coin.SATOSHI.multiply(parentTx1.getOutput(0).getValue().value - 50000l), new org.bitcoinj.core.Address(mock.netParams, "mivwStMcpCfVqnDw5zmHYtEffCNgy7uqj6"));
+        tx.addOutput(Coin.SATOSHI.multiply(parentTx2.getOutput(0).getValue().value - 50000l), new org.bitcoinj.core.Address(mock.netParams, "mthh7gRXtEwznD1tqbxaWggS8QjtfqkiSP"));
+        tx.addInput(parentTx1.getOutput(0));
+        tx.addInput(parentTx2.getOutput(0));
+        tx.getInput(1).setSequenceNumber(7);
+        tx.setLockTime(12345);
+
+        SignatureHashes sighashes = new SignatureHashes(tx);
+        for (int i = 0; i < tx.getInputs().size(); i++) {
+            byte[] script = tx.getInput(i).getConnectedOutput().getScriptBytes();
+            Sha256Hash expected = tx.hashForSignature(i, script, Transaction.SigHash.ALL, false);
+            Assert.assertEquals(expected, sighashes.hash(i, script));
+            Assert.assertEquals(expected, sighashes.hash(i, script));
+        }
+
+        // Each signature spends its own input according to bitcoinj.
+        Bytestring sig1 = mock.getSignature(tx, privKey1);
+        Bytestring sig2 = mock.getSignature(tx, privKey2);
+        new Script(sig1.bytes).correctlySpends(tx, 0, parentTx1.getOutput(0).getScriptPubKey());
+        new Script(sig2.bytes).correctlySpends(tx, 1, parentTx2.getOutput(0).getScriptPubKey());
+        Assert.assertNull(mock.getSignature(tx, new ECKey()));
+
+        // Signatures of other hash types are left to bitcoinj.
+        TransactionSignature anyone = new TransactionSignature(
+                privKey1.sign(tx.hashForSignature(0, parentTx1.getOutput(0).getScriptPubKey(), Transaction.SigHash.ALL, true)),
+                Transaction.SigHash.ALL, true);
+        Bytestring sig3 = new Bytestring(ScriptBuilder.createInputScript(anyone, privKey1).getProgram());
+
+        Bitcoin.Transaction t = mock.new Transaction(tx.getHashAsString(), tx, false);
+        Assert.assertTrue(t.checkInputScript(sig3));
+        Assert.assertTrue(t.checkInputScript(sig2));
+        Assert.assertEquals(sig1, t.sign(new SigningKeyImpl(privKey1, mock.netParams)));
+    }
 }
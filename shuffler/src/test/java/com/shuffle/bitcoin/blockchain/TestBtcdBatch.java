@@ -0,0 +1,180 @@
+package com.shuffle.bitcoin.blockchain;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.params.MainNetParams;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests that Btcd asks for many addresses and transactions in one request, against a
+ * stub server which answers JSON-RPC batches.
+ */
+public class TestBtcdBatch {
+    private static final NetworkParameters netParams = MainNetParams.get();
+
+    private static final String txid = "7301b595279ece985f0c415e420e425451fcf7f684fcce087ba14d10ffec1121";
+    private static final String hexTx = "01000000014dff4050dcee16672e48d755c6dd25d324492b5ea306f85a3ab23b4df26e16e9000000008c493046022100cb6dc911ef0bae0ab0e6265a45f25e081fc7ea4975517c9f848f82bc2b80a909022100e30fb6bb4fb64f414c351ed3abaed7491b8f0b1b9bcd75286036df8bfabc3ea5014104b70574006425b61867d2cbb8de7c26095fbc00ba4041b061cf75b85699cb2b449c6758741f640adffa356406632610efb267cb1efa0442c207059dd7fd652eeaffffffff020049d971020000001976a91461cf5af7bb84348df3fd695672e53c7d5b3f3db988ac30601c0c060000001976a914fd4ed114ef85d350d6d40ed3f6dc23743f8f99c488ac00000000";
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    // Every address has one transaction in its history.
+    private static JSONObject respond(JSONObject call) {
+        String param = call.getJSONArray("params").getString(0);
+
+        Object result;
+        if (call.getString("method").equals("searchrawtransactions")) {
+            result = new JSONArray().put(new JSONObject()
+                    .put("txid", txid)
+                    .put("hex", hexTx)
+                    .put("confirmations", param.length()));
+        } else {
+            result = hexTx;
+        }
+
+        return new JSONObject().put("id", call.get("id")).put("result", result);
+    }
+
+    // Answers every call in a batch, in reverse order to check that responses are
+    // matched to calls by their ids. Calls which are not in a batch are answered alone.
+    private final HttpHandler handler = new HttpHandler() {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+
+            String request = read(exchange.getRequestBody());
+            Object response;
+            if (request.startsWith("[")) {
+                JSONArray calls = new JSONArray(request);
+                JSONArray responses = new JSONArray();
+                for (int i = calls.length() - 1; i >= 0; i--) {
+                    responses.put(respond(calls.getJSONObject(i)));
+                }
+                response = responses;
+            } else {
+                response = respond(new JSONObject(request));
+            }
+
+            byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+    };
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private Btcd btcd() throws IOException {
+        URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort());
+        return new Btcd(netParams, url, "user", "pass");
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", handler);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testAddressBatch() throws Exception {
+        Btcd btcd = btcd();
+
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < Btcd.BATCH_SIZE + 10; i++) {
+            addresses.add("address " + i);
+        }
+
+        Map<String, List<Bitcoin.Transaction>> histories = btcd.getAddressTransactions(addresses);
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(addresses.size(), histories.size());
+
+        for (String address : addresses) {
+            List<Bitcoin.Transaction> txList = histories.get(address);
+            Assert.assertEquals(1, txList.size());
+            Assert.assertEquals(txid, txList.get(0).hash);
+            Assert.assertEquals(txid, txList.get(0).bitcoinj().getHashAsString());
+
+            // Everything is in the cache now.
+            Assert.assertSame(txList, btcd.getAddressTransactions(address));
+        }
+
+        btcd.getAddressTransactions(addresses);
+        Assert.assertEquals(2, requests.get());
+    }
+
+    // Counting reads the whole history when there are fewer transactions than the limit,
+    // and then it is kept so that it need not be asked for again.
+    @Test
+    public void testCount() throws Exception {
+        Btcd btcd = btcd();
+
+        Assert.assertEquals(1, btcd.countAddressTransactions("short", 2));
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(1, btcd.getAddressTransactions("short").size());
+        Assert.assertEquals(1, requests.get());
+
+        // There may be more than this. The count is kept, but not as the whole history.
+        Assert.assertEquals(1, btcd.countAddressTransactions("long", 1));
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(1, btcd.countAddressTransactions("long", 1));
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(1, btcd.getAddressTransactions("long").size());
+        Assert.assertEquals(3, requests.get());
+
+        // Forgetting an address forgets its count too.
+        btcd.forget("short");
+        Assert.assertEquals(1, btcd.countAddressTransactions("short", 2));
+        Assert.assertEquals(4, requests.get());
+    }
+
+    @Test
+    public void testTransactionBatch() throws Exception {
+        Btcd btcd = btcd();
+
+        List<String> hashes = Arrays.asList("a", "b", "c", "a");
+        Map<String, org.bitcoinj.core.Transaction> txs = btcd.lookupTransactions(hashes);
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(3, txs.size());
+        for (String hash : hashes) {
+            Assert.assertEquals(txid, txs.get(hash).getHashAsString());
+            Assert.assertSame(txs.get(hash), btcd.lookupTransaction(hash));
+        }
+        Assert.assertEquals(1, requests.get());
+    }
+}
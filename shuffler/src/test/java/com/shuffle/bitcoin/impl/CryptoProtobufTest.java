@@ -0,0 +1,74 @@
+package com.shuffle.bitcoin.impl;
+
+import com.shuffle.bitcoin.Address;
+import com.shuffle.bitcoin.EncryptionKey;
+import com.shuffle.bitcoin.VerificationKey;
+import com.shuffle.protocol.FormatException;
+
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.KeyPairGenerator;
+
+/**
+ * Tests that keys and addresses read from packets are only decoded once.
+ */
+public class CryptoProtobufTest {
+    private static final NetworkParameters testnet = NetworkParameters.fromID(NetworkParameters.ID_TESTNET);
+    private static final NetworkParameters mainnet = NetworkParameters.fromID(NetworkParameters.ID_MAINNET);
+
+    @Test
+    public void testInterned() throws Exception {
+        CryptoProtobuf proto = new CryptoProtobuf(testnet);
+
+        String vkString = new ECKey().getPublicKeyAsHex();
+        VerificationKey vk = proto.unmarshallVerificationKey(vkString);
+        Assert.assertSame(vk, proto.unmarshallVerificationKey(vkString));
+        Assert.assertSame(vk, new CryptoProtobuf(testnet).unmarshallVerificationKey(vkString));
+        Assert.assertEquals(new VerificationKeyImpl(vkString, testnet), vk);
+
+        // The same key on another network has another address.
+        VerificationKey other = new CryptoProtobuf(mainnet).unmarshallVerificationKey(vkString);
+        Assert.assertNotEquals(vk.address(), other.address());
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("ECIES", new BouncyCastleProvider());
+        String ekString = new DecryptionKeyImpl(generator.generateKeyPair()).EncryptionKey().toString();
+        EncryptionKey ek = proto.unmarshallEncryptionKey(ekString);
+        Assert.assertSame(ek, proto.unmarshallEncryptionKey(ekString));
+        Assert.assertEquals(ekString, ek.toString());
+
+        Address address = proto.unmarshallAdress(vk.address().toString());
+        Assert.assertSame(address, proto.unmarshallAdress(vk.address().toString()));
+        Assert.assertEquals(vk.address(), address);
+    }
+
+    @Test
+    public void testInvalidAddress() {
+        CryptoProtobuf proto = new CryptoProtobuf(testnet);
+        int size = CryptoProtobuf.addresses.size();
+
+        try {
+            proto.unmarshallAdress("not an address");
+            Assert.fail();
+        } catch (FormatException e) {
+            Assert.assertEquals(size, CryptoProtobuf.addresses.size());
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        Interner<Integer> interner = new Interner<>(4);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(Integer.valueOf(i), interner.intern(Integer.toString(i), i));
+            // The first one is kept because it keeps being used.
+            Assert.assertEquals(Integer.valueOf(0), interner.get("0"));
+        }
+
+        Assert.assertEquals(4, interner.size());
+        Assert.assertNull(interner.get("1"));
+        Assert.assertEquals(Integer.valueOf(9), interner.intern("9", 10));
+    }
+}
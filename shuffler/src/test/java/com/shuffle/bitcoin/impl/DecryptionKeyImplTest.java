@@ -137,4 +137,29 @@ public class DecryptionKeyImplTest {
         System.out.println("and then decrypted \n back to :\n" + decAddress);
         assertEquals(testAddress.toString(), decAddress.toString());
     }
+
+    // Ciphertexts must be the same as those of BouncyCastle's ECIES cipher.
+    @Test
+    public void testJceCompatible() throws Exception {
+        String message = "myGgn8UojMsyqn6KGQLEbVbpYSePcKfawG";
+
+        Cipher cipher = Cipher.getInstance("ECIES");
+        cipher.init(Cipher.ENCRYPT_MODE, publicTestKey);
+        String encrypted = Hex.encodeHexString(cipher.doFinal(message.getBytes()));
+        assertEquals(message, decryptionKey.decrypt(encrypted));
+
+        cipher.init(Cipher.DECRYPT_MODE, privateTestKey);
+        byte[] decrypted = cipher.doFinal(Hex.decodeHex(encryptionKey.encrypt(message).toCharArray()));
+        assertEquals(message, new String(decrypted));
+
+        // Keys made by BitcoinCrypto.
+        DecryptionKey dk = bitcoinCrypto.makeDecryptionKey();
+        cipher.init(Cipher.ENCRYPT_MODE, ((EncryptionKeyImpl) dk.EncryptionKey()).getPublicKey());
+        encrypted = Hex.encodeHexString(cipher.doFinal(message.getBytes()));
+        assertEquals(message, dk.decrypt(encrypted));
+
+        cipher.init(Cipher.DECRYPT_MODE, ((DecryptionKeyImpl) dk).privateKey);
+        decrypted = cipher.doFinal(Hex.decodeHex(dk.EncryptionKey().encrypt(message).toCharArray()));
+        assertEquals(message, new String(decrypted));
+    }
 }
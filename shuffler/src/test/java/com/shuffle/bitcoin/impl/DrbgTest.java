@@ -0,0 +1,98 @@
+package com.shuffle.bitcoin.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for the per-thread random number generator.
+ */
+public class DrbgTest {
+
+    @Test
+    public void testBounds() {
+        Assert.assertEquals(0, Drbg.getRandom(0));
+
+        for (int n : new int[]{1, 2, 3, 7, 8, 100, Integer.MAX_VALUE - 1, Integer.MAX_VALUE}) {
+            for (int i = 0; i < 1000; i++) {
+                int r = Drbg.getRandom(n);
+                Assert.assertTrue(r >= 0 && r <= n);
+            }
+        }
+
+        try {
+            Drbg.getRandom(-1);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testUniform() {
+        // A chi-squared test with 5 degrees of freedom. For a uniform distribution,
+        // the statistic is above 25 with probability about 0.0001.
+        int n = 5;
+        int draws = 60000;
+        int[] count = new int[n + 1];
+        for (int i = 0; i < draws; i++) {
+            count[Drbg.getRandom(n)]++;
+        }
+
+        double expected = (double) draws / (n + 1);
+        double chi = 0;
+        for (int c : count) {
+            chi += (c - expected) * (c - expected) / expected;
+        }
+
+        Assert.assertTrue("chi squared = " + chi, chi < 25);
+    }
+
+    // Returns the given numbers in the three lowest bits, one after another.
+    private static final class Stub extends SecureRandom {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] values;
+        private int i = 0;
+
+        Stub(int... values) {
+            this.values = values;
+        }
+
+        @Override
+        public int nextInt() {
+            return values[i++] | 0xfffffff8;
+        }
+    }
+
+    // Numbers outside the range are thrown away rather than folded back into it.
+    @Test
+    public void testRejection() {
+        Assert.assertEquals(2, Drbg.uniform(new Stub(6, 7, 2), 5));
+    }
+
+    @Test
+    public void testThreads() throws InterruptedException {
+        final AtomicReference<byte[]> other = new AtomicReference<>();
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] b = new byte[32];
+                Drbg.create().nextBytes(b);
+                other.set(b);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        byte[] mine = new byte[32];
+        Drbg.create().nextBytes(mine);
+
+        Assert.assertNotNull(other.get());
+        Assert.assertFalse(Arrays.equals(mine, other.get()));
+    }
+}
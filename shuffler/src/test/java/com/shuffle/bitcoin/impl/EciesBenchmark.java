@@ -0,0 +1,83 @@
+package com.shuffle.bitcoin.impl;
+
+import com.google.inject.Guice;
+import com.shuffle.JvmModule;
+
+import org.bitcoinj.params.TestNet3Params;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.spongycastle.util.encoders.Hex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+
+/**
+ * Compares encrypting and decrypting an address with the keys' own ECIES engines
+ * against doing it through a JCE cipher, which is how the keys used to do it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EciesBenchmark {
+
+    @Param({"jce", "engine"})
+    public String method;
+
+    private static final String address = "myGgn8UojMsyqn6KGQLEbVbpYSePcKfawG";
+
+    private DecryptionKeyImpl dk;
+    private EncryptionKeyImpl ek;
+    private String ciphertext;
+
+    @Setup
+    public void setup() throws Exception {
+        dk = (DecryptionKeyImpl) new BitcoinCrypto(TestNet3Params.get()).makeDecryptionKey();
+        ek = (EncryptionKeyImpl) dk.EncryptionKey();
+        ciphertext = ek.encrypt(address);
+    }
+
+    @Benchmark
+    public String encrypt() throws Exception {
+        if (method.equals("engine")) {
+            return ek.encrypt(address);
+        }
+
+        Cipher cipher = Cipher.getInstance("ECIES");
+        cipher.init(Cipher.ENCRYPT_MODE, ek.getPublicKey());
+        return Hex.toHexString(cipher.doFinal(address.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public String decrypt() throws Exception {
+        if (method.equals("engine")) {
+            return dk.decrypt(ciphertext);
+        }
+
+        Guice.createInjector(new JvmModule()).injectMembers(this);
+        Cipher cipher = Cipher.getInstance("ECIES");
+        cipher.init(Cipher.DECRYPT_MODE, dk.privateKey);
+        return new String(cipher.doFinal(Hex.decode(ciphertext)), StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EciesBenchmark.class.getSimpleName()).build()).run();
+    }
+}
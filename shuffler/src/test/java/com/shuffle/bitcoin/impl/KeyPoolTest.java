@@ -0,0 +1,45 @@
+package com.shuffle.bitcoin.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tests for the pool of decryption keys.
+ */
+public class KeyPoolTest {
+
+    @Test
+    public void testTake() throws InterruptedException {
+        KeyPool pool = new KeyPool(3);
+
+        try {
+            // The pool fills up in the background, but no further than its size.
+            long start = System.currentTimeMillis();
+            while (pool.size() < 3 && System.currentTimeMillis() - start < 10000) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(3, pool.size());
+
+            // Keys are never handed out twice, even when the pool runs out.
+            Set<DecryptionKeyImpl> keys = new HashSet<>();
+            for (int i = 0; i < 6; i++) {
+                DecryptionKeyImpl key = pool.take();
+                Assert.assertTrue(keys.add(key));
+                Assert.assertEquals("abcd", key.decrypt(key.EncryptionKey().encrypt("abcd")));
+            }
+        } finally {
+            pool.close();
+        }
+
+        Assert.assertEquals(0, pool.size());
+
+        try {
+            pool.take();
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.shuffle.bitcoin.impl;
+
+import com.shuffle.p2p.Bytestring;
+
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.params.TestNet3Params;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares verifying a signature with the secp256k1 verifier against doing it through
+ * bitcoinj, which is how verification keys used to do it, and against finding it in
+ * the cache of signatures which have already been verified.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Secp256k1Benchmark {
+
+    @Param({"bitcoinj", "engine", "cached"})
+    public String method;
+
+    private VerificationKeyImpl vk;
+    private Bytestring payload;
+    private Bytestring signature;
+
+    @Setup
+    public void setup() {
+        SigningKeyImpl sk = new SigningKeyImpl(new ECKey(), TestNet3Params.get());
+        vk = (VerificationKeyImpl) sk.VerificationKey();
+        payload = new Bytestring(new byte[200]);
+        signature = sk.sign(payload);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        if (method.equals("engine")) {
+            return vk.check(Sha256Hash.of(payload.bytes).getBytes(), signature);
+        }
+
+        if (method.equals("cached")) {
+            return vk.verify(payload, signature);
+        }
+
+        return vk.verifyWithBitcoinj(payload, signature);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(Secp256k1Benchmark.class.getSimpleName()).build()).run();
+    }
+}
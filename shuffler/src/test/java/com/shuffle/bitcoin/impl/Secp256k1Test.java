@@ -0,0 +1,205 @@
+package com.shuffle.bitcoin.impl;
+
+import com.shuffle.p2p.Bytestring;
+
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spongycastle.math.ec.ECPoint;
+import org.spongycastle.math.raw.Nat256;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * Differential tests of the secp256k1 verifier against bitcoinj.
+ */
+public class Secp256k1Test {
+    private static final NetworkParameters testnet = NetworkParameters.fromID(NetworkParameters.ID_TESTNET);
+    private static final BigInteger n = ECKey.CURVE.getN();
+
+    private final Random random = new Random(13);
+
+    private BigInteger scalar() {
+        return new BigInteger(256, random).mod(n);
+    }
+
+    private Bytestring payload() {
+        byte[] b = new byte[1 + random.nextInt(100)];
+        random.nextBytes(b);
+        return new Bytestring(b);
+    }
+
+    private static Bytestring sign(ECKey key, Bytestring payload) {
+        return new Bytestring(key.sign(Sha256Hash.of(payload.bytes)).encodeToDER());
+    }
+
+    private static Bytestring der(BigInteger r, BigInteger s) {
+        return new Bytestring(new ECKey.ECDSASignature(r, s).encodeToDER());
+    }
+
+    // Both verifiers must give the same answer, and it must be the expected one.
+    private static void check(VerificationKeyImpl vk, Bytestring payload, Bytestring sig, boolean expected) {
+        Assert.assertEquals(expected, vk.verifyWithBitcoinj(payload, sig));
+        Assert.assertEquals(expected, vk.check(Sha256Hash.of(payload.bytes).getBytes(), sig));
+    }
+
+    @Test
+    public void testAvailable() {
+        Assert.assertTrue(Secp256k1.available);
+    }
+
+    @Test
+    public void testDecompose() {
+        BigInteger[] cases = new BigInteger[]{BigInteger.ZERO, BigInteger.ONE, n.subtract(BigInteger.ONE),
+                Secp256k1.lambda, n.shiftRight(1), scalar(), scalar(), scalar()};
+
+        for (BigInteger k : cases) {
+            BigInteger[] split = Secp256k1.decompose(k);
+            Assert.assertEquals(k, split[0].add(split[1].multiply(Secp256k1.lambda)).mod(n));
+            Assert.assertTrue(split[0].abs().bitLength() <= 129);
+            Assert.assertTrue(split[1].abs().bitLength() <= 129);
+        }
+    }
+
+    @Test
+    public void testWnaf() {
+        for (int width = 2; width <= 8; width++) {
+            for (int i = 0; i < 50; i++) {
+                BigInteger k = new BigInteger(130, random);
+                int[] naf = Secp256k1.wnaf(k, width);
+
+                BigInteger sum = BigInteger.ZERO;
+                int last = -width;
+                for (int j = 0; j < naf.length; j++) {
+                    if (naf[j] == 0) continue;
+
+                    Assert.assertTrue(naf[j] % 2 != 0 && Math.abs(naf[j]) < 1 << (width - 1));
+                    Assert.assertTrue(j - last >= width);
+                    last = j;
+
+                    sum = sum.add(BigInteger.valueOf(naf[j]).shiftLeft(j));
+                }
+
+                Assert.assertEquals(k, sum);
+            }
+        }
+    }
+
+    @Test
+    public void testTable() {
+        ECPoint q = new ECKey().getPubKeyPoint();
+        Secp256k1.Table table = new Secp256k1.Table(q, Secp256k1.KEY_WIDTH);
+
+        for (int i = 0; i < table.x.length; i++) {
+            BigInteger m = BigInteger.valueOf(2 * i + 1);
+
+            ECPoint point = q.multiply(m).normalize();
+            Assert.assertEquals(point.getAffineXCoord().toBigInteger(), Nat256.toBigInteger(table.x[i]));
+            Assert.assertEquals(point.getAffineYCoord().toBigInteger(), Nat256.toBigInteger(table.y[i]));
+            Assert.assertEquals(point.negate().getAffineYCoord().toBigInteger(),
+                    Nat256.toBigInteger(table.negY[i]));
+
+            ECPoint endo = q.multiply(m.multiply(Secp256k1.lambda)).normalize();
+            Assert.assertEquals(endo.getAffineXCoord().toBigInteger(), Nat256.toBigInteger(table.endoX[i]));
+            Assert.assertEquals(endo.getAffineYCoord(), point.getAffineYCoord());
+        }
+    }
+
+    // Adding a point to itself or to its negation.
+    @Test
+    public void testJacobian() {
+        ECPoint q = new ECKey().getPubKeyPoint();
+        Secp256k1.Table table = new Secp256k1.Table(q, Secp256k1.KEY_WIDTH);
+
+        Secp256k1.Jacobian point = new Secp256k1.Jacobian();
+        point.add(table.x[0], table.y[0]);
+        point.add(table.x[0], table.y[0]);
+        Assert.assertEquals(q.twice().normalize(), point.toPoint());
+
+        point.twice();
+        point.add(table.x[1], table.negY[1]);
+        Assert.assertEquals(q.normalize(), point.toPoint());
+
+        point.add(table.x[0], table.negY[0]);
+        Assert.assertTrue(point.infinity);
+    }
+
+    @Test
+    public void testMultiply() {
+        ECPoint g = ECKey.CURVE.getG();
+        ECPoint q = new ECKey().getPubKeyPoint();
+        Secp256k1.Table table = new Secp256k1.Table(q, Secp256k1.KEY_WIDTH);
+
+        BigInteger[] edges = new BigInteger[]{BigInteger.ZERO, BigInteger.ONE,
+                n.subtract(BigInteger.ONE), Secp256k1.lambda};
+
+        for (BigInteger u1 : edges) {
+            for (BigInteger u2 : edges) {
+                Assert.assertEquals(g.multiply(u1).add(q.multiply(u2)).normalize(),
+                        Secp256k1.multiply(table, u1, u2).toPoint());
+            }
+        }
+
+        for (int i = 0; i < 20; i++) {
+            BigInteger u1 = scalar();
+            BigInteger u2 = scalar();
+            Assert.assertEquals(g.multiply(u1).add(q.multiply(u2)).normalize(),
+                    Secp256k1.multiply(table, u1, u2).toPoint());
+        }
+
+        // u1·G + u2·Q is infinity when Q = G and u2 = -u1.
+        BigInteger u = scalar();
+        Assert.assertTrue(Secp256k1.multiply(new Secp256k1.Table(g, Secp256k1.KEY_WIDTH),
+                u, n.subtract(u)).infinity);
+    }
+
+    @Test
+    public void testVerify() {
+        for (boolean compressed : new boolean[]{true, false}) {
+            for (int i = 0; i < 20; i++) {
+                ECKey key = new ECKey();
+                if (!compressed) key = key.decompress();
+                VerificationKeyImpl vk = new VerificationKeyImpl(key.getPubKey(), testnet);
+
+                Bytestring payload = payload();
+                Bytestring sig = sign(key, payload);
+                ECKey.ECDSASignature parsed = ECKey.ECDSASignature.decodeFromDER(sig.bytes);
+
+                check(vk, payload, sig, true);
+
+                // The same signature with s replaced by n - s is also valid.
+                check(vk, payload, der(parsed.r, n.subtract(parsed.s)), true);
+
+                // Wrong message.
+                byte[] changed = payload.bytes.clone();
+                changed[random.nextInt(changed.length)] ^= 1 << random.nextInt(8);
+                check(vk, new Bytestring(changed), sig, false);
+
+                // Wrong key.
+                check(new VerificationKeyImpl(new ECKey().getPubKey(), testnet), payload, sig, false);
+
+                // Altered signature.
+                check(vk, payload, der(parsed.r.add(BigInteger.ONE), parsed.s), false);
+                check(vk, payload, der(parsed.r, parsed.s.add(BigInteger.ONE)), false);
+            }
+        }
+    }
+
+    @Test
+    public void testOutOfRange() {
+        ECKey key = new ECKey();
+        VerificationKeyImpl vk = new VerificationKeyImpl(key.getPubKey(), testnet);
+        Bytestring payload = payload();
+        ECKey.ECDSASignature sig = ECKey.ECDSASignature.decodeFromDER(sign(key, payload).bytes);
+
+        check(vk, payload, der(BigInteger.ZERO, sig.s), false);
+        check(vk, payload, der(sig.r, BigInteger.ZERO), false);
+        check(vk, payload, der(n, sig.s), false);
+        check(vk, payload, der(sig.r, n), false);
+        check(vk, payload, der(sig.r.add(n), sig.s), false);
+        check(vk, payload, der(sig.r, sig.s.add(n)), false);
+    }
+}
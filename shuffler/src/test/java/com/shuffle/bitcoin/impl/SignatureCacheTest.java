@@ -0,0 +1,79 @@
+package com.shuffle.bitcoin.impl;
+
+import com.shuffle.p2p.Bytestring;
+
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the cache of verified signatures.
+ */
+public class SignatureCacheTest {
+    private static final NetworkParameters testnet = NetworkParameters.fromID(NetworkParameters.ID_TESTNET);
+
+    private static byte[] bytes(int i) {
+        return new byte[]{(byte) i, (byte) (i >> 8)};
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        SignatureCache cache = new SignatureCache(64);
+        byte[] key = bytes(1);
+
+        Assert.assertFalse(cache.contains(key, bytes(2), bytes(3)));
+        cache.put(key, bytes(2), bytes(3));
+        Assert.assertTrue(cache.contains(key, bytes(2), bytes(3)));
+
+        // Every part of an entry matters.
+        Assert.assertFalse(cache.contains(bytes(4), bytes(2), bytes(3)));
+        Assert.assertFalse(cache.contains(key, bytes(4), bytes(3)));
+        Assert.assertFalse(cache.contains(key, bytes(2), bytes(4)));
+
+        Assert.assertEquals(1, cache.hits());
+        Assert.assertEquals(4, cache.misses());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        int capacity = 64;
+        SignatureCache cache = new SignatureCache(capacity);
+        byte[] key = bytes(1);
+
+        cache.put(key, bytes(0), bytes(0));
+        for (int i = 1; i < 100 * capacity; i++) {
+            // Keep the first entry in use so that it is never the least recently used.
+            Assert.assertTrue(cache.contains(key, bytes(0), bytes(0)));
+            cache.put(key, bytes(i), bytes(i));
+        }
+
+        Assert.assertTrue(cache.size() <= capacity);
+        Assert.assertTrue(cache.contains(key, bytes(0), bytes(0)));
+        Assert.assertFalse(cache.contains(key, bytes(1), bytes(1)));
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    // Only signatures which are valid are remembered.
+    @Test
+    public void testVerify() {
+        SigningKeyImpl sk = new SigningKeyImpl(new ECKey(), testnet);
+        VerificationKeyImpl vk = (VerificationKeyImpl) sk.VerificationKey();
+        Bytestring payload = new Bytestring("Hello World".getBytes());
+        Bytestring other = new Bytestring("Goodbye World".getBytes());
+        Bytestring signature = sk.sign(payload);
+
+        long hits = VerificationKeyImpl.verified.hits();
+
+        Assert.assertFalse(vk.verify(other, signature));
+        Assert.assertFalse(vk.verify(other, signature));
+        Assert.assertEquals(hits, VerificationKeyImpl.verified.hits());
+
+        Assert.assertTrue(vk.verify(payload, signature));
+        Assert.assertTrue(vk.verify(payload, signature));
+        Assert.assertEquals(hits + 1, VerificationKeyImpl.verified.hits());
+    }
+}
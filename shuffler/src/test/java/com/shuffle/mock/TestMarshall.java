@@ -1,5 +1,7 @@
 package com.shuffle.mock;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
 import com.shuffle.bitcoin.SigningKey;
 import com.shuffle.bitcoin.VerificationKey;
 import com.shuffle.chan.BasicChan;
@@ -9,10 +11,14 @@ import com.shuffle.chan.Send;
 import com.shuffle.chan.packet.Packet;
 import com.shuffle.chan.packet.Signed;
 import com.shuffle.p2p.Bytestring;
+import com.shuffle.player.AtomVector;
+import com.shuffle.player.Message;
 import com.shuffle.player.Messages;
 import com.shuffle.player.Payload;
 import com.shuffle.player.Protobuf;
+import com.shuffle.player.proto.Proto;
 import com.shuffle.protocol.FormatException;
+import com.shuffle.protocol.blame.Blame;
 import com.shuffle.protocol.message.Phase;
 
 import org.junit.Assert;
@@ -24,6 +30,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 
 /**
  * Created by Daniel Krawisz on 10/17/16.
@@ -69,4 +76,299 @@ public class TestMarshall {
             Assert.assertTrue(p.equals(new Messages.SignedPacket(proto.signedMarshaller.unmarshall(chan.receive()))));
         }
     }
+
+    @Test
+    // A signed packet should go out with exactly the bytes that were signed and come back
+    // in with them, and it should be readable by anything which reads a Proto.Signed.
+    public void testSignedBytes() throws IOException, FormatException {
+        Protobuf proto = new MockProtobuf();
+        SigningKey me = new MockSigningKey(100);
+
+        Packet<VerificationKey, Payload> packet = new Packet<>(new Bytestring("s".getBytes()),
+                me.VerificationKey(), new MockVerificationKey(2), 3,
+                new Payload(Phase.Shuffling, (Message) new Message(AtomVector.EMPTY, proto.addressMarshaller(), null)
+                        .attach(new MockEncryptionKey(1)).attach(new MockAddress(2))));
+
+        Signed<Packet<VerificationKey, Payload>> signed = new Signed<>(packet, me, proto.packetMarshaller);
+        Bytestring b = proto.signedMarshaller.marshall(signed);
+
+        Assert.assertEquals(b, new Bytestring(Protobuf.marshallSignedPacket(signed, proto.version).build().toByteArray()));
+
+        Proto.Signed sp = Proto.Signed.parseFrom(b.bytes);
+        Assert.assertEquals(signed.serialized(proto.packetMarshaller),
+                new Bytestring(sp.getPacket().toByteArray()));
+
+        Signed<Packet<VerificationKey, Payload>> received = proto.signedMarshaller.unmarshall(b);
+        Assert.assertEquals(signed, received);
+        Assert.assertEquals(signed.serialized(proto.packetMarshaller), received.serialized(null));
+        Assert.assertTrue(received.verify(me.VerificationKey(), null));
+        Assert.assertFalse(received.verify(new MockVerificationKey(2), proto.packetMarshaller));
+        Assert.assertEquals(signed, proto.unmarshallSignedPacket(sp));
+    }
+
+    @Test
+    // Ciphertexts are read back as ciphertexts, not as signatures, in both versions.
+    public void testCiphertext() throws IOException, FormatException {
+        for (Protobuf.Version version : Protobuf.Version.values()) {
+            Protobuf proto = new MockProtobuf(version);
+
+            com.shuffle.protocol.message.Message m
+                    = new Message(AtomVector.EMPTY, proto.addressMarshaller(), null);
+            for (int i = 0; i < 3; i++) {
+                m = m.attachCiphertext(new Bytestring(new byte[]{0, (byte) i, (byte) 0xff}));
+            }
+
+            Packet<VerificationKey, Payload> packet = new Packet<>(new Bytestring("s".getBytes()),
+                    new MockVerificationKey(1), new MockVerificationKey(2), 3,
+                    new Payload(Phase.Shuffling, (Message) m));
+
+            Packet<VerificationKey, Payload> read
+                    = proto.packetMarshaller.unmarshall(proto.packetMarshaller.marshall(packet));
+            Assert.assertEquals(packet, read);
+
+            com.shuffle.protocol.message.Message r = read.payload.message;
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(new Bytestring(new byte[]{0, (byte) i, (byte) 0xff}), r.readCiphertext());
+                try {
+                    r.readSignature();
+                    Assert.fail();
+                } catch (FormatException ignored) {
+                }
+                r = r.rest();
+            }
+            Assert.assertTrue(r.isEmpty());
+        }
+    }
+
+    // A packet containing every kind of atom that a packet can hold.
+    private static Packet<VerificationKey, Payload> packet(
+            Protobuf proto, VerificationKey from, VerificationKey to) {
+
+        com.shuffle.protocol.message.Message m = new Message(AtomVector.EMPTY, proto.addressMarshaller(), null)
+                .attach(new MockEncryptionKey(1)).attach(new MockAddress(2)).attach("string")
+                .attach(new Bytestring(new byte[]{3})).attachCiphertext(new Bytestring(new byte[]{4, 5}));
+
+        return new Packet<>(new Bytestring("s".getBytes()), from, to, 7,
+                new Payload(Phase.Shuffling, (Message) m));
+    }
+
+    // Marshalls signed packets from one player and puts them in a channel.
+    private static Send<Signed<Packet<VerificationKey, Payload>>> sendTo(
+            final Protobuf proto, final Chan<Bytestring> chan) {
+
+        return new Send<Signed<Packet<VerificationKey, Payload>>>() {
+
+            @Override
+            public boolean send(Signed<Packet<VerificationKey, Payload>> sp) throws InterruptedException, IOException {
+                return chan.send(proto.signedMarshaller.marshall(sp));
+            }
+
+            @Override
+            public void close() {
+                chan.close();
+            }
+        };
+    }
+
+    @Test
+    // Version 2 is written unless another version is asked for, but a packet written in
+    // either version can be read in either, and is written back in the version it came in.
+    public void testVersions() throws IOException, FormatException {
+        Assert.assertEquals(Protobuf.Version.V2, new MockProtobuf().version);
+
+        for (Protobuf.Version writer : Protobuf.Version.values()) {
+            for (Protobuf.Version reader : Protobuf.Version.values()) {
+                Protobuf w = new MockProtobuf(writer);
+                Protobuf r = new MockProtobuf(reader);
+
+                Packet<VerificationKey, Payload> packet
+                        = packet(w, new MockVerificationKey(1), new MockVerificationKey(2));
+                Bytestring b = w.packetMarshaller.marshall(packet);
+
+                Packet<VerificationKey, Payload> read = r.packetMarshaller.unmarshall(b);
+                Assert.assertEquals(packet, read);
+                Assert.assertEquals(writer, read.payload.version);
+                Assert.assertEquals(b, r.packetMarshaller.marshall(read));
+            }
+        }
+    }
+
+    @Test
+    // Players who write different versions can talk to one another, and a packet passed
+    // along as evidence keeps the version it was signed in, so that it can still be verified.
+    public void testMixedVersions() throws IOException, FormatException, NoSuchAlgorithmException, InterruptedException {
+        Bytestring session = new Bytestring("s".getBytes());
+
+        SigningKey one = new MockSigningKey(1);
+        SigningKey two = new MockSigningKey(2);
+        SigningKey three = new MockSigningKey(3);
+
+        Protobuf v1 = new MockProtobuf(Protobuf.Version.V1);
+        Protobuf v2 = new MockProtobuf(Protobuf.Version.V2);
+
+        // One writes version 1, two writes version 2, and three only reads.
+        Chan<Bytestring> oneToTwo = new BasicChan<>(3);
+        Chan<Bytestring> twoToOne = new BasicChan<>(3);
+        Chan<Bytestring> twoToThree = new BasicChan<>(3);
+
+        Map<VerificationKey, Send<Signed<Packet<VerificationKey, Payload>>>> oneNet = new HashMap<>();
+        oneNet.put(two.VerificationKey(), sendTo(v1, oneToTwo));
+        Messages oneMessages = new Messages(session, one, oneNet, new Inbox<>(10), v1);
+
+        Map<VerificationKey, Send<Signed<Packet<VerificationKey, Payload>>>> twoNet = new HashMap<>();
+        twoNet.put(one.VerificationKey(), sendTo(v2, twoToOne));
+        twoNet.put(three.VerificationKey(), sendTo(v2, twoToThree));
+        Messages twoMessages = new Messages(session, two, twoNet, new Inbox<>(10), v2);
+
+        com.shuffle.protocol.message.Packet sent = oneMessages.make().attach(new MockEncryptionKey(1))
+                .attach(new MockAddress(1)).send(Phase.Announcement, two.VerificationKey());
+        Signed<Packet<VerificationKey, Payload>> received = v2.signedMarshaller.unmarshall(oneToTwo.receive());
+        Assert.assertEquals(sent, new Messages.SignedPacket(received));
+        Assert.assertEquals(Protobuf.Version.V1, received.message.payload.version);
+        Assert.assertTrue(received.verify(one.VerificationKey(), null));
+
+        com.shuffle.protocol.message.Packet reply = twoMessages.make().attach(new MockEncryptionKey(2))
+                .send(Phase.Announcement, one.VerificationKey());
+        Signed<Packet<VerificationKey, Payload>> replied = v1.signedMarshaller.unmarshall(twoToOne.receive());
+        Assert.assertEquals(reply, new Messages.SignedPacket(replied));
+        Assert.assertEquals(Protobuf.Version.V2, replied.message.payload.version);
+        Assert.assertTrue(replied.verify(two.VerificationKey(), null));
+
+        // Two passes along one's packet as evidence in a version 2 packet.
+        Queue<com.shuffle.protocol.message.Packet> evidence = new LinkedList<>();
+        evidence.add(new Messages.SignedPacket(received));
+        twoMessages.make().attach(Blame.EquivocationFailure(evidence))
+                .send(Phase.Blame, three.VerificationKey());
+
+        Signed<Packet<VerificationKey, Payload>> blame = v1.signedMarshaller.unmarshall(twoToThree.receive());
+        Assert.assertEquals(Protobuf.Version.V2, blame.message.payload.version);
+
+        Messages.SignedPacket passed = (Messages.SignedPacket)
+                blame.message.payload.message.readBlame().packets.peek();
+        Assert.assertEquals(sent, passed);
+        Assert.assertEquals(Protobuf.Version.V1, passed.packet.message.payload.version);
+        Assert.assertTrue(passed.packet.verify(one.VerificationKey(), null));
+    }
+
+    @Test
+    // Evidence is passed along with exactly the bytes that were signed, even if they are
+    // not what we would have written ourselves, so that another player can check it.
+    public void testEvidenceBytes() throws IOException, FormatException, NoSuchAlgorithmException, InterruptedException {
+        Bytestring session = new Bytestring("s".getBytes());
+        Protobuf proto = new MockProtobuf(Protobuf.Version.V1);
+
+        SigningKey one = new MockSigningKey(1);
+        SigningKey two = new MockSigningKey(2);
+        SigningKey three = new MockSigningKey(3);
+
+        // One writes an explicit version 1 and a field that we don't know about.
+        Bytestring written = proto.packetMarshaller.marshall(
+                packet(proto, one.VerificationKey(), two.VerificationKey()));
+        byte[] extra = new byte[CodedOutputStream.computeUInt32Size(Proto.Packet.VERSION_FIELD_NUMBER, 1)
+                + CodedOutputStream.computeUInt32Size(100, 5)];
+        CodedOutputStream out = CodedOutputStream.newInstance(extra);
+        out.writeUInt32(Proto.Packet.VERSION_FIELD_NUMBER, 1);
+        out.writeUInt32(100, 5);
+        out.checkNoSpaceLeft();
+        Bytestring signedBytes = written.append(new Bytestring(extra));
+
+        Bytestring sent = new Bytestring(Proto.Signed.newBuilder()
+                .setPacket(ByteString.copyFrom(signedBytes.bytes))
+                .setSignature(Proto.Signature.newBuilder().setSignature(
+                        ByteString.copyFrom(one.sign(signedBytes).bytes))).build().toByteArray());
+
+        Signed<Packet<VerificationKey, Payload>> received = proto.signedMarshaller.unmarshall(sent);
+        Assert.assertEquals(Protobuf.Version.V1, received.message.payload.version);
+        Assert.assertNotEquals(signedBytes, proto.packetMarshaller.marshall(received.message));
+
+        // Two passes it along to three as evidence.
+        Chan<Bytestring> twoToThree = new BasicChan<>(3);
+        Map<VerificationKey, Send<Signed<Packet<VerificationKey, Payload>>>> twoNet = new HashMap<>();
+        twoNet.put(three.VerificationKey(), sendTo(proto, twoToThree));
+        Messages twoMessages = new Messages(session, two, twoNet, new Inbox<>(10), proto);
+
+        Queue<com.shuffle.protocol.message.Packet> evidence = new LinkedList<>();
+        evidence.add(new Messages.SignedPacket(received));
+        twoMessages.make().attach(Blame.EquivocationFailure(evidence))
+                .send(Phase.Blame, three.VerificationKey());
+
+        // Two's blame is passed along in turn, so that there is evidence inside evidence.
+        Signed<Packet<VerificationKey, Payload>> blame = proto.signedMarshaller.unmarshall(twoToThree.receive());
+        Queue<com.shuffle.protocol.message.Packet> nested = new LinkedList<>();
+        nested.add(new Messages.SignedPacket(blame));
+        Bytestring passedOn = new Bytestring(Protobuf.marshallBlame(Blame.EquivocationFailure(nested),
+                proto.version).build().toByteArray());
+
+        Blame read = proto.unmarshallBlame(Proto.Blame.parseFrom(passedOn.bytes));
+        Messages.SignedPacket outer = (Messages.SignedPacket) read.packets.peek();
+        Assert.assertTrue(outer.packet.verify(two.VerificationKey(), null));
+
+        Messages.SignedPacket inner = (Messages.SignedPacket)
+                outer.packet.message.payload.message.readBlame().packets.peek();
+        Assert.assertEquals(new Messages.SignedPacket(received), inner);
+        Assert.assertEquals(signedBytes, inner.packet.serialized(null));
+        Assert.assertTrue(inner.packet.verify(one.VerificationKey(), null));
+    }
+
+    @Test
+    // A player who writes version 1 sends each player their own broadcast packet with a
+    // recipient, because older players reject packets without one. A player who writes
+    // version 2 sends the same packet to everyone.
+    public void testBroadcastVersions() throws IOException, FormatException, NoSuchAlgorithmException, InterruptedException {
+        Bytestring session = new Bytestring("s".getBytes());
+        SigningKey one = new MockSigningKey(1);
+        SigningKey two = new MockSigningKey(2);
+        SigningKey three = new MockSigningKey(3);
+
+        List<VerificationKey> players = new LinkedList<>();
+        players.add(two.VerificationKey());
+        players.add(three.VerificationKey());
+
+        for (Protobuf.Version version : Protobuf.Version.values()) {
+            Protobuf proto = new MockProtobuf(version);
+
+            Map<VerificationKey, Chan<Bytestring>> chans = new HashMap<>();
+            Map<VerificationKey, Send<Signed<Packet<VerificationKey, Payload>>>> net = new HashMap<>();
+            for (VerificationKey k : players) {
+                Chan<Bytestring> chan = new BasicChan<>(3);
+                chans.put(k, chan);
+                net.put(k, sendTo(proto, chan));
+            }
+
+            Messages messages = new Messages(session, one, net, new Inbox<>(10), proto);
+            messages.make().attach(new MockAddress(1)).broadcast(Phase.BroadcastOutput, players);
+
+            Bytestring first = null;
+            for (VerificationKey k : players) {
+                Bytestring b = chans.get(k).receive();
+                Proto.Packet p = Proto.Packet.parseFrom(Proto.Signed.parseFrom(b.bytes).getPacket());
+
+                if (version == Protobuf.Version.V1) {
+                    // What a reader that only knows version 1 requires.
+                    Assert.assertTrue(p.hasFrom() && p.hasTo() && p.hasMessage());
+                    Assert.assertEquals(k.toString(), p.getTo().getKey());
+                } else {
+                    Assert.assertFalse(p.hasTo());
+                    if (first == null) first = b;
+                    Assert.assertEquals(first, b);
+                }
+
+                Signed<Packet<VerificationKey, Payload>> read = proto.signedMarshaller.unmarshall(b);
+                Assert.assertTrue(read.verify(one.VerificationKey(), null));
+            }
+        }
+
+        // Unless version 1 is asked for, a broadcast is signed once.
+        Assert.assertTrue(new MockProtobuf().broadcastPackets());
+        Assert.assertFalse(new MockProtobuf(Protobuf.Version.V1).broadcastPackets());
+
+        // Version 1 cannot write a broadcast packet at all.
+        try {
+            new MockProtobuf(Protobuf.Version.V1).packetMarshaller.marshall(
+                    packet(new MockProtobuf(), one.VerificationKey(), null));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
 }
@@ -0,0 +1,114 @@
+package com.shuffle.player;
+
+import com.shuffle.bitcoin.VerificationKey;
+import com.shuffle.chan.packet.Marshaller;
+import com.shuffle.chan.packet.Packet;
+import com.shuffle.mock.MockProtobuf;
+import com.shuffle.mock.MockVerificationKey;
+import com.shuffle.p2p.Bytestring;
+import com.shuffle.protocol.FormatException;
+import com.shuffle.protocol.message.Phase;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of reading and writing shuffle packets in the
+ * version 1 (linked) and version 2 (flat) wire formats.
+ *
+ * A version 1 packet with 200 players is nested too deeply for protobuf to parse,
+ * so unmarshallPacket only measures how long it takes to fail in that case. What the
+ * results take for granted about the two formats is checked in setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtobufBenchmark {
+
+    @Param({"10", "50", "200"})
+    public int players;
+
+    @Param({"V1", "V2"})
+    public Protobuf.Version version;
+
+    private Marshaller<Packet<VerificationKey, Payload>> marshaller;
+    private Packet<VerificationKey, Payload> packet;
+    private Bytestring bytes;
+
+    // A shuffle packet containing one ciphertext for every player.
+    static Packet<VerificationKey, Payload> shufflePacket(Protobuf proto, int players) {
+        Random random = new Random(players);
+        com.shuffle.protocol.message.Message m
+                = new Message(AtomVector.EMPTY, proto.addressMarshaller(), null);
+
+        for (int i = 0; i < players; i++) {
+            byte[] ciphertext = new byte[128];
+            random.nextBytes(ciphertext);
+            m = m.attachCiphertext(new Bytestring(ciphertext));
+        }
+
+        return new Packet<>(new Bytestring("benchmark".getBytes()),
+                new MockVerificationKey(1), new MockVerificationKey(2), 1,
+                new Payload(Phase.Shuffling, (Message) m));
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        Protobuf proto = new MockProtobuf(version);
+        marshaller = proto.packetMarshaller;
+        packet = shufflePacket(proto, players);
+        bytes = marshaller.marshall(packet);
+
+        // Only a version 1 packet nested more than 100 deep should fail to be read.
+        Packet<VerificationKey, Payload> read;
+        try {
+            read = marshaller.unmarshall(bytes);
+        } catch (FormatException e) {
+            read = null;
+        }
+
+        boolean tooDeep = version == Protobuf.Version.V1 && players >= 100;
+        if (tooDeep ? read != null : !packet.equals(read)) {
+            throw new IllegalStateException("A " + version + " packet with " + players
+                    + " players was not read back as expected.");
+        }
+    }
+
+    @Benchmark
+    public Bytestring marshallPacket() throws IOException {
+        return marshaller.marshall(packet);
+    }
+
+    @Benchmark
+    public Packet<VerificationKey, Payload> unmarshallPacket() {
+        try {
+            return marshaller.unmarshall(bytes);
+        } catch (FormatException e) {
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ProtobufBenchmark.class.getSimpleName()).build()).run();
+    }
+}
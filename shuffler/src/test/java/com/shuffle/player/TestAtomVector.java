@@ -0,0 +1,71 @@
+package com.shuffle.player;
+
+import com.shuffle.mock.MockAddress;
+import com.shuffle.mock.MockEncryptionKey;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the persistent vector which backs player.Message.
+ */
+public class TestAtomVector {
+
+    private static AtomVector count(AtomVector v, int from, int to) {
+        for (int i = from; i < to; i++) {
+            v = v.append(Message.Atom.make(new MockAddress(i)));
+        }
+        return v;
+    }
+
+    @Test
+    public void testPersistence() {
+        AtomVector a = count(AtomVector.EMPTY, 0, 5);
+
+        // Both of these would like to take the same slot in the array.
+        AtomVector b = a.append(Message.Atom.make(new MockEncryptionKey(7)));
+        AtomVector c = a.append(Message.Atom.make(new MockEncryptionKey(8)));
+
+        Assert.assertEquals(5, a.size());
+        Assert.assertEquals(6, b.size());
+        Assert.assertEquals(6, c.size());
+        Assert.assertEquals(Message.Atom.make(new MockEncryptionKey(7)), b.get(5));
+        Assert.assertEquals(Message.Atom.make(new MockEncryptionKey(8)), c.get(5));
+        Assert.assertNotEquals(b, c);
+        Assert.assertEquals(a, count(AtomVector.EMPTY, 0, 5));
+
+        // Appending to the rest of a sequence does not change the original.
+        AtomVector r = a.rest().append(Message.Atom.make(new MockAddress(5)));
+        Assert.assertEquals(count(AtomVector.EMPTY, 1, 6), r);
+        Assert.assertEquals(count(AtomVector.EMPTY, 0, 5), a);
+    }
+
+    @Test
+    public void testChain() {
+        for (int n = 0; n < 40; n++) {
+            AtomVector v = count(AtomVector.EMPTY, 0, n);
+
+            // Build the linked form the old way, by prepending.
+            Message.Atom expected = null;
+            for (int i = n - 1; i >= 0; i--) {
+                expected = Message.Atom.make(new MockAddress(i), expected);
+            }
+
+            Message.Atom chain = v.chain();
+            Assert.assertEquals(expected, chain);
+            Assert.assertEquals(expected == null ? 0 : expected.hashCode(), v.hashCode());
+
+            AtomVector w = AtomVector.fromChain(chain);
+            Assert.assertEquals(v, w);
+            Assert.assertEquals(v.hashCode(), w.hashCode());
+
+            int i = 0;
+            for (Message.Atom atom : w) {
+                Assert.assertNull(atom.next);
+                Assert.assertEquals(new MockAddress(i), atom.addr);
+                i++;
+            }
+            Assert.assertEquals(n, i);
+        }
+    }
+}
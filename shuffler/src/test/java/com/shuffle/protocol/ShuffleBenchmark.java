@@ -0,0 +1,77 @@
+package com.shuffle.protocol;
+
+import com.shuffle.bitcoin.SigningKey;
+import com.shuffle.mock.InsecureRandom;
+import com.shuffle.mock.MockAddress;
+import com.shuffle.mock.MockCoin;
+import com.shuffle.mock.MockCrypto;
+import com.shuffle.mock.MockSigningKey;
+import com.shuffle.p2p.Bytestring;
+import com.shuffle.protocol.message.Message;
+import com.shuffle.protocol.message.MessageFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes a player to shuffle the addresses in the shuffle phase.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShuffleBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int players;
+
+    private CoinShuffle machine;
+    private Message input;
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException {
+        SigningKey me = new MockSigningKey(1);
+        Set<SigningKey> keys = new TreeSet<>();
+        keys.add(me);
+        keys.add(new MockSigningKey(2));
+
+        MessageFactory messages = new MockNetwork(new Bytestring("benchmark".getBytes()),
+                me, keys, 100).messages(me.VerificationKey());
+
+        machine = new CoinShuffle(messages, new MockCrypto(new InsecureRandom(players)), new MockCoin());
+
+        input = messages.make();
+        for (int i = 0; i < players; i++) {
+            input = input.attach(new MockAddress(i).toString());
+        }
+    }
+
+    @Benchmark
+    public Message shuffle() throws FormatException {
+        return machine.shuffle(input);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ShuffleBenchmark.class.getSimpleName()).build()).run();
+    }
+}
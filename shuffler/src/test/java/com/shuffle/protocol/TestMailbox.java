@@ -18,7 +18,9 @@ import com.shuffle.p2p.Bytestring;
 import com.shuffle.player.Messages;
 import com.shuffle.mock.MockSigningKey;
 import com.shuffle.mock.MockVerificationKey;
+import com.shuffle.player.JavaShuffleMarshaller;
 import com.shuffle.player.Payload;
+import com.shuffle.protocol.blame.Blame;
 import com.shuffle.protocol.blame.BlameException;
 import com.shuffle.protocol.message.Phase;
 
@@ -28,8 +30,10 @@ import org.junit.Test;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -383,4 +387,167 @@ public class TestMailbox {
             i++;
         }
     }
-}
\ No newline at end of file
+
+    // The keys of players 1 to n.
+    private static SortedSet<SigningKey> players(int n) {
+        SortedSet<SigningKey> players = new TreeSet<>();
+        for (int i = 1; i <= n; i++) {
+            players.add(new MockSigningKey(i));
+        }
+        return players;
+    }
+
+    private static Set<VerificationKey> verificationKeys(Set<SigningKey> keys) {
+        Set<VerificationKey> players = new HashSet<>();
+        for (SigningKey k : keys) {
+            players.add(k.VerificationKey());
+        }
+        return players;
+    }
+
+    @Test
+    // A broadcast is one packet, signed once and addressed to nobody in particular, which
+    // goes to every other player. Broadcasts and the packets sent to each player are
+    // numbered together, so no two packets from the same player have the same number.
+    public void testBroadcastSignedOnce()
+            throws InterruptedException, IOException, NoSuchAlgorithmException, FormatException {
+
+        SortedSet<SigningKey> keys = players(4);
+        SigningKey me = new MockSigningKey(2);
+        VerificationKey vk = me.VerificationKey();
+        Set<VerificationKey> players = verificationKeys(keys);
+
+        MockNetwork network = new MockNetwork(new Bytestring("broadcast".getBytes()), me, keys, 100);
+        Messages messages = network.messages(vk);
+        Mailbox mailbox = new Mailbox(vk, players, messages);
+
+        mailbox.broadcast(messages.make().attach("first"), Phase.Shuffling);
+        mailbox.send(messages.make().attach("direct"), Phase.Shuffling, new MockVerificationKey(3));
+        mailbox.broadcast(messages.make().attach("second"), Phase.BroadcastOutput);
+
+        // We receive our own broadcast.
+        Queue<com.shuffle.protocol.message.Packet> mine = mailbox.getPacketsByPhase(Phase.Shuffling);
+        Assert.assertEquals(1, mine.size());
+        Assert.assertNull(mine.peek().to());
+        Assert.assertEquals(vk, mine.peek().from());
+
+        Signed<Packet<VerificationKey, Payload>> first = null;
+        Signed<Packet<VerificationKey, Payload>> second = null;
+        Set<VerificationKey> firstTo = new HashSet<>();
+        Set<VerificationKey> secondTo = new HashSet<>();
+        int direct = 0;
+
+        for (Inbox.Envelope<VerificationKey, Signed<Packet<VerificationKey, Payload>>> sent
+                : network.getResponses()) {
+
+            Packet<VerificationKey, Payload> packet = sent.payload.message;
+            Assert.assertEquals(vk, packet.from);
+
+            if (!packet.isBroadcast()) {
+                Assert.assertEquals(new MockVerificationKey(3), packet.to);
+                Assert.assertEquals(sent.from, packet.to);
+                Assert.assertEquals(1, packet.sequenceNumber);
+                direct++;
+                continue;
+            }
+
+            if (packet.payload.phase == Phase.Shuffling) {
+                Assert.assertEquals(0, packet.sequenceNumber);
+                if (first == null) first = sent.payload;
+                Assert.assertEquals(first.signature, sent.payload.signature);
+                Assert.assertTrue(firstTo.add(sent.from));
+            } else {
+                Assert.assertEquals(2, packet.sequenceNumber);
+                if (second == null) second = sent.payload;
+                Assert.assertEquals(second.signature, sent.payload.signature);
+                Assert.assertTrue(secondTo.add(sent.from));
+            }
+        }
+
+        players.remove(vk);
+        Assert.assertEquals(1, direct);
+        Assert.assertEquals(players, firstTo);
+        Assert.assertEquals(players, secondTo);
+        Assert.assertTrue(first.verify(vk, new JavaShuffleMarshaller().packetMarshaller()));
+        Assert.assertTrue(second.verify(vk, new JavaShuffleMarshaller().packetMarshaller()));
+    }
+
+    @Test
+    // A broadcast from another player is received like any other packet.
+    public void testReceiveBroadcast()
+            throws InterruptedException, IOException, NoSuchAlgorithmException, FormatException,
+            BlameException, TimeoutException {
+
+        SortedSet<SigningKey> keys = players(3);
+        SigningKey me = new MockSigningKey(1);
+        VerificationKey vk = me.VerificationKey();
+        VerificationKey other = new MockVerificationKey(2);
+        Set<VerificationKey> players = verificationKeys(keys);
+
+        MockNetwork network = new MockNetwork(new Bytestring("receive broadcast".getBytes()), me, keys, 100);
+        Mailbox mailbox = new Mailbox(vk, players, network.messages(vk));
+
+        com.shuffle.protocol.message.Packet sent = network.messages(other).make().attach("hello")
+                .broadcast(Phase.BroadcastOutput, players);
+        Assert.assertNotNull(sent);
+        Assert.assertNull(sent.to());
+
+        Assert.assertEquals("hello", mailbox.receiveFrom(other, Phase.BroadcastOutput).readString());
+
+        Queue<com.shuffle.protocol.message.Packet> received = mailbox.getPacketsByPhase(Phase.BroadcastOutput);
+        Assert.assertEquals(1, received.size());
+        Assert.assertEquals(sent, received.peek());
+        Assert.assertNull(received.peek().to());
+        Assert.assertEquals(other, received.peek().from());
+    }
+
+    @Test
+    // A broadcast can be passed along as evidence in a blame message, and is only equal
+    // to packets which are also broadcasts.
+    public void testBroadcastEvidence()
+            throws InterruptedException, IOException, NoSuchAlgorithmException, FormatException,
+            BlameException, TimeoutException {
+
+        SortedSet<SigningKey> keys = players(3);
+        SigningKey me = new MockSigningKey(1);
+        VerificationKey vk = me.VerificationKey();
+        VerificationKey other = new MockVerificationKey(2);
+        VerificationKey accuser = new MockVerificationKey(3);
+        Set<VerificationKey> players = verificationKeys(keys);
+
+        Bytestring session = new Bytestring("broadcast evidence".getBytes());
+        MockNetwork network = new MockNetwork(session, me, keys, 100);
+        Mailbox mailbox = new Mailbox(vk, players, network.messages(vk));
+
+        Messages.SignedPacket broadcast = (Messages.SignedPacket) network.messages(other).make()
+                .attach("equivocate").broadcast(Phase.EquivocationCheck, players);
+
+        Queue<com.shuffle.protocol.message.Packet> evidence = new LinkedList<>();
+        evidence.add(broadcast);
+        network.messages(accuser).make().attach(Blame.EquivocationFailure(evidence)).send(Phase.Blame, vk);
+
+        mailbox.receiveFrom(other, Phase.EquivocationCheck);
+        Blame blame = mailbox.receiveFrom(accuser, Phase.Blame).readBlame();
+
+        Messages.SignedPacket passed = (Messages.SignedPacket) blame.packets.peek();
+        Assert.assertEquals(broadcast, passed);
+        Assert.assertTrue(passed.packet.verify(other, new JavaShuffleMarshaller().packetMarshaller()));
+
+        Assert.assertEquals(broadcast, mailbox.getPacketsByPhase(Phase.EquivocationCheck).peek());
+        Set<com.shuffle.protocol.message.Packet> seen = new HashSet<>();
+        seen.addAll(mailbox.getPacketsByPhase(Phase.EquivocationCheck));
+        Assert.assertTrue(seen.contains(passed));
+
+        // The same packet made again is equal to it, but one addressed to somebody is not.
+        Packet<VerificationKey, Payload> packet = passed.packet.message;
+        Packet<VerificationKey, Payload> same
+                = new Packet<>(session, other, null, packet.sequenceNumber, packet.payload);
+        Packet<VerificationKey, Payload> addressed
+                = new Packet<>(session, other, vk, packet.sequenceNumber, packet.payload);
+
+        Assert.assertEquals(packet, same);
+        Assert.assertEquals(packet.hashCode(), same.hashCode());
+        Assert.assertNotEquals(packet, addressed);
+        Assert.assertNotEquals(addressed, packet);
+    }
+}
@@ -42,6 +42,9 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Tests the methods in the shuffle machine other than the main ones.
@@ -214,17 +217,17 @@ public class TestShuffleMachineMethods {
                 new ShuffleTestCase(
                         new int[]{2, 0, 0},
                         new int[]{1, 2, 3},
-                        new int[]{3, 1, 2}
+                        new int[]{3, 2, 1}
                 ),
                 new ShuffleTestCase(
                         new int[]{2, 1, 0},
                         new int[]{1, 2, 3},
-                        new int[]{3, 2, 1}
+                        new int[]{3, 1, 2}
                 ),
                 new ShuffleTestCase(
                         new int[]{1, 1, 0},
                         new int[]{1, 2, 3},
-                        new int[]{2, 1, 3}
+                        new int[]{2, 3, 1}
                 ),
                 new ShuffleTestCase(
                         new int[]{0, 1, 0},
@@ -235,17 +238,17 @@ public class TestShuffleMachineMethods {
                 new ShuffleTestCase(
                         new int[]{1, 0, 1, 0},
                         new int[]{1, 2, 3, 4},
-                        new int[]{2, 3, 1, 4}
+                        new int[]{2, 1, 4, 3}
                 ),
                 new ShuffleTestCase(
                         new int[]{2, 3, 1, 0, 0},
                         new int[]{1, 2, 3, 4, 5},
-                        new int[]{3, 2, 5, 1, 4}
+                        new int[]{3, 5, 4, 1, 2}
                 ),
                 new ShuffleTestCase(
                         new int[]{3, 2, 0, 0, 1, 0},
                         new int[]{1, 2, 3, 4, 5, 6},
-                        new int[]{4, 1, 2, 3, 6, 5}
+                        new int[]{4, 1, 3, 2, 6, 5}
                 ),
         };
 
@@ -278,6 +281,50 @@ public class TestShuffleMachineMethods {
         }
     }
 
+    @Test
+    // Every ordering of a set of addresses should come out of the shuffle equally often.
+    public void testShuffleUniform() throws NoSuchAlgorithmException, FormatException {
+        int size = 4;
+        int orderings = 24;
+        int trials = 240 * orderings;
+
+        SigningKey me = new MockSigningKey(1);
+        Set<SigningKey> players = new TreeSet<>();
+        players.add(me);
+        players.add(new MockSigningKey(2));
+
+        Messages messages = new MockNetwork(new Bytestring(("uniform shuffle test").getBytes()),
+                me, players, 100).messages(me.VerificationKey());
+
+        CoinShuffle machine = new CoinShuffle(
+                messages, new MockCrypto(new InsecureRandom(23)), new MockCoin());
+
+        Message input = messages.make();
+        for (int i = 0; i < size; i++) {
+            input = input.attach(new MockAddress(i).toString());
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < trials; i++) {
+            String result = machine.shuffle(input).toString();
+            Integer count = counts.get(result);
+            counts.put(result, count == null ? 1 : count + 1);
+        }
+
+        Assert.assertEquals(orderings, counts.size());
+
+        // Pearson's chi-squared test with 23 degrees of freedom. The critical value
+        // for a significance of 0.001 is 49.73.
+        double expected = (double) trials / orderings;
+        double chiSquared = 0;
+        for (int count : counts.values()) {
+            chiSquared += (count - expected) * (count - expected) / expected;
+        }
+
+        log.info("shuffle uniformity: chi squared = " + chiSquared);
+        Assert.assertTrue("chi squared = " + chiSquared, chiSquared < 49.73);
+    }
+
     private class AreEqualTestCase {
         final List<Message> input = new LinkedList<>();
         final boolean expected;
@@ -383,6 +430,17 @@ public class TestShuffleMachineMethods {
             SortedSet<SigningKey> others,
             Crypto crypto, Mailbox mailbox) throws InvalidParticipantSetException, NoSuchAlgorithmException {
 
+        return standardTestInitialization(session, me, addr, others, crypto, mailbox, null);
+    }
+
+    private CoinShuffle.Round standardTestInitialization(
+            Bytestring session,
+            int me,
+            Address addr,
+            SortedSet<SigningKey> others,
+            Crypto crypto, Mailbox mailbox,
+            Executor executor) throws InvalidParticipantSetException, NoSuchAlgorithmException {
+
         int i = 1;
         Map<Integer, VerificationKey> players = new HashMap<>();
         for (SigningKey key : others) {
@@ -398,7 +456,7 @@ public class TestShuffleMachineMethods {
         MockNetwork net = new MockNetwork(session, sk, others, 100);
 
         CoinShuffle shuffle = new CoinShuffle(net.messages(sk.VerificationKey()),
-                crypto, new MockCoin());
+                crypto, new MockCoin(), executor);
 
         return shuffle.new Round(
                 new CoinShuffle.CurrentPhase(), amount, fee, sk, players, addr, null, mailbox
@@ -407,6 +465,20 @@ public class TestShuffleMachineMethods {
 
     @Test
     public void testDecryptAll() throws TimeoutException, InterruptedException, IOException, NoSuchAlgorithmException {
+        decryptAll(null);
+    }
+
+    @Test
+    public void testDecryptAllParallel() throws TimeoutException, InterruptedException, IOException, NoSuchAlgorithmException {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            decryptAll(executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void decryptAll(Executor executor) throws TimeoutException, InterruptedException, IOException, NoSuchAlgorithmException {
 
         MockCrypto crypto = new MockCrypto(new InsecureRandom(56));
 
@@ -440,14 +512,18 @@ public class TestShuffleMachineMethods {
                     playersPublic.add(key);
                     Address addr = key.address();
 
-                    output = output.attach(addr.toString());
-                    input = input.attach(dk.EncryptionKey().encrypt(addr.toString()));
+                    Bytestring plaintext = new Bytestring(addr.toString().getBytes());
+
+                    // The last player gets the addresses back. Everyone else gets ciphertexts.
+                    output = players.size() == 1
+                            ? output.attach(addr.toString()) : output.attachCiphertext(plaintext);
+                    input = input.attachCiphertext(dk.EncryptionKey().encrypt(plaintext));
                 }
 
                 Mailbox mailbox = new Mailbox(sk.VerificationKey(), playersPublic, messages);
 
                 CoinShuffle.Round round = standardTestInitialization(
-                        session, 1, new MockAddress(-1), players, crypto, mailbox
+                        session, 1, new MockAddress(-1), players, crypto, mailbox, executor
                 );
 
                 Message result = round.decryptAll(input, dk, i + 1);
@@ -463,6 +539,63 @@ public class TestShuffleMachineMethods {
         }
     }
 
+    // Run the shuffle phase as player 2 of 4, with or without encrypting our new address
+    // ahead of time.
+    private Message shufflePhase(Executor executor, boolean precompute)
+            throws InvalidParticipantSetException, NoSuchAlgorithmException, FormatException, InterruptedException {
+
+        Bytestring session = new Bytestring("testShufflePhase".getBytes());
+        MockCrypto keys = new MockCrypto(new InsecureRandom(7));
+
+        SortedSet<SigningKey> players = new TreeSet<>();
+        for (int i = 1; i <= 4; i++) {
+            players.add(new MockSigningKey(i));
+        }
+
+        SigningKey sk = new MockSigningKey(2);
+        MockNetwork net = new MockNetwork(session, sk, players, 100);
+        Messages messages = net.messages(sk.VerificationKey());
+
+        SortedSet<VerificationKey> playersPublic = new TreeSet<>();
+        for (SigningKey k : players) {
+            playersPublic.add(k.VerificationKey());
+        }
+
+        CoinShuffle.Round round = standardTestInitialization(session, 2, new MockAddress(2), players,
+                new MockCrypto(new InsecureRandom(11)),
+                new Mailbox(sk.VerificationKey(), playersPublic, messages), executor);
+
+        for (SigningKey k : players) {
+            round.encryptionKeys.put(k.VerificationKey(), keys.makeDecryptionKey().EncryptionKey());
+        }
+
+        if (precompute) {
+            round.precomputeOnion();
+        }
+
+        // Player 1's address, as player 1 would have sent it.
+        Message input = messages.make().attachCiphertext(new Bytestring("player 1".getBytes()));
+
+        return round.shufflePhase(input, new MockAddress(2));
+    }
+
+    @Test
+    // Encrypting our new address on another thread ahead of time should make no
+    // difference to what comes out of the shuffle phase.
+    public void testShufflePhaseParallel() throws InvalidParticipantSetException,
+            NoSuchAlgorithmException, FormatException, InterruptedException {
+
+        Message inline = shufflePhase(null, false);
+        Assert.assertEquals(inline, shufflePhase(null, true));
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Assert.assertEquals(inline, shufflePhase(executor, true));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testReadNewAddresses() throws NoSuchAlgorithmException {
         MockCrypto crypto = new MockCrypto(new InsecureRandom(84512));
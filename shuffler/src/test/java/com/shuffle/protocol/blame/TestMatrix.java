@@ -0,0 +1,148 @@
+/**
+ *
+ * Copyright © 2016 Mycelium.
+ * Use of this source code is governed by an ISC
+ * license that can be found in the LICENSE file.
+ *
+ */
+
+package com.shuffle.protocol.blame;
+
+import com.shuffle.bitcoin.VerificationKey;
+import com.shuffle.mock.MockVerificationKey;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the blame matrix.
+ */
+public class TestMatrix {
+
+    private static List<VerificationKey> keys(int n) {
+        List<VerificationKey> keys = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            keys.add(new MockVerificationKey(i));
+        }
+        return keys;
+    }
+
+    // get takes the accuser first and the accused second.
+    @Test
+    public void testGet() {
+        List<VerificationKey> k = keys(2);
+        Matrix m = new Matrix();
+
+        Evidence e = Evidence.Expected(k.get(1), Reason.InsufficientFunds);
+        m.put(k.get(0), e);
+
+        Assert.assertEquals(e, m.get(k.get(0), k.get(1)));
+        Assert.assertNull(m.get(k.get(1), k.get(0)));
+        Assert.assertNull(m.get(k.get(0), k.get(0)));
+    }
+
+    @Test
+    public void testPut() {
+        List<VerificationKey> k = keys(3);
+
+        // One matrix knows the players ahead of time and the other doesn't.
+        for (Matrix m : new Matrix[]{new Matrix(), new Matrix(k)}) {
+            Assert.assertTrue(m.isEmpty());
+
+            Evidence e = Evidence.Expected(k.get(1), Reason.InsufficientFunds);
+            m.put(k.get(0), e);
+
+            Assert.assertFalse(m.isEmpty());
+            Assert.assertEquals(e, m.get(k.get(0), k.get(1)));
+            Assert.assertNull(m.get(k.get(1), k.get(0)));
+            Assert.assertNull(m.get(k.get(2), k.get(1)));
+            Assert.assertTrue(m.blameExists(k.get(0), k.get(1), Reason.InsufficientFunds));
+            Assert.assertFalse(m.blameExists(k.get(0), k.get(1), Reason.DoubleSpend));
+            Assert.assertFalse(m.blameExists(k.get(1), k.get(0), Reason.InsufficientFunds));
+
+            Map<VerificationKey, Evidence> accusations = m.getAccusations(k.get(1));
+            Assert.assertEquals(Collections.singletonMap(k.get(0), e), accusations);
+            Assert.assertTrue(m.getAccusations(k.get(0)).isEmpty());
+            Assert.assertTrue(m.getAccusations(new MockVerificationKey(7)).isEmpty());
+
+            // An entry cannot be overwritten.
+            try {
+                m.put(k.get(0), Evidence.Expected(k.get(1), Reason.DoubleSpend));
+                Assert.fail();
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+    }
+
+    @Test
+    public void testBlamedByAll() {
+        List<VerificationKey> k = keys(4);
+        Matrix m = new Matrix();
+
+        Assert.assertTrue(m.blamedByAll(k).isEmpty());
+
+        // Player 4 is blamed by everyone else and player 3 is blamed by everyone.
+        for (VerificationKey accuser : k) {
+            if (!accuser.equals(k.get(3))) {
+                m.put(accuser, Evidence.Expected(k.get(3), Reason.InsufficientFunds));
+            }
+            m.put(accuser, Evidence.Expected(k.get(2), Reason.InsufficientFunds));
+        }
+
+        // Player 1 is blamed by all but one.
+        m.put(k.get(1), Evidence.Expected(k.get(0), Reason.InsufficientFunds));
+        m.put(k.get(2), Evidence.Expected(k.get(0), Reason.InsufficientFunds));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList(k.get(2), k.get(3))), m.blamedByAll(k));
+
+        // A player who does not appear in the matrix doesn't blame anyone.
+        List<VerificationKey> more = keys(5);
+        Assert.assertTrue(m.blamedByAll(more).isEmpty());
+
+        // Only the given players count.
+        Assert.assertEquals(new HashSet<>(Arrays.asList(k.get(0), k.get(2))),
+                m.blamedByAll(k.subList(0, 3)));
+    }
+
+    @Test
+    public void testMatchAndEquals() {
+        List<VerificationKey> k = keys(3);
+
+        Matrix a = new Matrix(k);
+        Matrix b = new Matrix();
+
+        Assert.assertTrue(a.match(b));
+        Assert.assertTrue(a.match(null));
+        Assert.assertEquals(a, b);
+
+        a.put(k.get(0), Evidence.Expected(k.get(2), Reason.InsufficientFunds));
+        a.put(k.get(1), Evidence.Expected(k.get(2), Reason.InsufficientFunds));
+
+        Assert.assertFalse(a.match(b));
+        Assert.assertFalse(b.match(a));
+        Assert.assertNotEquals(a, b);
+
+        // Put the same entries in b in a different order.
+        b.put(k.get(1), Evidence.Expected(k.get(2), Reason.InsufficientFunds));
+        b.put(k.get(0), Evidence.Expected(k.get(2), Reason.InsufficientFunds));
+
+        Assert.assertTrue(a.match(b));
+        Assert.assertTrue(b.match(a));
+        Assert.assertEquals(a, b);
+        Assert.assertEquals(a.hashCode(), b.hashCode());
+
+        b.put(k.get(2), Evidence.Expected(k.get(0), Reason.InsufficientFunds));
+        Assert.assertFalse(a.match(b));
+        Assert.assertFalse(b.match(a));
+
+        a.put(k.get(2), Evidence.Expected(k.get(0), Reason.DoubleSpend));
+        Assert.assertFalse(a.match(b));
+    }
+}